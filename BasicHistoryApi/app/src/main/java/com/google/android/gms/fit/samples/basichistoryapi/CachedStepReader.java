@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.basichistoryapi;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import com.google.android.gms.fit.samples.common.data.AggregateBucketCache;
+import com.google.android.gms.fit.samples.common.data.DataPointConverter;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fitness.HistoryClient;
+import com.google.android.gms.fitness.data.Bucket;
+import com.google.android.gms.fitness.data.DataSet;
+import com.google.android.gms.fitness.data.DataType;
+import com.google.android.gms.fitness.request.DataReadRequest;
+import com.google.android.gms.fitness.result.DataReadResponse;
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads daily step count totals through an {@link AggregateBucketCache}. Days which are over are
+ * read from the History API once and then served locally, so a read of the past week usually
+ * fetches just today. The cache is kept in a file, so it also saves the fetches on the next
+ * launch.
+ *
+ * <p>Every insert, update and delete of step count data must be reported to {@link #invalidate},
+ * which drops the days it touched.
+ */
+final class CachedStepReader {
+  private static final String TAG = MainActivity.TAG;
+  private static final String CACHE_FILE = "step_buckets.cache";
+
+  // Shared by every reader, so the file is loaded once per process. Loads, saves and
+  // invalidations all run in order on the one disk thread.
+  private static final AggregateBucketCache sCache = new AggregateBucketCache();
+  private static final Executor sDiskExecutor = Executors.newSingleThreadExecutor();
+  // Only used on sDiskExecutor.
+  private static boolean sLoaded;
+
+  private final HistoryClient mClient;
+  private final File mFile;
+
+  CachedStepReader(Context context, HistoryClient client) {
+    mClient = client;
+    mFile = new File(context.getCacheDir(), CACHE_FILE);
+  }
+
+  /**
+   * Reads the total step count of each day which overlaps a time range, in the current time
+   * zone. The task's result maps the start of each day to its aggregate data points.
+   */
+  Task<SortedMap<Long, List<FitDataPoint>>> read(final long startTime, final long endTime) {
+    final AggregateBucketCache.Key key =
+        new AggregateBucketCache.Key(
+            DataType.TYPE_STEP_COUNT_DELTA.getName(), 1, TimeZone.getDefault());
+    return Tasks.call(
+            sDiskExecutor,
+            new Callable<Void>() {
+              @Override
+              public Void call() {
+                loadIfNeeded();
+                return null;
+              }
+            })
+        .continueWithTask(
+            new Continuation<Void, Task<SortedMap<Long, List<FitDataPoint>>>>() {
+              @Override
+              public Task<SortedMap<Long, List<FitDataPoint>>> then(@NonNull Task<Void> task) {
+                return fetch(key, startTime, endTime);
+              }
+            });
+  }
+
+  /**
+   * Drops the cached days of a data type which overlap a time range just written to. Reads
+   * started afterwards will fetch them again.
+   */
+  void invalidate(final DataType dataType, final long startTime, final long endTime) {
+    // On the disk thread, so it lands after the file is loaded, and before any later read.
+    sDiskExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            loadIfNeeded();
+            int dropped = sCache.invalidate(dataType.getName(), startTime, endTime);
+            if (dropped > 0) {
+              Log.i(TAG, "Dropped " + dropped + " cached day(s) after a change to their data.");
+            }
+            writeFile();
+          }
+        });
+  }
+
+  private Task<SortedMap<Long, List<FitDataPoint>>> fetch(
+      final AggregateBucketCache.Key key, final long startTime, final long endTime) {
+    final long now = System.currentTimeMillis();
+    final long generation = sCache.getGeneration();
+    // The cached days are taken with the plan, as a write reported while the fetches are in
+    // flight may drop them from the cache before they are served.
+    final Map<Long, List<FitDataPoint>> cached = new HashMap<>();
+    final List<AggregateBucketCache.Fetch> fetches =
+        sCache.plan(key, startTime, endTime, now, cached);
+    Log.i(
+        TAG,
+        "Serving "
+            + cached.size()
+            + " day(s) from the cache, fetching "
+            + fetches.size()
+            + " range(s).");
+
+    final List<Task<DataReadResponse>> reads = new ArrayList<>(fetches.size());
+    for (AggregateBucketCache.Fetch fetch : fetches) {
+      // The same aggregate read as MainActivity.queryFitnessData(), over just this range. The
+      // cache starts each range at midnight, so each bucket is one day.
+      DataReadRequest readRequest =
+          new DataReadRequest.Builder()
+              .aggregate(DataType.TYPE_STEP_COUNT_DELTA, DataType.AGGREGATE_STEP_COUNT_DELTA)
+              .bucketByTime((int) fetch.getBucketMillis(), TimeUnit.MILLISECONDS)
+              .setTimeRange(
+                  fetch.getStartTimeMillis(), fetch.getEndTimeMillis(), TimeUnit.MILLISECONDS)
+              .build();
+      reads.add(mClient.readData(readRequest));
+    }
+
+    return Tasks.whenAll(reads)
+        .continueWith(
+            new Continuation<Void, SortedMap<Long, List<FitDataPoint>>>() {
+              @Override
+              public SortedMap<Long, List<FitDataPoint>> then(@NonNull Task<Void> task)
+                  throws Exception {
+                if (!task.isSuccessful()) {
+                  throw task.getException();
+                }
+                Map<Long, List<FitDataPoint>> fetched = new HashMap<>();
+                for (Task<DataReadResponse> read : reads) {
+                  addBuckets(read.getResult(), fetched);
+                }
+                for (AggregateBucketCache.Fetch fetch : fetches) {
+                  for (long start = fetch.getStartTimeMillis();
+                      start < fetch.getEndTimeMillis();
+                      start += fetch.getBucketMillis()) {
+                    // Days with no data at all may have no bucket, but are still known.
+                    List<FitDataPoint> points = fetched.get(start);
+                    if (points == null) {
+                      points = Collections.emptyList();
+                      fetched.put(start, points);
+                    }
+                    sCache.put(key, start, points, generation, now);
+                  }
+                }
+                save();
+
+                SortedMap<Long, List<FitDataPoint>> days = new TreeMap<>();
+                long start = AggregateBucketCache.getBucketStart(key, startTime);
+                while (start < endTime) {
+                  List<FitDataPoint> points = fetched.get(start);
+                  if (points == null) {
+                    points = cached.get(start);
+                  }
+                  if (points != null) {
+                    days.put(start, points);
+                  }
+                  start = AggregateBucketCache.getBucketEnd(key, start);
+                }
+                return days;
+              }
+            });
+  }
+
+  /** Adds the points of each bucket of a response, by bucket start. */
+  private static void addBuckets(DataReadResponse response, Map<Long, List<FitDataPoint>> out) {
+    // An aggregated read returns its data in buckets rather than plain data sets.
+    for (Bucket bucket : response.getBuckets()) {
+      List<FitDataPoint> points = new ArrayList<>();
+      for (DataSet dataSet : bucket.getDataSets()) {
+        DataPointConverter.addAll(dataSet, points);
+      }
+      out.put(bucket.getStartTime(TimeUnit.MILLISECONDS), points);
+    }
+  }
+
+  /** Writes the cache to its file in the background. */
+  private void save() {
+    sDiskExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            writeFile();
+          }
+        });
+  }
+
+  /** Loads the cache from its file the first time it is called in a process. */
+  private void loadIfNeeded() {
+    if (sLoaded) {
+      return;
+    }
+    sLoaded = true;
+    if (!mFile.exists()) {
+      return;
+    }
+    try {
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+      try {
+        sCache.readFrom(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // Only a cache: start over.
+      Log.w(TAG, "Could not load the step count cache.", e);
+      sCache.clear();
+      mFile.delete();
+    }
+  }
+
+  /** Writes the cache to its file, replacing the file in one step. */
+  private void writeFile() {
+    File tmp = new File(mFile.getPath() + ".tmp");
+    try {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        sCache.writeTo(out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(mFile)) {
+        throw new IOException("Could not rename " + tmp + " to " + mFile);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Could not save the step count cache.", e);
+      tmp.delete();
+    }
+  }
+}
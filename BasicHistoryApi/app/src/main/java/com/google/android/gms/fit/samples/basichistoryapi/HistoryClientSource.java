@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.basichistoryapi;
+
+import com.google.android.gms.fit.samples.common.data.DataPointConverter;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.HistorySource;
+import com.google.android.gms.fitness.HistoryClient;
+import com.google.android.gms.fitness.data.DataSet;
+import com.google.android.gms.fitness.data.DataType;
+import com.google.android.gms.fitness.request.DataReadRequest;
+import com.google.android.gms.fitness.result.DataReadResponse;
+import com.google.android.gms.tasks.Tasks;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HistorySource} which reads from the History API through a {@link HistoryClient}. Reads
+ * block until the response arrives, so they must be made off the main thread.
+ */
+final class HistoryClientSource implements HistorySource {
+  private final HistoryClient mClient;
+  private final DataType[] mDataTypes;
+
+  /**
+   * @param client The client to read with.
+   * @param dataTypes The platform data types which can be read, looked up by name.
+   */
+  HistoryClientSource(HistoryClient client, DataType... dataTypes) {
+    mClient = client;
+    mDataTypes = dataTypes.clone();
+  }
+
+  @Override
+  public List<FitDataPoint> read(FitDataType dataType, long startTimeMillis, long endTimeMillis)
+      throws IOException {
+    DataType platformType = null;
+    for (DataType type : mDataTypes) {
+      if (type.getName().equals(dataType.getName())) {
+        platformType = type;
+      }
+    }
+    if (platformType == null) {
+      throw new IllegalArgumentException("Cannot read " + dataType);
+    }
+
+    DataReadRequest readRequest =
+        new DataReadRequest.Builder()
+            .read(platformType)
+            .setTimeRange(startTimeMillis, endTimeMillis, TimeUnit.MILLISECONDS)
+            .build();
+    DataReadResponse response;
+    try {
+      response = Tasks.await(mClient.readData(readRequest));
+    } catch (ExecutionException e) {
+      throw new IOException("Reading " + dataType + " failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading " + dataType);
+    }
+
+    List<FitDataPoint> points = new ArrayList<>();
+    for (DataSet dataSet : response.getDataSets()) {
+      DataPointConverter.addAll(dataSet, points);
+    }
+    return points;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.basichistoryapi;
+
+import android.support.annotation.NonNull;
+import com.google.android.gms.fit.samples.common.data.DataPointConverter;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.HistoryWriter;
+import com.google.android.gms.fitness.HistoryClient;
+import com.google.android.gms.fitness.data.DataSource;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import java.util.List;
+
+/**
+ * {@link HistoryWriter} which inserts into the History API through a {@link HistoryClient}, as
+ * data sets of one data source.
+ */
+final class HistoryClientWriter implements HistoryWriter {
+  private final HistoryClient mClient;
+  private final DataSource mDataSource;
+
+  /**
+   * @param client The client to insert with.
+   * @param dataSource The source of every point inserted. The points must have its data type.
+   */
+  HistoryClientWriter(HistoryClient client, DataSource dataSource) {
+    mClient = client;
+    mDataSource = dataSource;
+  }
+
+  @Override
+  public void insert(List<FitDataPoint> points, final Callback callback) {
+    mClient
+        .insertData(DataPointConverter.toDataSet(mDataSource, points))
+        .addOnCompleteListener(
+            new OnCompleteListener<Void>() {
+              @Override
+              public void onComplete(@NonNull Task<Void> task) {
+                callback.onInsertComplete(task.isSuccessful() ? null : task.getException());
+              }
+            });
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.basichistoryapi;
+
+import android.content.Context;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.RangeReader;
+import com.google.android.gms.fit.samples.common.data.TimeSeriesStore;
+import com.google.android.gms.fit.samples.common.data.TimeSeriesSync;
+import com.google.android.gms.fitness.HistoryClient;
+import com.google.android.gms.fitness.data.DataType;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's own copy of its step count history, in a {@link TimeSeriesStore}, so that reads
+ * survive restarts and data already synced is never fetched again. Each {@link #sync} asks the
+ * History API only for what is newer than the last one. Reads spanning more than a few days are
+ * split into windows read in parallel by a {@link RangeReader}.
+ */
+final class LocalStepHistory {
+  private static final String STORE_FILE = "step_history.store";
+  // The first sync reads a week, like the aggregate read does.
+  private static final long INITIAL_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(7);
+  // Long reads, such as a resync after a backfill, go in whole days of about as many points as a
+  // minute-by-minute step count has in a week, a few at a time.
+  private static final long READ_WINDOW_MILLIS =
+      RangeReader.getWindowMillis(
+          TimeUnit.MINUTES.toMillis(1),
+          RangeReader.DEFAULT_MAX_POINTS_PER_WINDOW,
+          TimeUnit.DAYS.toMillis(1));
+
+  // Opened once per process, on the store thread, which every use of it runs on.
+  private static final Executor sStoreExecutor = Executors.newSingleThreadExecutor();
+  private static TimeSeriesStore sStore;
+  // Blocks in the window reads, one thread per read in flight.
+  private static final Executor sReadExecutor =
+      Executors.newFixedThreadPool(RangeReader.DEFAULT_MAX_IN_FLIGHT);
+
+  private final File mFile;
+  private final RangeReader mSource;
+
+  LocalStepHistory(Context context, HistoryClient client) {
+    mFile = new File(context.getFilesDir(), STORE_FILE);
+    mSource =
+        new RangeReader(
+            new HistoryClientSource(client, DataType.TYPE_STEP_COUNT_DELTA),
+            sReadExecutor,
+            READ_WINDOW_MILLIS,
+            RangeReader.DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Reads the step count data which is new since the last sync into the store. The task's result
+   * is the number of points added.
+   */
+  Task<Integer> sync() {
+    return Tasks.call(
+        sStoreExecutor,
+        new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            return newSync().sync(FitDataType.STEP_COUNT_DELTA, System.currentTimeMillis());
+          }
+        });
+  }
+
+  /**
+   * Reads a time range again and replaces what the store holds for it, after the app inserted,
+   * updated or deleted data there. The task's result is the number of points now in the range.
+   */
+  Task<Integer> resync(final long startTime, final long endTime) {
+    return Tasks.call(
+        sStoreExecutor,
+        new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            return newSync().resync(FitDataType.STEP_COUNT_DELTA, startTime, endTime);
+          }
+        });
+  }
+
+  /** Returns the stored step count points which overlap a time range, without any reads. */
+  Task<List<FitDataPoint>> query(final long startTime, final long endTime) {
+    return Tasks.call(
+        sStoreExecutor,
+        new Callable<List<FitDataPoint>>() {
+          @Override
+          public List<FitDataPoint> call() throws IOException {
+            return getStore().query(FitDataType.STEP_COUNT_DELTA.getName(), startTime, endTime);
+          }
+        });
+  }
+
+  private TimeSeriesSync newSync() throws IOException {
+    return new TimeSeriesSync(getStore(), mSource, INITIAL_WINDOW_MILLIS);
+  }
+
+  /** Returns the store, opening it again if a failed write closed it. */
+  private TimeSeriesStore getStore() throws IOException {
+    if (sStore == null || sStore.isClosed()) {
+      sStore = new TimeSeriesStore(mFile);
+    }
+    return sStore;
+  }
+}
@@ -16,7 +16,6 @@
 package com.google.android.gms.fit.samples.basichistoryapi;
 
 import static java.text.DateFormat.getDateInstance;
-import static java.text.DateFormat.getTimeInstance;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -27,10 +26,20 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.fit.samples.common.data.BulkInserter;
+import com.google.android.gms.fit.samples.common.data.DataPointFormatter;
+import com.google.android.gms.fit.samples.common.data.FitDataBatch;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.LocalAggregator;
+import com.google.android.gms.fit.samples.common.logger.DuplicateCollapsingLogFilter;
 import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogRecord;
+import com.google.android.gms.fit.samples.common.logger.LogSinkRegistry;
 import com.google.android.gms.fit.samples.common.logger.LogView;
 import com.google.android.gms.fit.samples.common.logger.LogWrapper;
 import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
+import com.google.android.gms.fit.samples.common.logger.StackTraceCache;
 import com.google.android.gms.fitness.Fitness;
 import com.google.android.gms.fitness.FitnessOptions;
 import com.google.android.gms.fitness.data.Bucket;
@@ -39,6 +48,7 @@ import com.google.android.gms.fitness.data.DataSet;
 import com.google.android.gms.fitness.data.DataSource;
 import com.google.android.gms.fitness.data.DataType;
 import com.google.android.gms.fitness.data.Field;
+import com.google.android.gms.fitness.data.Value;
 import com.google.android.gms.fitness.request.DataDeleteRequest;
 import com.google.android.gms.fitness.request.DataReadRequest;
 import com.google.android.gms.fitness.request.DataUpdateRequest;
@@ -49,9 +59,16 @@ import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -64,6 +81,9 @@ public class MainActivity extends AppCompatActivity {
   // Identifier to identify the sign in activity.
   private static final int REQUEST_OAUTH_REQUEST_CODE = 1;
 
+  // The head of this Activity's on-screen logging. The LogSinkRegistry only holds it weakly.
+  private MessageOnlyLogFilter mLogFilter;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -99,23 +119,35 @@ public class MainActivity extends AppCompatActivity {
 
   /**
    * Inserts and reads data by chaining {@link Task} from {@link #insertData()} and {@link
-   * #readHistoryData()}.
+   * #syncLocalHistory()}. The week is printed from the local copy of the history, so only what is
+   * new since the last launch is read from the History API.
    */
   private void insertAndReadData() {
     insertData()
         .continueWithTask(
-            new Continuation<Void, Task<DataReadResponse>>() {
+            new Continuation<Integer, Task<List<FitDataPoint>>>() {
               @Override
-              public Task<DataReadResponse> then(@NonNull Task<Void> task) throws Exception {
-                return readHistoryData();
+              public Task<List<FitDataPoint>> then(@NonNull Task<Integer> task) throws Exception {
+                return syncLocalHistory();
               }
             });
   }
 
-  /** Creates a {@link DataSet} and inserts it into user's Google Fit history. */
-  private Task<Void> insertData() {
+  /**
+   * Creates a {@link DataSet} and inserts it into user's Google Fit history. The task completes
+   * once the local copies of the history are up to date with the insert.
+   */
+  private Task<Integer> insertData() {
     // Create a new dataset and insertion request.
     DataSet dataSet = insertFitnessData();
+    long startTime = Long.MAX_VALUE;
+    long endTime = Long.MIN_VALUE;
+    for (DataPoint dataPoint : dataSet.getDataPoints()) {
+      startTime = Math.min(startTime, dataPoint.getStartTime(TimeUnit.MILLISECONDS));
+      endTime = Math.max(endTime, dataPoint.getEndTime(TimeUnit.MILLISECONDS));
+    }
+    final long insertedStartTime = startTime;
+    final long insertedEndTime = endTime;
 
     // Then, invoke the History API to insert the data.
     Log.i(TAG, "Inserting the dataset in the History API.");
@@ -132,27 +164,44 @@ public class MainActivity extends AppCompatActivity {
                   Log.e(TAG, "There was a problem inserting the dataset.", task.getException());
                 }
               }
+            })
+        .continueWithTask(
+            new Continuation<Void, Task<Integer>>() {
+              @Override
+              public Task<Integer> then(@NonNull Task<Void> task) throws Exception {
+                // Even a failed insert may have written some of the data. The whole data set is
+                // one range, so it is read back once rather than once per point.
+                return onStepDataWritten(insertedStartTime, insertedEndTime);
+              }
             });
   }
 
   /**
    * Asynchronous task to read the history data. When the task succeeds, it will print out the data.
+   * The read goes through a {@link CachedStepReader}, which keeps the days which are over, so that
+   * reading again only fetches what is not cached yet.
    */
-  private Task<DataReadResponse> readHistoryData() {
-    // Begin by creating the query.
-    DataReadRequest readRequest = queryFitnessData();
+  private Task<SortedMap<Long, List<FitDataPoint>>> readHistoryData() {
+    // Setting a start and end date using a range of the past week, today included. Starting at
+    // midnight lets the six days which are over be served from the cache.
+    long endTime = System.currentTimeMillis();
+    long startTime = getWeekStartTime();
 
-    // Invoke the History API to fetch the data with the query
-    return Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this))
-        .readData(readRequest)
+    DateFormat dateFormat = getDateInstance();
+    Log.i(TAG, "Range Start: " + dateFormat.format(startTime));
+    Log.i(TAG, "Range End: " + dateFormat.format(endTime));
+
+    // Read the daily totals, fetching only the days which are not cached.
+    return getStepReader()
+        .read(startTime, endTime)
         .addOnSuccessListener(
-            new OnSuccessListener<DataReadResponse>() {
+            new OnSuccessListener<SortedMap<Long, List<FitDataPoint>>>() {
               @Override
-              public void onSuccess(DataReadResponse dataReadResponse) {
+              public void onSuccess(SortedMap<Long, List<FitDataPoint>> days) {
                 // For the sake of the sample, we'll print the data so we can see what we just
                 // added. In general, logging fitness information should be avoided for privacy
                 // reasons.
-                printData(dataReadResponse);
+                printDays(days);
               }
             })
         .addOnFailureListener(
@@ -164,6 +213,101 @@ public class MainActivity extends AppCompatActivity {
             });
   }
 
+  /** Returns midnight six days ago, the start of the past week with today included. */
+  private static long getWeekStartTime() {
+    Calendar cal = Calendar.getInstance();
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    cal.add(Calendar.DAY_OF_YEAR, -6);
+    return cal.getTimeInMillis();
+  }
+
+  /** Returns a reader of daily step counts which caches the days which are over. */
+  private CachedStepReader getStepReader() {
+    return new CachedStepReader(
+        this, Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this)));
+  }
+
+  /** Returns the app's local copy of its step count history. */
+  private LocalStepHistory getLocalHistory() {
+    return new LocalStepHistory(
+        this, Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this)));
+  }
+
+  /**
+   * Brings the local copy of the step count history up to date, reading only what is new since
+   * the last sync, then prints the past week's daily totals worked out from it on the device.
+   */
+  private Task<List<FitDataPoint>> syncLocalHistory() {
+    final LocalStepHistory history = getLocalHistory();
+    final long endTime = System.currentTimeMillis();
+    final long startTime = getWeekStartTime();
+    return history
+        .sync()
+        .continueWithTask(
+            new Continuation<Integer, Task<List<FitDataPoint>>>() {
+              @Override
+              public Task<List<FitDataPoint>> then(@NonNull Task<Integer> task) throws Exception {
+                Log.i(TAG, "Synced " + task.getResult() + " new step count point(s) locally.");
+                return history.query(startTime, endTime);
+              }
+            })
+        .addOnSuccessListener(
+            new OnSuccessListener<List<FitDataPoint>>() {
+              @Override
+              public void onSuccess(List<FitDataPoint> points) {
+                Log.i(TAG, "Local store holds " + points.size() + " point(s) from the past week.");
+                // The same midnight-aligned days as a read through the cache, worked out without a
+                // round trip to the History API.
+                long[] days =
+                    LocalAggregator.getCalendarBounds(
+                        startTime, endTime, TimeZone.getDefault(), Calendar.DAY_OF_MONTH, 1);
+                List<LocalAggregator.Bucket> buckets =
+                    LocalAggregator.bucketByTime(
+                        FitDataBatch.of(FitDataType.STEP_COUNT_DELTA, null, points), days);
+                SortedMap<Long, List<FitDataPoint>> totals = new TreeMap<>();
+                for (LocalAggregator.Bucket bucket : buckets) {
+                  FitDataPoint total = bucket.getPoint();
+                  totals.put(
+                      bucket.getStartTimeMillis(),
+                      total != null
+                          ? Collections.singletonList(total)
+                          : Collections.<FitDataPoint>emptyList());
+                }
+                Log.i(TAG, "Daily totals from the local store:");
+                printDays(totals);
+              }
+            })
+        .addOnFailureListener(
+            new OnFailureListener() {
+              @Override
+              public void onFailure(@NonNull Exception e) {
+                Log.e(TAG, "There was a problem syncing the local step count history.", e);
+              }
+            });
+  }
+
+  /**
+   * Brings the local copies of step count data up to date after a write to a time range: drops
+   * the cached days it overlaps and reads the range into the local store again. Call it once per
+   * write, with the whole range written. The task's result is the number of points now stored
+   * for the range.
+   */
+  private Task<Integer> onStepDataWritten(long startTime, long endTime) {
+    getStepReader().invalidate(DataType.TYPE_STEP_COUNT_DELTA, startTime, endTime);
+    return getLocalHistory()
+        .resync(startTime, endTime)
+        .addOnFailureListener(
+            new OnFailureListener() {
+              @Override
+              public void onFailure(@NonNull Exception e) {
+                Log.e(TAG, "There was a problem syncing the changed step count data.", e);
+              }
+            });
+  }
+
   /**
    * Creates and returns a {@link DataSet} of step count data for insertion using the History API.
    */
@@ -268,21 +412,110 @@ public class MainActivity extends AppCompatActivity {
 
   // [START parse_dataset]
   private static void dumpDataSet(DataSet dataSet) {
+    // Dumping every field of every point is wasted work if nothing would be logged at INFO.
+    if (!Log.isLoggable(Log.INFO, TAG)) {
+      return;
+    }
     Log.i(TAG, "Data returned for Data type: " + dataSet.getDataType().getName());
-    DateFormat dateFormat = getTimeInstance();
 
     for (DataPoint dp : dataSet.getDataPoints()) {
-      Log.i(TAG, "Data point:");
-      Log.i(TAG, "\tType: " + dp.getDataType().getName());
-      Log.i(TAG, "\tStart: " + dateFormat.format(dp.getStartTime(TimeUnit.MILLISECONDS)));
-      Log.i(TAG, "\tEnd: " + dateFormat.format(dp.getEndTime(TimeUnit.MILLISECONDS)));
+      // One structured record per point. Times and numbers stay unformatted until the on-screen
+      // log shows them.
+      LogRecord event =
+          Log.event(TAG)
+              .setMessage("Data point")
+              .kv("type", dp.getDataType().getName())
+              .kvTime("start", dp.getStartTime(TimeUnit.MILLISECONDS))
+              .kvTime("end", dp.getEndTime(TimeUnit.MILLISECONDS));
       for (Field field : dp.getDataType().getFields()) {
-        Log.i(TAG, "\tField: " + field.getName() + " Value: " + dp.getValue(field));
+        Value value = dp.getValue(field);
+        if (value.getFormat() == Field.FORMAT_INT32) {
+          event.kv(field.getName(), value.asInt());
+        } else if (value.getFormat() == Field.FORMAT_FLOAT) {
+          event.kv(field.getName(), value.asFloat());
+        } else {
+          event.kv(field.getName(), value.toString());
+        }
       }
+      event.emit();
     }
   }
   // [END parse_dataset]
 
+  /**
+   * Logs a record of the daily totals read. In this sample, logging also prints to the device
+   * screen, so we can see what the query returns, but your app should not log fitness information
+   * as a privacy consideration. A better option would be to dump the data you receive to a local
+   * data directory to avoid exposing it to other applications.
+   */
+  public static void printDays(SortedMap<Long, List<FitDataPoint>> days) {
+    Log.i(TAG, "Number of returned days is: " + days.size());
+    DateFormat dateFormat = getDateInstance();
+    for (Map.Entry<Long, List<FitDataPoint>> day : days.entrySet()) {
+      Log.i(TAG, "Data returned for: " + dateFormat.format(day.getKey()));
+      // One structured record per point. Times and numbers stay unformatted until the on-screen
+      // log shows them.
+      for (FitDataPoint point : day.getValue()) {
+        DataPointFormatter.log(TAG, point);
+      }
+    }
+  }
+
+  /**
+   * Inserts step count data for every 5 minutes of the past 30 days, as an app importing the
+   * history of a pedometer would. That is far more than one data set may hold, so {@link
+   * BulkInserter} splits it into chunks and keeps a few inserts in flight at once.
+   */
+  private void backfillData() {
+    // Whole 5 minute periods, ending at the last one which is over.
+    final long periodMillis = TimeUnit.MINUTES.toMillis(5);
+    final long endTime = System.currentTimeMillis() / periodMillis * periodMillis;
+    final long startTime = endTime - TimeUnit.DAYS.toMillis(30);
+
+    Random random = new Random();
+    List<FitDataPoint> points = new ArrayList<>();
+    for (long start = startTime; start < endTime; start += periodMillis) {
+      // Made up counts: most periods are spent sitting still.
+      int steps = random.nextInt(4) == 0 ? 100 + random.nextInt(500) : random.nextInt(20);
+      points.add(
+          new FitDataPoint(FitDataType.STEP_COUNT_DELTA, start, start + periodMillis, null, steps));
+    }
+
+    DataSource dataSource =
+        new DataSource.Builder()
+            .setAppPackageName(this)
+            .setDataType(DataType.TYPE_STEP_COUNT_DELTA)
+            .setStreamName(TAG + " - step count")
+            .setType(DataSource.TYPE_RAW)
+            .build();
+    HistoryClientWriter writer =
+        new HistoryClientWriter(
+            Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this)),
+            dataSource);
+
+    Log.i(TAG, "Backfilling " + points.size() + " data points.");
+    new BulkInserter(writer)
+        .insert(
+            points,
+            new BulkInserter.Listener() {
+              @Override
+              public void onProgress(long insertedPoints, long totalPoints) {
+                Log.d(TAG, "Inserted " + insertedPoints + " of " + totalPoints + " data points.");
+              }
+
+              @Override
+              public void onComplete(BulkInserter.Result result) {
+                // Even a partial backfill changed the data, so bring the local copies up to date.
+                onStepDataWritten(startTime, endTime);
+                if (result.isSuccessful()) {
+                  Log.i(TAG, "Backfill was successful: " + result);
+                } else {
+                  Log.e(TAG, "There was a problem backfilling: " + result, result.getLastFailure());
+                }
+              }
+            });
+  }
+
   /**
    * Deletes a {@link DataSet} from the History API. In this example, we delete all step count data
    * for the past 24 hours.
@@ -308,12 +541,15 @@ public class MainActivity extends AppCompatActivity {
 
     // Invoke the History API with the HistoryClient object and delete request, and then
     // specify a callback that will check the result.
+    final long deletedStartTime = startTime;
+    final long deletedEndTime = endTime;
     Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this))
         .deleteData(request)
         .addOnCompleteListener(
             new OnCompleteListener<Void>() {
               @Override
               public void onComplete(@NonNull Task<Void> task) {
+                onStepDataWritten(deletedStartTime, deletedEndTime);
                 if (task.isSuccessful()) {
                   Log.i(TAG, "Successfully deleted today's step count data.");
                 } else {
@@ -330,9 +566,10 @@ public class MainActivity extends AppCompatActivity {
   private void updateAndReadData() {
     updateData()
         .continueWithTask(
-            new Continuation<Void, Task<DataReadResponse>>() {
+            new Continuation<Void, Task<SortedMap<Long, List<FitDataPoint>>>>() {
               @Override
-              public Task<DataReadResponse> then(@NonNull Task<Void> task) throws Exception {
+              public Task<SortedMap<Long, List<FitDataPoint>>> then(@NonNull Task<Void> task)
+                  throws Exception {
                 return readHistoryData();
               }
             });
@@ -364,12 +601,15 @@ public class MainActivity extends AppCompatActivity {
             .build();
 
     // Invoke the History API to update data.
+    final long updatedStartTime = startTime;
+    final long updatedEndTime = endTime;
     return Fitness.getHistoryClient(this, GoogleSignIn.getLastSignedInAccount(this))
         .updateData(request)
         .addOnCompleteListener(
             new OnCompleteListener<Void>() {
               @Override
               public void onComplete(@NonNull Task<Void> task) {
+                onStepDataWritten(updatedStartTime, updatedEndTime);
                 if (task.isSuccessful()) {
                   // At this point the data has been updated and can be read.
                   Log.i(TAG, "Data update was successful.");
@@ -434,6 +674,10 @@ public class MainActivity extends AppCompatActivity {
     } else if (id == R.id.action_update_data) {
       clearLogView();
       updateAndReadData();
+    } else if (id == R.id.action_backfill_data) {
+      clearLogView();
+      backfillData();
+      return true;
     }
     return super.onOptionsItemSelected(item);
   }
@@ -446,13 +690,22 @@ public class MainActivity extends AppCompatActivity {
 
   /** Initializes a custom log class that outputs both to in-app targets and logcat. */
   private void initializeLogging() {
-    // Wraps Android's native log framework.
-    LogWrapper logWrapper = new LogWrapper();
-    // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-    Log.setLogNode(logWrapper);
+    // The chain outlives this Activity, so build it only once per process. Everything tied to
+    // the Activity is attached to the registry at its end, which lets go of it on destroy.
+    LogSinkRegistry registry = LogSinkRegistry.getInstance();
+    if (Log.getLogNode() == null) {
+      // Wraps Android's native log framework.
+      LogWrapper logWrapper = new LogWrapper();
+      // A failing read logs the same error on every attempt, so collapse repeats into a count.
+      DuplicateCollapsingLogFilter dedupFilter = new DuplicateCollapsingLogFilter(logWrapper);
+      // Failed inserts and deletes repeat the same deep stack trace, so print it in full once.
+      StackTraceCache.setCollapseRepeats(true);
+      logWrapper.setNext(registry);
+      // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
+      Log.setLogNode(dedupFilter);
+    }
     // Filter strips out everything except the message text.
-    MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
-    logWrapper.setNext(msgFilter);
+    mLogFilter = new MessageOnlyLogFilter();
     // On screen logging via a customized TextView.
     LogView logView = (LogView) findViewById(R.id.sample_logview);
 
@@ -461,7 +714,8 @@ public class MainActivity extends AppCompatActivity {
     logView.setTextAppearance(R.style.Log);
 
     logView.setBackgroundColor(Color.WHITE);
-    msgFilter.setNext(logView);
+    mLogFilter.setNext(logView);
+    registry.attach(this, mLogFilter);
     Log.i(TAG, "Ready.");
   }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import com.google.android.gms.fitness.data.Bucket;
+import com.google.android.gms.fitness.data.DataPoint;
+import com.google.android.gms.fitness.data.DataSet;
+import com.google.android.gms.fitness.data.DataSource;
+import com.google.android.gms.fitness.data.DataType;
+import com.google.android.gms.fitness.data.Field;
+import com.google.android.gms.fitness.result.DataReadResponse;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the platform's data points into {@link FitDataPoint}s or {@link FitDataBatch}es, which
+ * the common code uses, and back. The Android side of the data classes in FitCore, so it is kept
+ * with each sample which needs it, as the same file in every copy.
+ */
+public final class DataPointConverter {
+
+    private DataPointConverter() {
+    }
+
+    /**
+     * Copies the points of a data set to a list, skipping any with a field which is not a number.
+     */
+    public static void addAll(DataSet dataSet, List<FitDataPoint> out) {
+        for (DataPoint dp : dataSet.getDataPoints()) {
+            FitDataPoint point = toFitDataPoint(dp);
+            if (point != null) {
+                out.add(point);
+            }
+        }
+    }
+
+    /** Copies a platform data point, or returns null if it has a field which is not a number. */
+    public static FitDataPoint toFitDataPoint(DataPoint dp) {
+        FitDataType dataType = toFitDataType(dp.getDataType());
+        if (dataType == null) {
+            return null;
+        }
+        List<Field> fields = dp.getDataType().getFields();
+        double[] values = new double[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.getFormat() == Field.FORMAT_INT32) {
+                values[i] = dp.getValue(field).asInt();
+            } else {
+                values[i] = dp.getValue(field).asFloat();
+            }
+        }
+        return new FitDataPoint(dataType, dp.getStartTime(TimeUnit.MILLISECONDS),
+                dp.getEndTime(TimeUnit.MILLISECONDS),
+                dp.getDataSource().getStreamIdentifier(), values);
+    }
+
+    /**
+     * Creates a data set of a data source holding copies of points. The points must have the data
+     * source's data type.
+     */
+    public static DataSet toDataSet(DataSource dataSource, List<FitDataPoint> points) {
+        DataSet dataSet = DataSet.create(dataSource);
+        List<Field> fields = dataSource.getDataType().getFields();
+        for (FitDataPoint point : points) {
+            DataPoint dp = dataSet.createDataPoint().setTimeInterval(
+                    point.getStartTimeMillis(), point.getEndTimeMillis(), TimeUnit.MILLISECONDS);
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                if (field.getFormat() == Field.FORMAT_INT32) {
+                    dp.getValue(field).setInt(point.getInt(i));
+                } else {
+                    dp.getValue(field).setFloat((float) point.getValue(i));
+                }
+            }
+            dataSet.add(dp);
+        }
+        return dataSet;
+    }
+
+    /** Copies a platform data type, or returns null if it has a field which is not a number. */
+    public static FitDataType toFitDataType(DataType dataType) {
+        List<Field> fields = dataType.getFields();
+        FitField[] fitFields = new FitField[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.getFormat() != Field.FORMAT_INT32
+                    && field.getFormat() != Field.FORMAT_FLOAT) {
+                return null;
+            }
+            fitFields[i] = new FitField(field.getName(), field.getFormat());
+        }
+        return new FitDataType(dataType.getName(), fitFields);
+    }
+
+    /**
+     * Copies the points of a data set into a batch, column by column, without a
+     * {@link FitDataPoint} per point. The data type must have only number fields.
+     */
+    public static FitDataBatch toBatch(DataSet dataSet) {
+        List<DataPoint> points = dataSet.getDataPoints();
+        FitDataBatch batch = new FitDataBatch(toNumericType(dataSet.getDataType()),
+                dataSet.getDataSource().getStreamIdentifier(), points.size());
+        addAll(dataSet, batch);
+        return batch;
+    }
+
+    /**
+     * Copies every point of a data type in a response, from its data sets and from the data sets
+     * of its buckets, into one batch. The batch has no source, as the points may come from
+     * several. The data type must have only number fields.
+     */
+    public static FitDataBatch toBatch(DataReadResponse response, DataType dataType) {
+        FitDataBatch batch = new FitDataBatch(toNumericType(dataType), null);
+        for (DataSet dataSet : response.getDataSets()) {
+            if (dataSet.getDataType().equals(dataType)) {
+                addAll(dataSet, batch);
+            }
+        }
+        for (Bucket bucket : response.getBuckets()) {
+            DataSet dataSet = bucket.getDataSet(dataType);
+            if (dataSet != null) {
+                addAll(dataSet, batch);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Creates a data set of a data source holding copies of the points of a batch. The batch must
+     * have the data source's data type.
+     */
+    public static DataSet toDataSet(DataSource dataSource, FitDataBatch batch) {
+        DataSet dataSet = DataSet.create(dataSource);
+        List<Field> fields = dataSource.getDataType().getFields();
+        long[] starts = batch.getStartTimes();
+        long[] ends = batch.getEndTimes();
+        for (int row = 0; row < batch.size(); row++) {
+            DataPoint dp = dataSet.createDataPoint()
+                    .setTimeInterval(starts[row], ends[row], TimeUnit.MILLISECONDS);
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                if (field.getFormat() == Field.FORMAT_INT32) {
+                    dp.getValue(field).setInt(batch.getInts(i)[row]);
+                } else {
+                    dp.getValue(field).setFloat(batch.getFloats(i)[row]);
+                }
+            }
+            dataSet.add(dp);
+        }
+        return dataSet;
+    }
+
+    private static FitDataType toNumericType(DataType dataType) {
+        FitDataType fitDataType = toFitDataType(dataType);
+        if (fitDataType == null) {
+            throw new IllegalArgumentException(dataType.getName()
+                    + " has a field which is not a number");
+        }
+        return fitDataType;
+    }
+
+    /** Appends the points of a data set of the batch's type to a batch. */
+    private static void addAll(DataSet dataSet, FitDataBatch batch) {
+        // Look the fields up once rather than once per point.
+        List<Field> fields = dataSet.getDataType().getFields();
+        Field[] fieldArray = fields.toArray(new Field[fields.size()]);
+        for (DataPoint dp : dataSet.getDataPoints()) {
+            int row = batch.add(dp.getStartTime(TimeUnit.MILLISECONDS),
+                    dp.getEndTime(TimeUnit.MILLISECONDS));
+            for (int i = 0; i < fieldArray.length; i++) {
+                Field field = fieldArray[i];
+                if (field.getFormat() == Field.FORMAT_INT32) {
+                    batch.setInt(i, row, dp.getValue(field).asInt());
+                } else {
+                    batch.setFloat(i, row, dp.getValue(field).asFloat());
+                }
+            }
+        }
+    }
+}
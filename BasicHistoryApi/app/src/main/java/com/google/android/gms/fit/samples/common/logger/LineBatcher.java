@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects lines of log output from any thread and hands them to the UI thread in one batch per
+ * display frame. Used by the on-screen log views so that a burst of lines costs one update of the
+ * view instead of one per line.
+ *
+ * @param <T> The form the view takes lines in, such as plain text or finished layouts.
+ */
+class LineBatcher<T> {
+
+    /** Receives each batch of lines on the UI thread. */
+    interface Target<T> {
+        /**
+         * Called once per frame with every line queued since the previous frame.
+         * @param lines The queued lines, oldest first. Only valid for the duration of the call.
+         */
+        void appendLines(List<T> lines);
+    }
+
+    // Lines waiting for the next frame. Written by any thread, drained on the UI thread.
+    private final ConcurrentLinkedQueue<T> mPendingLines = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    // Only set on Jelly Bean and up, where Choreographer is available.
+    private FrameFlusher mFrameFlusher;
+
+    // Reused across flushes; only touched on the UI thread.
+    private final List<T> mBatch = new ArrayList<>();
+    private final Target<T> mTarget;
+
+    private volatile int mLastFlushLineCount;
+    private volatile long mLastFlushDurationNanos;
+
+    /**
+     * Creates a batcher. When created on the UI thread on Jelly Bean or later, flushes are
+     * aligned with display frames; otherwise they are posted to the main looper.
+     */
+    LineBatcher(Target<T> target) {
+        mTarget = target;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                && Looper.myLooper() == Looper.getMainLooper()) {
+            mFrameFlusher = new FrameFlusher(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Queues a line for the next frame. Safe to call from any thread. The line must not change
+     * afterwards.
+     */
+    void add(T line) {
+        mPendingLines.offer(line);
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            if (mFrameFlusher != null) {
+                mFrameFlusher.post();
+            } else {
+                mHandler.post(mFlushRunnable);
+            }
+        }
+    }
+
+    /** Returns the number of lines handed over by the most recent flush. */
+    int getLastFlushLineCount() {
+        return mLastFlushLineCount;
+    }
+
+    /** Returns how long the most recent flush took, in nanoseconds. */
+    long getLastFlushDurationNanos() {
+        return mLastFlushDurationNanos;
+    }
+
+    /** Hands every queued line to the target in a single call. Runs on the UI thread. */
+    private void flush() {
+        long start = System.nanoTime();
+        // Clear the flag first, so a line queued while we drain schedules another frame.
+        mFlushScheduled.set(false);
+
+        T line;
+        while ((line = mPendingLines.poll()) != null) {
+            mBatch.add(line);
+        }
+        int count = mBatch.size();
+        if (count > 0) {
+            mTarget.appendLines(mBatch);
+            mBatch.clear();
+        }
+
+        mLastFlushLineCount = count;
+        mLastFlushDurationNanos = System.nanoTime() - start;
+    }
+
+    /** Runs the flush from a Choreographer frame callback, once per display frame. */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameFlusher implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+        private final Runnable mFlush;
+
+        FrameFlusher(Runnable flush) {
+            mFlush = flush;
+        }
+
+        void post() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFlush.run();
+        }
+    }
+}
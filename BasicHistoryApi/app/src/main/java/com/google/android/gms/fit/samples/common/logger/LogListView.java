@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-screen log output for long-running sessions. Accepts the same data as {@link LogView}, but
+ * keeps only the most recent lines in a fixed-capacity circular buffer and lets the ListView
+ * create views for just the rows that are visible. Memory use stays flat no matter how much is
+ * logged, and scrolling does not get slower as the log grows.
+ *
+ * <p>With an {@link IndexedLogStore} in the chain, the view can also show just the records which
+ * match a query, such as errors only or a single tag; see {@link #setFilter}.</p>
+ */
+public class LogListView extends ListView implements LogRecordNode {
+
+    public static final int DEFAULT_CAPACITY = 2000;
+
+    // Only touched on the UI thread.
+    private final LineBuffer mLines = new LineBuffer(DEFAULT_CAPACITY);
+    private final LogAdapter mAdapter = new LogAdapter();
+    // The lines on screen: mLines, or the matches of the filter while one is set.
+    private LineBuffer mShownLines = mLines;
+    private IndexedLogStore mFilterStore;
+    private IndexedLogStore.Query mFilterQuery;
+    private boolean mFilterMessageOnly;
+    // Records up to this id have been checked against the filter.
+    private long mFilterCheckedId;
+
+    private final LineBatcher<String> mBatcher =
+            new LineBatcher<>(new LineBatcher.Target<String>() {
+                @Override
+                public void appendLines(List<String> lines) {
+                    for (int i = 0; i < lines.size(); i++) {
+                        mLines.add(lines.get(i));
+                    }
+                    if (mFilterQuery != null) {
+                        addFilterMatches();
+                    }
+                    mAdapter.notifyDataSetChanged();
+                }
+            });
+
+    private int mLineTextAppearance;
+
+    // The next LogNode in the chain.
+    LogNode mNext;
+
+    public LogListView(Context context) {
+        super(context);
+        init();
+    }
+
+    public LogListView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public LogListView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init();
+    }
+
+    private void init() {
+        setAdapter(mAdapter);
+        // Follow new lines while the user is looking at the bottom of the log, but don't yank
+        // them away from something they scrolled back to.
+        setTranscriptMode(TRANSCRIPT_MODE_NORMAL);
+    }
+
+    /**
+     * Formats the log data and queues it for display.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        appendToLog(LogView.formatLine(priority, tag, msg, tr));
+
+        if (mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Formats the record and queues it for display, then passes the same record down the chain.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        appendToLog(LogView.formatLine(record.getPriority(), record.getTag(),
+                LogView.displayMessage(record), record.getThrowable()));
+
+        LogRecord.dispatch(mNext, record);
+    }
+
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Outputs the string as a new line of log data. Safe to call from any thread; the line shows
+     * up on the next frame.
+     */
+    public void appendToLog(String s) {
+        mBatcher.add(s);
+    }
+
+    /**
+     * Sets how many lines are kept. When the log grows past this, the oldest lines are evicted.
+     * Must be called on the UI thread.
+     */
+    public void setCapacity(int capacity) {
+        mLines.resize(capacity);
+        if (mShownLines != mLines) {
+            mShownLines.resize(capacity);
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /** Returns the maximum number of lines kept. */
+    public int getCapacity() {
+        return mLines.capacity();
+    }
+
+    /** Returns the number of lines evicted to stay within the capacity. */
+    public long getEvictedLineCount() {
+        return mLines.evictedCount();
+    }
+
+    /** Removes every line from the log. Must be called on the UI thread. */
+    public void clear() {
+        mLines.clear();
+        mShownLines.clear();
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Shows only the records in a store which match a query, instead of every line logged.
+     * Matches are looked up through the store's index, so switching is quick however long the
+     * log is. While the filter is set, new matches are added whenever new lines arrive. Must be
+     * called on the UI thread.
+     *
+     * @param store The store to search. It should be in the same chain as this view.
+     * @param query What to show, or null to show every line again.
+     */
+    public void setFilter(IndexedLogStore store, IndexedLogStore.Query query) {
+        setFilter(store, query, false);
+    }
+
+    /**
+     * Like {@link #setFilter(IndexedLogStore, IndexedLogStore.Query)}, but can show the matches
+     * the way the lines logged are shown behind a {@link MessageOnlyLogFilter}, so that the log
+     * looks the same with the filter on or off. Must be called on the UI thread.
+     *
+     * @param store The store to search. It should be in the same chain as this view.
+     * @param query What to show, or null to show every line again.
+     * @param messageOnly Whether to show just the message of each match, without its priority,
+     *     tag and stack trace.
+     */
+    public void setFilter(IndexedLogStore store, IndexedLogStore.Query query,
+            boolean messageOnly) {
+        mFilterMessageOnly = messageOnly;
+        if (store == null || query == null) {
+            mFilterStore = null;
+            mFilterQuery = null;
+            mShownLines = mLines;
+        } else {
+            mFilterStore = store;
+            mFilterQuery = query;
+            mShownLines = new LineBuffer(mLines.capacity());
+            mFilterCheckedId = -1;
+            addFilterMatches();
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /** Returns the query set with {@link #setFilter}, or null if every line is shown. */
+    public IndexedLogStore.Query getFilter() {
+        return mFilterQuery;
+    }
+
+    private void addFilterMatches() {
+        long nextId = mFilterStore.getNextId();
+        List<IndexedLogStore.Entry> matches =
+                mFilterStore.search(mFilterQuery, mFilterCheckedId, mShownLines.capacity());
+        for (int i = 0; i < matches.size(); i++) {
+            IndexedLogStore.Entry entry = matches.get(i);
+            if (mFilterMessageOnly) {
+                mShownLines.add(LogView.formatLineWithTrace(Log.NONE, null, entry.getMessage(),
+                        null));
+            } else {
+                mShownLines.add(LogView.formatLineWithTrace(entry.getPriority(), entry.getTag(),
+                        entry.getMessage(), entry.getStackTrace()));
+            }
+        }
+        // Anything stored before the search started has now been checked, matching or not.
+        long checkedId = nextId - 1;
+        if (!matches.isEmpty()) {
+            checkedId = Math.max(checkedId, matches.get(matches.size() - 1).getId());
+        }
+        mFilterCheckedId = checkedId;
+    }
+
+    /** Sets the text appearance style applied to each line, for instance R.style.Log. */
+    public void setLineTextAppearance(int resId) {
+        mLineTextAppearance = resId;
+        mAdapter.notifyDataSetInvalidated();
+    }
+
+    /** Returns the number of lines appended by the most recent frame flush. */
+    public int getLastFlushLineCount() {
+        return mBatcher.getLastFlushLineCount();
+    }
+
+    /** Returns how long the most recent frame flush took, in nanoseconds. */
+    public long getLastFlushDurationNanos() {
+        return mBatcher.getLastFlushDurationNanos();
+    }
+
+    /** Supplies a recycled TextView per visible line. */
+    private class LogAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return mShownLines.size();
+        }
+
+        @Override
+        public String getItem(int position) {
+            return mShownLines.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = new TextView(getContext());
+                row.setTypeface(Typeface.MONOSPACE);
+                if (mLineTextAppearance != 0) {
+                    // Fixing this lint error adds logic without benefit.
+                    // noinspection AndroidLintDeprecation
+                    row.setTextAppearance(getContext(), mLineTextAppearance);
+                }
+            }
+            row.setText(mShownLines.get(position));
+            return row;
+        }
+    }
+
+    /** Circular buffer of lines which overwrites the oldest line once it is full. */
+    private static final class LineBuffer {
+        private String[] mLines;
+        private int mStart;
+        private int mSize;
+        private long mEvicted;
+
+        LineBuffer(int capacity) {
+            mLines = new String[capacity];
+        }
+
+        void add(String line) {
+            if (mSize < mLines.length) {
+                mLines[(mStart + mSize) % mLines.length] = line;
+                mSize++;
+            } else {
+                mLines[mStart] = line;
+                mStart = (mStart + 1) % mLines.length;
+                mEvicted++;
+            }
+        }
+
+        /** Returns the line at the given position, 0 being the oldest line kept. */
+        String get(int position) {
+            return mLines[(mStart + position) % mLines.length];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int capacity() {
+            return mLines.length;
+        }
+
+        long evictedCount() {
+            return mEvicted;
+        }
+
+        /** Changes the capacity, keeping the newest lines that still fit. */
+        void resize(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            int keep = Math.min(mSize, capacity);
+            String[] lines = new String[capacity];
+            for (int i = 0; i < keep; i++) {
+                lines[i] = get(mSize - keep + i);
+            }
+            mEvicted += mSize - keep;
+            mLines = lines;
+            mStart = 0;
+            mSize = keep;
+        }
+
+        void clear() {
+            Arrays.fill(mLines, null);
+            mStart = 0;
+            mSize = 0;
+        }
+    }
+}
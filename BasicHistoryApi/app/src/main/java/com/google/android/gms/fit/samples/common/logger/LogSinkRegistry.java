@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * {@link LogNode} which connects the long-lived part of the logging topology, held by the static
+ * {@link Log}, to sinks which belong to an Activity, such as a {@link LogView}. Without it, the
+ * static chain keeps the view, and through it the whole Activity, alive after the Activity is
+ * destroyed, for instance on every rotation.
+ *
+ * <p>Build the chain up to the registry once per process, and attach each Activity's sinks with
+ * {@link #attach(Activity, LogNode)}. The registry detaches them by itself when that Activity is
+ * destroyed. Sinks are only ever held weakly, so whoever attaches one must keep it alive, for
+ * instance in a field of the Activity; otherwise it goes away with the next garbage collection.</p>
+ *
+ * <p>Sinks are called in the order they were attached, outside the registry's lock, so a sink
+ * may log or attach and detach sinks itself without deadlocking.</p>
+ *
+ * <p>While no sink is attached, for instance between an Activity being destroyed and the next
+ * one being created, the most recent records are kept and passed to the next sink attached, so
+ * nothing logged during a configuration change goes missing from the screen.</p>
+ */
+public class LogSinkRegistry implements LogRecordNode {
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+    private static final LogSinkRegistry mInstance = new LogSinkRegistry();
+
+    private static final Sink[] NO_SINKS = new Sink[0];
+
+    /** An attached sink. */
+    private static final class Sink {
+        final WeakReference<LogNode> mNode;
+        final WeakReference<Activity> mActivity;
+
+        Sink(LogNode node, Activity activity) {
+            mNode = new WeakReference<LogNode>(node);
+            mActivity = activity != null ? new WeakReference<Activity>(activity) : null;
+        }
+
+        /** Returns the sink, or null once it or its Activity is gone. */
+        LogNode get() {
+            if (mActivity != null && mActivity.get() == null) {
+                return null;
+            }
+            return mNode.get();
+        }
+    }
+
+    // Guarded by this. Replaced rather than modified, in attach order, so that it can be read
+    // under the lock and then iterated outside it.
+    private Sink[] mSinks = NO_SINKS;
+    private final int mBufferCapacity;
+    // Slots are created as they are first needed, then reused.
+    private final LogRecord[] mBuffer;
+    private int mBufferStart;
+    private int mBufferSize;
+    private long mDroppedCount;
+    private final ArrayList<Application> mWatchedApplications = new ArrayList<Application>();
+
+    private final Application.ActivityLifecycleCallbacks mLifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityDestroyed(Activity activity) {
+                    detachAll(activity);
+                }
+
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                }
+
+                @Override
+                public void onActivityStarted(Activity activity) {
+                }
+
+                @Override
+                public void onActivityResumed(Activity activity) {
+                }
+
+                @Override
+                public void onActivityPaused(Activity activity) {
+                }
+
+                @Override
+                public void onActivityStopped(Activity activity) {
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                }
+            };
+
+    /**
+     * Returns the registry shared by the whole process.
+     */
+    public static LogSinkRegistry getInstance() {
+        return mInstance;
+    }
+
+    /**
+     * Creates a registry which keeps {@link #DEFAULT_BUFFER_CAPACITY} records while no sink is
+     * attached. Most apps should use {@link #getInstance()}.
+     */
+    public LogSinkRegistry() {
+        this(DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Creates a registry.
+     *
+     * @param bufferCapacity How many of the most recent records are kept while no sink is
+     *                       attached.
+     */
+    public LogSinkRegistry(int bufferCapacity) {
+        if (bufferCapacity < 0) {
+            throw new IllegalArgumentException("bufferCapacity must not be negative: "
+                    + bufferCapacity);
+        }
+        mBufferCapacity = bufferCapacity;
+        mBuffer = new LogRecord[bufferCapacity];
+    }
+
+    /**
+     * Attaches a sink until the given Activity is destroyed. Anything logged while no sink was
+     * attached is passed to it first. The sink is only held weakly, so the Activity has to keep
+     * a reference to it.
+     *
+     * @param activity The Activity the sink belongs to.
+     * @param sink The LogNode to pass records to, for instance a filter in front of a LogView.
+     */
+    public void attach(Activity activity, LogNode sink) {
+        if (activity == null) {
+            throw new NullPointerException("activity");
+        }
+        Application application = activity.getApplication();
+        synchronized (this) {
+            if (application != null && !mWatchedApplications.contains(application)) {
+                application.registerActivityLifecycleCallbacks(mLifecycleCallbacks);
+                mWatchedApplications.add(application);
+            }
+        }
+        add(new Sink(sink, activity));
+    }
+
+    /**
+     * Attaches a sink, holding it only weakly: it stays attached for as long as something else
+     * holds it, or until {@link #detach(LogNode)}. Anything logged while no sink was attached is
+     * passed to it first.
+     */
+    public void attach(LogNode sink) {
+        add(new Sink(sink, null));
+    }
+
+    /**
+     * Detaches a sink.
+     *
+     * @return true if the sink was attached.
+     */
+    public synchronized boolean detach(LogNode sink) {
+        for (int i = 0; i < mSinks.length; i++) {
+            if (mSinks[i].mNode.get() == sink) {
+                remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of sinks attached.
+     */
+    public synchronized int getSinkCount() {
+        pruneSinks();
+        return mSinks.length;
+    }
+
+    /**
+     * Returns the number of records thrown away because nothing was attached and the buffer was
+     * full.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Passes the log data to every attached sink, or keeps it until one is attached.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        Sink[] sinks;
+        synchronized (this) {
+            pruneSinks();
+            sinks = mSinks;
+            if (sinks.length == 0) {
+                LogRecord slot = nextSlot();
+                if (slot != null) {
+                    slot.clear();
+                    slot.set(priority, tag, msg, tr);
+                }
+                return;
+            }
+        }
+        for (Sink sink : sinks) {
+            // A sink can still go away between the snapshot and here; the next call prunes it.
+            LogNode node = sink.get();
+            if (node != null) {
+                node.println(priority, tag, msg, tr);
+            }
+        }
+    }
+
+    /**
+     * Passes the record to every attached sink, or keeps a copy, key-value pairs included, until
+     * one is attached.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        Sink[] sinks;
+        synchronized (this) {
+            pruneSinks();
+            sinks = mSinks;
+            if (sinks.length == 0) {
+                LogRecord slot = nextSlot();
+                if (slot != null) {
+                    slot.copyFrom(record);
+                }
+                return;
+            }
+        }
+        for (Sink sink : sinks) {
+            LogNode node = sink.get();
+            if (node != null) {
+                LogRecord.dispatch(node, record);
+            }
+        }
+    }
+
+    private void add(Sink sink) {
+        LogNode node = sink.get();
+        if (node == null) {
+            throw new NullPointerException("sink");
+        }
+        LogRecord[] buffered;
+        synchronized (this) {
+            Sink[] sinks = new Sink[mSinks.length + 1];
+            System.arraycopy(mSinks, 0, sinks, 0, mSinks.length);
+            sinks[mSinks.length] = sink;
+            mSinks = sinks;
+            // Take over what was logged while nothing was attached. The slots are handed out
+            // with the records and recreated as they are next needed.
+            buffered = new LogRecord[mBufferSize];
+            for (int i = 0; i < mBufferSize; i++) {
+                int index = (mBufferStart + i) % mBufferCapacity;
+                buffered[i] = mBuffer[index];
+                mBuffer[index] = null;
+            }
+            mBufferStart = 0;
+            mBufferSize = 0;
+        }
+        // Records logged while these are passed on may reach the sink first.
+        for (LogRecord record : buffered) {
+            LogRecord.dispatch(node, record);
+        }
+    }
+
+    private synchronized void detachAll(Activity activity) {
+        pruneSinks();
+        for (int i = mSinks.length - 1; i >= 0; i--) {
+            WeakReference<Activity> owner = mSinks[i].mActivity;
+            if (owner != null && owner.get() == activity) {
+                remove(i);
+            }
+        }
+    }
+
+    /** Drops the sinks which have gone away. Called with the lock held. */
+    private void pruneSinks() {
+        for (int i = mSinks.length - 1; i >= 0; i--) {
+            if (mSinks[i].get() == null) {
+                remove(i);
+            }
+        }
+    }
+
+    /** Replaces the sinks with a copy lacking the one at the index. Called with the lock held. */
+    private void remove(int index) {
+        if (mSinks.length == 1) {
+            mSinks = NO_SINKS;
+            return;
+        }
+        Sink[] sinks = new Sink[mSinks.length - 1];
+        System.arraycopy(mSinks, 0, sinks, 0, index);
+        System.arraycopy(mSinks, index + 1, sinks, index, sinks.length - index);
+        mSinks = sinks;
+    }
+
+    /**
+     * Returns the buffer slot to keep the next record in, overwriting the oldest when full, or
+     * null if nothing is kept.
+     */
+    private LogRecord nextSlot() {
+        if (mBufferCapacity == 0) {
+            mDroppedCount++;
+            return null;
+        }
+        int index;
+        if (mBufferSize < mBufferCapacity) {
+            index = (mBufferStart + mBufferSize) % mBufferCapacity;
+            mBufferSize++;
+        } else {
+            index = mBufferStart;
+            mBufferStart = (mBufferStart + 1) % mBufferCapacity;
+            mDroppedCount++;
+        }
+        if (mBuffer[index] == null) {
+            mBuffer[index] = new LogRecord();
+        }
+        return mBuffer[index];
+    }
+}
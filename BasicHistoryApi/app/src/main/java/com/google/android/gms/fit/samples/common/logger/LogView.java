@@ -15,25 +15,137 @@
  */
 package com.google.android.gms.fit.samples.common.logger;
 
-import android.app.Activity;
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.text.Layout;
 import android.util.AttributeSet;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Simple TextView which is used to output log data received through the LogNode interface.
+ *
+ * <p>Lines can arrive from any thread. They are queued and added to the view in one batch per
+ * display frame, so a burst of hundreds of lines costs a single relayout rather than one each.</p>
+ *
+ * <p>Before that, each line is coloured by priority, given tab stops for the tag and message
+ * columns, and laid out on a background thread. The view draws those layouts below its own text,
+ * which is normally empty, so the UI thread does not measure the lines again. Setting the text,
+ * for instance to "" to clear the log, removes every line.</p>
 */
-public class LogView extends TextView implements LogNode {
+public class LogView extends TextView implements LogRecordNode {
+
+    private final LineBatcher<LineStyler.StyledLine> mBatcher =
+            new LineBatcher<>(new LineBatcher.Target<LineStyler.StyledLine>() {
+                @Override
+                public void appendLines(List<LineStyler.StyledLine> lines) {
+                    // Lines styled from now on are laid out against the view as it is now.
+                    updateMetrics();
+                    for (int i = 0; i < lines.size(); i++) {
+                        LineStyler.StyledLine line = mStyler.relayout(lines.get(i));
+                        mLines.add(line);
+                        mLinesHeight += line.mLayout.getHeight();
+                    }
+                    requestLayout();
+                    invalidate();
+                }
+            });
+    private final LineStyler mStyler;
+
+    // Only touched on the UI thread. The lines added so far, oldest first, and their height.
+    private final ArrayList<LineStyler.StyledLine> mLines = new ArrayList<>();
+    private int mLinesHeight;
+    // The width lines are laid out to: the screen's until the view is measured.
+    private int mTextWidth;
+    private final Rect mClipBounds = new Rect();
 
     public LogView(Context context) {
         super(context);
+        mStyler = createStyler();
     }
 
     public LogView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        mStyler = createStyler();
     }
 
     public LogView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        mStyler = createStyler();
+    }
+
+    private LineStyler createStyler() {
+        mTextWidth = Math.max(1, getResources().getDisplayMetrics().widthPixels
+                - getCompoundPaddingLeft() - getCompoundPaddingRight());
+        return new LineStyler(mBatcher, getPaint(), mTextWidth);
+    }
+
+    /**
+     * Lays every line out again if the paint or width has changed since, for instance after a
+     * rotation or a new text appearance.
+     */
+    private void updateMetrics() {
+        if (!mStyler.setMetrics(getPaint(), mTextWidth)) {
+            return;
+        }
+        mLinesHeight = 0;
+        for (int i = 0; i < mLines.size(); i++) {
+            LineStyler.StyledLine line = mStyler.relayout(mLines.get(i));
+            mLines.set(i, line);
+            mLinesHeight += line.mLayout.getHeight();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        int width = getMeasuredWidth();
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            // Take all the room there is, as the TextView only measured its own text.
+            width = Math.max(width, MeasureSpec.getSize(widthMeasureSpec));
+        }
+        int textWidth = width - getCompoundPaddingLeft() - getCompoundPaddingRight();
+        if (textWidth > 0) {
+            mTextWidth = textWidth;
+        }
+        updateMetrics();
+        setMeasuredDimension(width, getMeasuredHeight() + mLinesHeight);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        Layout ownText = getLayout();
+        int top = getExtendedPaddingTop() + (ownText != null ? ownText.getHeight() : 0);
+        // Only draw the lines which are on screen, which in a long log are a few of them.
+        canvas.getClipBounds(mClipBounds);
+        int saveCount = canvas.save();
+        canvas.translate(getCompoundPaddingLeft(), top);
+        for (int i = 0; i < mLines.size() && top < mClipBounds.bottom; i++) {
+            Layout layout = mLines.get(i).mLayout;
+            int height = layout.getHeight();
+            if (top + height > mClipBounds.top) {
+                layout.draw(canvas);
+            }
+            canvas.translate(0, height);
+            top += height;
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Sets the view's own text, shown above the lines, and removes every line.
+     */
+    @Override
+    public void setText(CharSequence text, BufferType type) {
+        super.setText(text, type);
+        // TextView's constructor sets its text before this class is initialized.
+        if (mLines != null) {
+            mLines.clear();
+            mLinesHeight = 0;
+        }
     }
 
     /**
@@ -46,39 +158,68 @@ public class LogView extends TextView implements LogNode {
      */
     @Override
     public void println(int priority, String tag, String msg, Throwable tr) {
+        // In case this was originally called from an AsyncTask or some other off-UI thread,
+        // the line is queued and the UI thread picks it up on the next frame.
+        mStyler.add(priority, formatLine(priority, tag, msg, tr));
 
-        
-        String priorityStr = null;
-
-        // For the purposes of this View, we want to print the priority as readable text.
-        switch(priority) {
-            case Log.VERBOSE:
-                priorityStr = "VERBOSE";
-                break;
-            case Log.DEBUG:
-                priorityStr = "DEBUG";
-                break;
-            case Log.INFO:
-                priorityStr = "INFO";
-                break;
-            case Log.WARN:
-                priorityStr = "WARN";
-                break;
-            case Log.ERROR:
-                priorityStr = "ERROR";
-                break;
-            case Log.ASSERT:
-                priorityStr = "ASSERT";
-                break;
-            default:
-                break;
+        if (mNext != null) {
+            mNext.println(priority, tag, msg, tr);
         }
+    }
+
+    /**
+     * Formats the record and queues it for display, then passes the same record down the chain.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        mStyler.add(record.getPriority(), formatLine(record.getPriority(), record.getTag(),
+                displayMessage(record), record.getThrowable()));
+
+        LogRecord.dispatch(mNext, record);
+    }
 
-        // Handily, the Log class has a facility for converting a stack trace into a usable string.
+    // Readable names of the priorities, indexed by priority.
+    private static final String[] PRIORITY_NAMES = new String[Log.ASSERT + 1];
+    static {
+        PRIORITY_NAMES[Log.VERBOSE] = "VERBOSE";
+        PRIORITY_NAMES[Log.DEBUG] = "DEBUG";
+        PRIORITY_NAMES[Log.INFO] = "INFO";
+        PRIORITY_NAMES[Log.WARN] = "WARN";
+        PRIORITY_NAMES[Log.ERROR] = "ERROR";
+        PRIORITY_NAMES[Log.ASSERT] = "ASSERT";
+    }
+
+    /**
+     * Returns the message of a record as shown on screen: the message itself, followed by its
+     * key-value pairs if it has any. Shared with {@link LogListView}.
+     */
+    static CharSequence displayMessage(LogRecord record) {
+        return record.getFields().size() == 0 ? record.getMessage() : record.getText();
+    }
+
+    /**
+     * Takes the priority, tag, message, and exception, and concatenates them as necessary
+     * into one usable line of text. Shared with {@link LogListView}.
+     */
+    static String formatLine(int priority, String tag, CharSequence msg, Throwable tr) {
+        // Stack traces are formatted once per Throwable and shared with the rest of the chain.
         String exceptionStr = null;
         if (tr != null) {
-            exceptionStr = android.util.Log.getStackTraceString(tr);
+            exceptionStr = StackTraceCache.getStackTraceString(tr);
         }
+        return formatLineWithTrace(priority, tag, msg, exceptionStr);
+    }
+
+    /**
+     * Like {@link #formatLine(int, String, CharSequence, Throwable)}, for a stack trace which
+     * has already been formatted, such as one kept by {@link IndexedLogStore}.
+     */
+    static String formatLineWithTrace(int priority, String tag, CharSequence msg,
+            String exceptionStr) {
+        // For the purposes of this View, we want to print the priority as readable text.
+        String priorityStr = priority >= 0 && priority < PRIORITY_NAMES.length
+                ? PRIORITY_NAMES[priority] : null;
 
         // Take the priority, tag, message, and exception, and concatenate as necessary
         // into one usable line of text.
@@ -89,20 +230,7 @@ public class LogView extends TextView implements LogNode {
         appendIfNotNull(outputBuilder, tag, delimiter);
         appendIfNotNull(outputBuilder, msg, delimiter);
         appendIfNotNull(outputBuilder, exceptionStr, delimiter);
-
-        // In case this was originally called from an AsyncTask or some other off-UI thread,
-        // make sure the update occurs within the UI thread.
-        ((Activity) getContext()).runOnUiThread( (new Thread(new Runnable() {
-            @Override
-            public void run() {
-                // Display the text we just generated within the LogView.
-                appendToLog(outputBuilder.toString());
-            }
-        })));
-
-        if (mNext != null) {
-            mNext.println(priority, tag, msg, tr);
-        }
+        return outputBuilder.toString();
     }
 
     public LogNode getNext() {
@@ -117,12 +245,13 @@ public class LogView extends TextView implements LogNode {
      * the logger takes so many arguments that might be null, this method helps cut out some of the
      * agonizing tedium of writing the same 3 lines over and over.
      * @param source StringBuilder containing the text to append to.
-     * @param addStr The String to append
+     * @param addStr The text to append
      * @param delimiter The String to separate the source and appended strings. A tab or comma,
      *                  for instance.
      * @return The fully concatenated String as a StringBuilder
      */
-    private StringBuilder appendIfNotNull(StringBuilder source, String addStr, String delimiter) {
+    private static StringBuilder appendIfNotNull(StringBuilder source, CharSequence addStr,
+            String delimiter) {
         if (addStr != null) {
             if (addStr.length() == 0) {
                 delimiter = "";
@@ -136,10 +265,21 @@ public class LogView extends TextView implements LogNode {
     // The next LogNode in the chain.
     LogNode mNext;
 
-    /** Outputs the string as a new line of log data in the LogView. */
+    /**
+     * Outputs the string as a new line of log data in the LogView. Safe to call from any thread;
+     * the line is styled in the background and shows up on a following frame.
+     */
     public void appendToLog(String s) {
-        append("\n" + s);
+        mStyler.add(Log.NONE, s);
     }
 
+    /** Returns the number of lines appended by the most recent frame flush. */
+    public int getLastFlushLineCount() {
+        return mBatcher.getLastFlushLineCount();
+    }
 
+    /** Returns how long the most recent frame flush took, in nanoseconds. */
+    public long getLastFlushDurationNanos() {
+        return mBatcher.getLastFlushDurationNanos();
+    }
 }
@@ -21,7 +21,7 @@ import android.util.Log;
  * Helper class which wraps Android's native Log utility in the Logger interface.  This way
  * normal DDMS output can be one of the many targets receiving and outputting logs simultaneously.
  */
-public class LogWrapper implements LogNode {
+public class LogWrapper implements LogRecordNode {
 
     // For piping:  The next node to receive Log data after this one has done its work.
     private LogNode mNext;
@@ -58,9 +58,10 @@ public class LogWrapper implements LogNode {
         }
 
         // If an exeption was provided, convert that exception to a usable string and attach
-        // it to the end of the msg method.
+        // it to the end of the msg method. The cache formats each exception only once for the
+        // whole chain.
         if (tr != null) {
-            msg += "\n" + Log.getStackTraceString(tr);
+            msg += "\n" + StackTraceCache.getStackTraceString(tr);
         }
 
         // This is functionally identical to Log.x(tag, useMsg);
@@ -72,4 +73,19 @@ public class LogWrapper implements LogNode {
             mNext.println(priority, tag, msg, tr);
         }
     }
+
+    /**
+     * Prints the record out to the console using Android's native log mechanism, then passes the
+     * same record down the chain.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        // Android's log only takes Strings, so this is the one copy made on this path, and where
+        // any key-value pairs are turned into text.
+        String msg = record.getText();
+        Log.println(record.getPriority(), record.getTag(), msg == null ? "" : msg);
+
+        LogRecord.dispatch(mNext, record);
+    }
 }
@@ -32,7 +32,10 @@ import android.view.MenuItem;
 import android.view.View;
 
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.fit.samples.common.data.DataPointConverter;
+import com.google.android.gms.fit.samples.common.data.DataPointDumper;
 import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogSinkRegistry;
 import com.google.android.gms.fit.samples.common.logger.LogView;
 import com.google.android.gms.fit.samples.common.logger.LogWrapper;
 import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
@@ -54,14 +57,11 @@ import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
 
-import java.text.DateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import static java.text.DateFormat.getTimeInstance;
-
 
 /**
  * This sample demonstrates how to use the Sessions API of the Google Fit platform to insert
@@ -77,6 +77,11 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_OAUTH_REQUEST_CODE = 1;
     private static final int REQUEST_PERMISSIONS_REQUEST_CODE = 34;
 
+    // Only used on the main thread, where the read listeners run.
+    private final DataPointDumper mDumper = new DataPointDumper();
+    // The head of this Activity's on-screen logging. The LogSinkRegistry only holds it weakly.
+    private MessageOnlyLogFilter mLogFilter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -368,26 +373,32 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void dumpDataSet(DataSet dataSet) {
+        // Dumping every field of every point is wasted work if nothing would be logged at INFO.
+        if (!Log.isLoggable(Log.INFO, TAG)) {
+            return;
+        }
         Log.i(TAG, "Data returned for Data type: " + dataSet.getDataType().getName());
-        for (DataPoint dp : dataSet.getDataPoints()) {
-            DateFormat dateFormat = getTimeInstance();
-            Log.i(TAG, "Data point:");
-            Log.i(TAG, "\tType: " + dp.getDataType().getName());
-            Log.i(TAG, "\tStart: " + dateFormat.format(dp.getStartTime(TimeUnit.MILLISECONDS)));
-            Log.i(TAG, "\tEnd: " + dateFormat.format(dp.getEndTime(TimeUnit.MILLISECONDS)));
-            for(Field field : dp.getDataType().getFields()) {
-                Log.i(TAG, "\tField: " + field.getName() +
-                        " Value: " + dp.getValue(field));
+        if (DataPointConverter.toFitDataType(dataSet.getDataType()) == null) {
+            // Not all numbers, so not for the dumper.
+            for (DataPoint dp : dataSet.getDataPoints()) {
+                Log.i(TAG, dp.toString());
             }
+            return;
         }
+        // Copy the points into columns and stream them out as lines, a few kilobytes per log
+        // message, rather than building a record and formatting two times per point.
+        mDumper.log(TAG, DataPointConverter.toBatch(dataSet));
     }
 
     private void dumpSession(Session session) {
-        DateFormat dateFormat = getTimeInstance();
-        Log.i(TAG, "Data returned for Session: " + session.getName()
-                + "\n\tDescription: " + session.getDescription()
-                + "\n\tStart: " + dateFormat.format(session.getStartTime(TimeUnit.MILLISECONDS))
-                + "\n\tEnd: " + dateFormat.format(session.getEndTime(TimeUnit.MILLISECONDS)));
+        StringBuilder text = new StringBuilder()
+                .append("Data returned for Session: ").append(session.getName())
+                .append("\n\tDescription: ").append(session.getDescription())
+                .append("\n\tStart: ");
+        mDumper.appendTime(text, session.getStartTime(TimeUnit.MILLISECONDS))
+                .append("\n\tEnd: ");
+        mDumper.appendTime(text, session.getEndTime(TimeUnit.MILLISECONDS));
+        Log.i(TAG, text.toString());
     }
 
     /**
@@ -454,13 +465,19 @@ public class MainActivity extends AppCompatActivity {
      *  Initializes a custom log class that outputs both to in-app targets and logcat.
      */
     private void initializeLogging() {
-        // Wraps Android's native log framework.
-        LogWrapper logWrapper = new LogWrapper();
-        // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-        Log.setLogNode(logWrapper);
+        // The chain outlives this Activity, so build it only once per process. Everything tied to
+        // the Activity is attached to the registry at its end, which lets go of it on destroy.
+        LogSinkRegistry registry = LogSinkRegistry.getInstance();
+        if (Log.getLogNode() == null) {
+            // Wraps Android's native log framework.
+            LogWrapper logWrapper = new LogWrapper();
+            logWrapper.setNext(registry);
+            // Using Log, front-end to the logging chain, emulates android.util.log method
+            // signatures.
+            Log.setLogNode(logWrapper);
+        }
         // Filter strips out everything except the message text.
-        MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
-        logWrapper.setNext(msgFilter);
+        mLogFilter = new MessageOnlyLogFilter();
         // On screen logging via a customized TextView.
         LogView logView = (LogView) findViewById(R.id.sample_logview);
 
@@ -469,7 +486,8 @@ public class MainActivity extends AppCompatActivity {
         logView.setTextAppearance(this, R.style.Log);
 
         logView.setBackgroundColor(Color.WHITE);
-        msgFilter.setNext(logView);
+        mLogFilter.setNext(logView);
+        registry.attach(this, mLogFilter);
         Log.i(TAG, "Ready");
     }
 
@@ -26,6 +26,7 @@ import android.view.MenuItem;
 
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogSinkRegistry;
 import com.google.android.gms.fit.samples.common.logger.LogView;
 import com.google.android.gms.fit.samples.common.logger.LogWrapper;
 import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
@@ -49,6 +50,9 @@ public class MainActivity extends AppCompatActivity {
 
     private static final int REQUEST_OAUTH_REQUEST_CODE = 1;
 
+    // The head of this Activity's on-screen logging. The LogSinkRegistry only holds it weakly.
+    private MessageOnlyLogFilter mLogFilter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -182,13 +186,19 @@ public class MainActivity extends AppCompatActivity {
      *  Initializes a custom log class that outputs both to in-app targets and logcat.
      */
     private void initializeLogging() {
-        // Wraps Android's native log framework.
-        LogWrapper logWrapper = new LogWrapper();
-        // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-        Log.setLogNode(logWrapper);
+        // The chain outlives this Activity, so build it only once per process. Everything tied to
+        // the Activity is attached to the registry at its end, which lets go of it on destroy.
+        LogSinkRegistry registry = LogSinkRegistry.getInstance();
+        if (Log.getLogNode() == null) {
+            // Wraps Android's native log framework.
+            LogWrapper logWrapper = new LogWrapper();
+            logWrapper.setNext(registry);
+            // Using Log, front-end to the logging chain, emulates android.util.log method
+            // signatures.
+            Log.setLogNode(logWrapper);
+        }
         // Filter strips out everything except the message text.
-        MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
-        logWrapper.setNext(msgFilter);
+        mLogFilter = new MessageOnlyLogFilter();
         // On screen logging via a customized TextView.
         LogView logView = (LogView) findViewById(R.id.sample_logview);
 
@@ -197,7 +207,8 @@ public class MainActivity extends AppCompatActivity {
         logView.setTextAppearance(this, R.style.Log);
 
         logView.setBackgroundColor(Color.WHITE);
-        msgFilter.setNext(logView);
+        mLogFilter.setNext(logView);
+        registry.attach(this, mLogFilter);
         Log.i(TAG, "Ready");
     }
 }
@@ -31,10 +31,20 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.fit.samples.common.logger.AsyncLogNode;
+import com.google.android.gms.fit.samples.common.logger.AsyncLogNode.OverflowPolicy;
+import com.google.android.gms.fit.samples.common.logger.DuplicateCollapsingLogFilter;
+import com.google.android.gms.fit.samples.common.logger.FanOutLogNode;
+import com.google.android.gms.fit.samples.common.logger.IndexedLogStore;
+import com.google.android.gms.fit.samples.common.logger.InstrumentedLogNode;
+import com.google.android.gms.fit.samples.common.logger.JournalLogNode;
+import com.google.android.gms.fit.samples.common.logger.LogArchiveWriter;
 import com.google.android.gms.fit.samples.common.logger.Log;
-import com.google.android.gms.fit.samples.common.logger.LogView;
+import com.google.android.gms.fit.samples.common.logger.LogListView;
+import com.google.android.gms.fit.samples.common.logger.LogSinkRegistry;
 import com.google.android.gms.fit.samples.common.logger.LogWrapper;
 import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
+import com.google.android.gms.fit.samples.common.logger.RateLimitingLogFilter;
 import com.google.android.gms.fitness.Fitness;
 import com.google.android.gms.fitness.FitnessOptions;
 import com.google.android.gms.fitness.data.DataPoint;
@@ -49,6 +59,8 @@ import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -70,6 +82,16 @@ public class MainActivity extends AppCompatActivity {
   private OnDataPointListener mListener;
   // [END mListener_variable_reference]
 
+  // Measure the two branches of the logging topology, so the slow one can be found. These live
+  // as long as the logging topology, which outlives any one Activity.
+  private static InstrumentedLogNode mLogcatStats;
+  private static InstrumentedLogNode mViewStats;
+  // Indexes what reaches the screen, so the on-screen log can be filtered instantly.
+  private static IndexedLogStore mLogStore;
+  private LogListView mLogView;
+  // The head of this Activity's on-screen logging. The LogSinkRegistry only holds it weakly.
+  private MessageOnlyLogFilter mLogFilter;
+
   // [START auth_oncreate_setup]
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -189,10 +211,14 @@ public class MainActivity extends AppCompatActivity {
         new OnDataPointListener() {
           @Override
           public void onDataPoint(DataPoint dataPoint) {
+            // Skip building two lines per field when nothing would be logged at INFO.
+            if (!Log.isLoggable(Log.INFO, TAG)) {
+              return;
+            }
             for (Field field : dataPoint.getDataType().getFields()) {
               Value val = dataPoint.getValue(field);
-              Log.i(TAG, "Detected DataPoint field: " + field.getName());
-              Log.i(TAG, "Detected DataPoint value: " + val);
+              Log.printf(Log.INFO, TAG, "Detected DataPoint field: %s", field.getName());
+              Log.printf(Log.INFO, TAG, "Detected DataPoint value: %s", val);
             }
           }
         };
@@ -260,29 +286,111 @@ public class MainActivity extends AppCompatActivity {
     if (id == R.id.action_unregister_listener) {
       unregisterFitnessDataListener();
       return true;
+    } else if (id == R.id.action_dump_log_stats) {
+      dumpLogStats();
+      return true;
+    } else if (id == R.id.action_toggle_errors_only) {
+      toggleErrorsOnly();
+      return true;
+    } else if (id == R.id.action_export_log_archive) {
+      exportLogArchive();
+      return true;
     }
     return super.onOptionsItemSelected(item);
   }
 
   /** Initializes a custom log class that outputs both to in-app targets and logcat. */
   private void initializeLogging() {
-    // Wraps Android's native log framework.
-    LogWrapper logWrapper = new LogWrapper();
-    // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-    Log.setLogNode(logWrapper);
+    // The topology outlives this Activity, so build it only once per process. The on-screen view
+    // is attached to the registry at its end, which lets go of it when this Activity is destroyed.
+    LogSinkRegistry registry = LogSinkRegistry.getInstance();
+    if (Log.getLogNode() == null) {
+      // Wraps Android's native log framework.
+      LogWrapper logWrapper = new LogWrapper();
+      // The store sees records before the filter strips their tag and priority.
+      mLogStore = new IndexedLogStore();
+      mLogStore.setNext(registry);
+      // Logcat and the on-screen view each get every record, rather than one waiting on the
+      // other.
+      mLogcatStats = new InstrumentedLogNode("logcat", logWrapper);
+      mViewStats = new InstrumentedLogNode("view", mLogStore);
+      FanOutLogNode fanOut = new FanOutLogNode(mLogcatStats, mViewStats);
+      // A journal on disk gets every record as well, so the log of a session which was killed
+      // can still be pulled with adb and read with JournalReader.
+      IOException journalFailure = null;
+      try {
+        fanOut.addChild(new JournalLogNode(new File(getFilesDir(), "journal")));
+      } catch (IOException e) {
+        journalFailure = e;
+      }
+      // Sensor callbacks log on every data point, so hand records off to a background thread
+      // rather than making each callback wait for logcat and the on-screen view.
+      AsyncLogNode asyncNode =
+          new AsyncLogNode(fanOut, AsyncLogNode.DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+      // A burst of data points could still flood the queue, so cap each tag's rate up front and
+      // log a count of whatever was suppressed.
+      RateLimitingLogFilter rateLimiter = new RateLimitingLogFilter(asyncNode);
+      // Collapse repeats such as "Listener registered!" before they use up any of that budget.
+      DuplicateCollapsingLogFilter dedupFilter = new DuplicateCollapsingLogFilter(rateLimiter);
+      // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
+      // Set last, once the whole topology is wired up.
+      Log.setLogNode(dedupFilter);
+      if (journalFailure != null) {
+        Log.e(TAG, "Could not open the log journal", journalFailure);
+      }
+    }
     // Filter strips out everything except the message text.
-    MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
-    logWrapper.setNext(msgFilter);
-    // On screen logging via a customized TextView.
-    LogView logView = (LogView) findViewById(R.id.sample_logview);
+    mLogFilter = new MessageOnlyLogFilter();
+    // On screen logging via a ListView which only keeps the most recent lines, as a sensor
+    // session can run for hours.
+    mLogView = (LogListView) findViewById(R.id.sample_logview);
+    mLogView.setLineTextAppearance(R.style.Log);
+    mLogView.setBackgroundColor(Color.WHITE);
+    mLogFilter.setNext(mLogView);
+    registry.attach(this, mLogFilter);
+    Log.i(TAG, "Ready");
+  }
 
-    // Fixing this lint errors adds logic without benefit.
-    // noinspection AndroidLintDeprecation
-    logView.setTextAppearance(R.style.Log);
 
-    logView.setBackgroundColor(Color.WHITE);
-    msgFilter.setNext(logView);
-    Log.i(TAG, "Ready");
+  /** Logs how many records each branch of the logging topology has handled, and how fast. */
+  private void dumpLogStats() {
+    Log.i(TAG, mLogcatStats.snapshot().toString());
+    Log.i(TAG, mViewStats.snapshot().toString());
+  }
+
+  /** Switches the on-screen log between errors only, and everything. */
+  private void toggleErrorsOnly() {
+    if (mLogView.getFilter() == null) {
+      // Show the matches like the rest of the on-screen log, which only has the message text.
+      mLogView.setFilter(mLogStore, new IndexedLogStore.Query().setMinPriority(Log.ERROR), true);
+    } else {
+      mLogView.setFilter(null, null);
+    }
+  }
+
+  /**
+   * Writes every record in the log store to a compressed archive in the app's files directory,
+   * off the UI thread. Pull it with adb and read it with LogArchiveReader.
+   */
+  private void exportLogArchive() {
+    final File archive = new File(getFilesDir(), "log-archive.flga");
+    new Thread("LogArchiveExport") {
+      @Override
+      public void run() {
+        try {
+          LogArchiveWriter writer = new LogArchiveWriter(archive);
+          try {
+            mLogStore.read(writer);
+          } finally {
+            writer.close();
+          }
+          Log.printf(Log.INFO, TAG, "Exported %d records to %s (%d bytes, %d uncompressed)",
+              writer.getRecordCount(), archive, writer.getArchiveBytes(), writer.getRawBytes());
+        } catch (IOException e) {
+          Log.e(TAG, "Log archive export failed", e);
+        }
+      }
+    }.start();
   }
 
   /** Returns the current state of the permissions needed. */
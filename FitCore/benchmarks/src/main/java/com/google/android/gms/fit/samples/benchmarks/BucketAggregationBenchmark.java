@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.data.BucketAggregator;
+import com.google.android.gms.fit.samples.common.data.FitDataBatch;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.FitField;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of summing step count deltas into daily and hourly buckets locally, over a week and over
+ * a year of five minute points, in place of an aggregate History API read. Each is summed from a
+ * list of {@link FitDataPoint}s and from a {@link FitDataBatch} of the same points.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BucketAggregationBenchmark {
+
+    private static final long START_MILLIS = 1500000000000L;
+    private static final long FIVE_MINUTES = TimeUnit.MINUTES.toMillis(5);
+
+    /** Number of days of points. */
+    @Param({"7", "365"})
+    public int days;
+
+    private final List<FitDataPoint> mPoints = new ArrayList<FitDataPoint>();
+    private FitDataBatch mBatch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int count = (int) (TimeUnit.DAYS.toMillis(days) / FIVE_MINUTES);
+        long start = START_MILLIS;
+        for (int i = 0; i < count; i++) {
+            mPoints.add(new FitDataPoint(FitDataType.STEP_COUNT_DELTA, start,
+                    start + FIVE_MINUTES, "benchmark", (i * 37) % 600));
+            start += FIVE_MINUTES;
+        }
+        mBatch = FitDataBatch.of(FitDataType.STEP_COUNT_DELTA, "benchmark", mPoints);
+    }
+
+    @Benchmark
+    public double[] daily() {
+        return BucketAggregator.sumByTime(mPoints, FitField.STEPS, START_MILLIS,
+                TimeUnit.DAYS.toMillis(1), days);
+    }
+
+    @Benchmark
+    public double[] hourly() {
+        return BucketAggregator.sumByTime(mPoints, FitField.STEPS, START_MILLIS,
+                TimeUnit.HOURS.toMillis(1), days * 24);
+    }
+
+    @Benchmark
+    public double[] dailyBatch() {
+        return BucketAggregator.sumByTime(mBatch, FitField.STEPS, START_MILLIS,
+                TimeUnit.DAYS.toMillis(1), days);
+    }
+
+    @Benchmark
+    public double[] hourlyBatch() {
+        return BucketAggregator.sumByTime(mBatch, FitField.STEPS, START_MILLIS,
+                TimeUnit.HOURS.toMillis(1), days * 24);
+    }
+}
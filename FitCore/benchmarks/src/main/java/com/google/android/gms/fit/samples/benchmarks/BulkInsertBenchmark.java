@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.data.BulkInserter;
+import com.google.android.gms.fit.samples.common.data.FakeHistoryWriter;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to backfill a month of five minute step counts through a {@link BulkInserter}, against a
+ * {@link FakeHistoryWriter} taking 20 ms per insert, for several limits on inserts in flight.
+ * With one in flight this is what inserting the chunks one after the other costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkInsertBenchmark {
+
+    private static final long FIVE_MINUTES = TimeUnit.MINUTES.toMillis(5);
+    private static final int POINTS = 30 * 24 * 12;
+
+    /** The most chunk inserts in flight at once. */
+    @Param({"1", "4", "16"})
+    public int maxInFlight;
+
+    private final List<FitDataPoint> mPoints = new ArrayList<FitDataPoint>();
+    private FakeHistoryWriter mWriter;
+    private BulkInserter mInserter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long start = 1500000000000L;
+        for (int i = 0; i < POINTS; i++) {
+            mPoints.add(new FitDataPoint(FitDataType.STEP_COUNT_DELTA, start,
+                    start + FIVE_MINUTES, "pedometer", (i * 37) % 600));
+            start += FIVE_MINUTES;
+        }
+        mWriter = new FakeHistoryWriter(20);
+        mInserter = new BulkInserter(mWriter, BulkInserter.DEFAULT_MAX_POINTS_PER_CHUNK,
+                maxInFlight, BulkInserter.DEFAULT_MAX_ATTEMPTS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mWriter.shutdown();
+    }
+
+    @Benchmark
+    public BulkInserter.Result backfillMonth() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final BulkInserter.Result[] result = new BulkInserter.Result[1];
+        mInserter.insert(mPoints, new BulkInserter.Listener() {
+            @Override
+            public void onProgress(long insertedPoints, long totalPoints) {
+            }
+
+            @Override
+            public void onComplete(BulkInserter.Result r) {
+                result[0] = r;
+                done.countDown();
+            }
+        });
+        done.await();
+        return result[0];
+    }
+}
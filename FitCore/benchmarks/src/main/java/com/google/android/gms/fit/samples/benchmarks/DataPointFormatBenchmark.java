@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.data.DataPointDumper;
+import com.google.android.gms.fit.samples.common.data.DataPointFormatter;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.FitField;
+import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogCodec;
+import com.google.android.gms.fit.samples.common.logger.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a day of step count points into log output: the concatenated lines with a
+ * {@link DateFormat} the samples used to build, against one structured record per point, either
+ * rendered as text for the screen or encoded for a binary sink, and against lines streamed by a
+ * {@link DataPointDumper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataPointFormatBenchmark {
+
+    private static final String TAG = "Benchmark";
+    private static final int POINTS = 24 * 12;
+    private static final long FIVE_MINUTES = TimeUnit.MINUTES.toMillis(5);
+
+    private final List<FitDataPoint> mPoints = new ArrayList<FitDataPoint>();
+    private final LogRecord mRecord = new LogRecord();
+    private final LogCodec.Encoder mEncoder = new LogCodec.Encoder();
+    private final ByteBuffer mEncodeBuffer = ByteBuffer.allocate(64 * 1024);
+    private final DataPointDumper mDumper = new DataPointDumper();
+    private final StringBuilder mDumpOut = new StringBuilder(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long start = 1500000000000L;
+        for (int i = 0; i < POINTS; i++) {
+            mPoints.add(new FitDataPoint(FitDataType.STEP_COUNT_DELTA, start,
+                    start + FIVE_MINUTES, "benchmark", (i * 37) % 600));
+            start += FIVE_MINUTES;
+        }
+    }
+
+    /** The lines the samples' {@code dumpDataSet} logged before it emitted structured records. */
+    @Benchmark
+    public void concatenated(Blackhole bh) {
+        DateFormat dateFormat = DateFormat.getTimeInstance();
+        for (int i = 0; i < mPoints.size(); i++) {
+            FitDataPoint dp = mPoints.get(i);
+            bh.consume("Data point:");
+            bh.consume("\tType: " + dp.getDataType().getName());
+            bh.consume("\tStart: " + dateFormat.format(dp.getStartTimeMillis()));
+            bh.consume("\tEnd: " + dateFormat.format(dp.getEndTimeMillis()));
+            FitDataType type = dp.getDataType();
+            for (int f = 0; f < type.getFieldCount(); f++) {
+                bh.consume("\tField: " + type.getField(f).getName() + " Value: "
+                        + dp.getInt(f));
+            }
+        }
+    }
+
+    /** One structured record per point, rendered as text the way the on-screen log shows it. */
+    @Benchmark
+    public void structuredRendered(Blackhole bh) {
+        for (int i = 0; i < mPoints.size(); i++) {
+            mRecord.clear();
+            mRecord.setPriority(Log.INFO).setTag(TAG).setMessage("Data point");
+            DataPointFormatter.addFields(mRecord, mPoints.get(i));
+            bh.consume(mRecord.getText());
+        }
+    }
+
+    /** One structured record per point, encoded the way the binary sinks store it. */
+    @Benchmark
+    public void structuredEncoded(Blackhole bh) {
+        // Like a fresh block of a CompactLogBuffer: tag and keys are interned once per block.
+        mEncodeBuffer.clear();
+        mEncoder.reset();
+        for (int i = 0; i < mPoints.size(); i++) {
+            mRecord.clear();
+            mRecord.setPriority(Log.INFO).setTag(TAG).setMessage("Data point");
+            DataPointFormatter.addFields(mRecord, mPoints.get(i));
+            mEncoder.encode(mEncodeBuffer, mRecord.getTimeMillis(), mRecord.getPriority(),
+                    mRecord.getTag(), mRecord.getMessage(), null, mRecord.getFields());
+        }
+        bh.consume(mEncodeBuffer.position());
+    }
+
+    /** One line per point, streamed by a {@link DataPointDumper} into a reused buffer. */
+    @Benchmark
+    public int streamed() throws IOException {
+        mDumpOut.setLength(0);
+        mDumper.dump(mPoints, mDumpOut);
+        return mDumpOut.length();
+    }
+}
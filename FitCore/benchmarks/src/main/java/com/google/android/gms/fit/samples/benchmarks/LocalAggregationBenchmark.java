@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.data.FitDataBatch;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.LocalAggregator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of bucketing a year of step counts on the device with a {@link LocalAggregator}, in place
+ * of an aggregate History API read per change of view: daily totals into calendar weeks and
+ * hours, and five minute points into calendar days, with time zone bounds worked out each time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalAggregationBenchmark {
+
+    private static final long FIVE_MINUTES = TimeUnit.MINUTES.toMillis(5);
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("America/New_York");
+
+    private long mStartMillis;
+    private long mEndMillis;
+    private FitDataBatch mDays;
+    private FitDataBatch mFiveMinutes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Calendar calendar = Calendar.getInstance(TIME_ZONE);
+        calendar.clear();
+        calendar.set(2017, Calendar.JANUARY, 1);
+        mStartMillis = calendar.getTimeInMillis();
+        calendar.add(Calendar.YEAR, 1);
+        mEndMillis = calendar.getTimeInMillis();
+
+        long[] days = LocalAggregator.getCalendarBounds(mStartMillis, mEndMillis, TIME_ZONE,
+                Calendar.DAY_OF_MONTH, 1);
+        mDays = new FitDataBatch(FitDataType.STEP_COUNT_DELTA, null, days.length - 1);
+        for (int i = 0; i < days.length - 1; i++) {
+            mDays.setInt(0, mDays.add(days[i], days[i + 1]), 5000 + (i * 37) % 5000);
+        }
+        mFiveMinutes = new FitDataBatch(FitDataType.STEP_COUNT_DELTA, null);
+        for (long start = mStartMillis; start < mEndMillis; start += FIVE_MINUTES) {
+            mFiveMinutes.setInt(0, mFiveMinutes.add(start, start + FIVE_MINUTES),
+                    (int) (start / FIVE_MINUTES * 37 % 600));
+        }
+    }
+
+    @Benchmark
+    public List<LocalAggregator.Bucket> daysIntoWeeks() {
+        return LocalAggregator.bucketByTime(mDays, LocalAggregator.getCalendarBounds(
+                mStartMillis, mEndMillis, TIME_ZONE, Calendar.WEEK_OF_YEAR, 1));
+    }
+
+    /** Spreads each day evenly over its hours, which is all a daily total can say. */
+    @Benchmark
+    public List<LocalAggregator.Bucket> daysIntoHours() {
+        return LocalAggregator.bucketByTime(mDays, LocalAggregator.getCalendarBounds(
+                mStartMillis, mEndMillis, TIME_ZONE, Calendar.HOUR_OF_DAY, 1));
+    }
+
+    @Benchmark
+    public List<LocalAggregator.Bucket> fiveMinutesIntoDays() {
+        return LocalAggregator.bucketByTime(mFiveMinutes, LocalAggregator.getCalendarBounds(
+                mStartMillis, mEndMillis, TIME_ZONE, Calendar.DAY_OF_MONTH, 1));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.logger.CompactLogBuffer;
+import com.google.android.gms.fit.samples.common.logger.DuplicateCollapsingLogFilter;
+import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogNode;
+import com.google.android.gms.fit.samples.common.logger.LogRecord;
+import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of logging one line through the chain the samples build, ending in a sink which
+ * does nothing or in a {@link CompactLogBuffer}, for each way of logging a line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogChainBenchmark {
+
+    private static final String TAG = "Benchmark";
+
+    /** The node at the end of the chain. */
+    @Param({"discard", "compact"})
+    public String sink;
+
+    private int mSteps;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogNode end;
+        if ("compact".equals(sink)) {
+            end = new CompactLogBuffer();
+        } else {
+            end = new LogNode() {
+                @Override
+                public void println(int priority, String tag, String msg, Throwable tr) {
+                }
+            };
+        }
+        MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter(end);
+        Log.setLogNode(new DuplicateCollapsingLogFilter(msgFilter));
+        Log.setMinPriority(Log.INFO);
+    }
+
+    /** A String built by concatenation, the way the samples log. */
+    @Benchmark
+    public void concatenatedString() {
+        Log.i(TAG, "Steps: " + mSteps++);
+    }
+
+    /** A pooled record with the message appended in place. */
+    @Benchmark
+    public void appendedRecord() {
+        LogRecord.obtain(Log.INFO, TAG).append("Steps: ").append(mSteps++).emit();
+    }
+
+    /** A structured record with the value as an unformatted key-value pair. */
+    @Benchmark
+    public void structuredEvent() {
+        Log.event(TAG).kv("steps", mSteps++).emit();
+    }
+
+    /** A concatenated line below the minimum priority, built only to be dropped. */
+    @Benchmark
+    public void filteredOut() {
+        Log.v(TAG, "Steps: " + mSteps++);
+    }
+
+    /** A line below the minimum priority, checked before it is built. */
+    @Benchmark
+    public void filteredOutGuarded() {
+        if (Log.isLoggable(Log.VERBOSE, TAG)) {
+            Log.v(TAG, "Steps: " + mSteps);
+        }
+        mSteps++;
+    }
+}
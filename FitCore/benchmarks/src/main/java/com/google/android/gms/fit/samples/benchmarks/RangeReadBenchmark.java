@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.benchmarks;
+
+import com.google.android.gms.fit.samples.common.data.FakeHistorySource;
+import com.google.android.gms.fit.samples.common.data.FitDataPoint;
+import com.google.android.gms.fit.samples.common.data.FitDataType;
+import com.google.android.gms.fit.samples.common.data.RangeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read a year of five minute step counts through a {@link RangeReader}, in windows of
+ * about 10000 minute-apart points, against a {@link FakeHistorySource} taking 20 ms per read,
+ * for several limits on reads in flight. With one in flight this is what reading the windows
+ * one after the other costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeReadBenchmark {
+
+    private static final long START_MILLIS = 1500000000000L;
+    private static final long FIVE_MINUTES = TimeUnit.MINUTES.toMillis(5);
+    private static final long YEAR_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    /** The most window reads in flight at once. */
+    @Param({"1", "4", "16"})
+    public int maxInFlight;
+
+    private ExecutorService mExecutor;
+    private RangeReader mReader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FakeHistorySource source = new FakeHistorySource();
+        List<FitDataPoint> points = new ArrayList<FitDataPoint>();
+        for (long start = START_MILLIS; start < START_MILLIS + YEAR_MILLIS;
+                start += FIVE_MINUTES) {
+            points.add(new FitDataPoint(FitDataType.STEP_COUNT_DELTA, start,
+                    start + FIVE_MINUTES, "pedometer", (start / FIVE_MINUTES * 37) % 600));
+        }
+        source.insert(points);
+        source.setLatencyMillis(20);
+        mExecutor = Executors.newCachedThreadPool();
+        long windowMillis = RangeReader.getWindowMillis(TimeUnit.MINUTES.toMillis(1),
+                RangeReader.DEFAULT_MAX_POINTS_PER_WINDOW, TimeUnit.DAYS.toMillis(1));
+        mReader = new RangeReader(source, mExecutor, windowMillis, maxInFlight);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public List<FitDataPoint> readYear() throws IOException {
+        return mReader.read(FitDataType.STEP_COUNT_DELTA, START_MILLIS,
+                START_MILLIS + YEAR_MILLIS);
+    }
+}
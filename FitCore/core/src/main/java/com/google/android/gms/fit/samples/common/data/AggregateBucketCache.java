@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Keeps the buckets of aggregate History API reads which can no longer change, so that a read of
+ * the past week only has to fetch the current day, plus any day written to since it was cached.
+ *
+ * <p>Buckets are whole calendar days in a time zone, or runs of them, and are cached under a
+ * {@link Key} of the aggregated data type, the bucket size and the time zone. A read first asks
+ * for a {@link #plan}: the runs of buckets which are not cached, each of which can be fetched
+ * with one request. The bucket which contains the current time is always fetched and never
+ * cached. Fetched buckets are stored with {@link #put}, and every write to the History API
+ * should be reported to {@link #invalidate} with its time range, which drops just the buckets it
+ * overlaps.</p>
+ *
+ * <p>A fetch which was in flight while a write it overlaps was reported could return the data
+ * from before the write. To keep that out of the cache, take the {@link #getGeneration()} before
+ * starting a fetch and pass it to {@link #put}, which ignores buckets invalidated since.</p>
+ *
+ * <p>Thread-safe. Has no Android dependencies.</p>
+ */
+public final class AggregateBucketCache {
+
+    /** Default number of buckets kept per key. */
+    public static final int DEFAULT_MAX_BUCKETS = 400;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * What a set of buckets was aggregated from and how: the data type read, the number of days
+     * per bucket and the time zone the days are in.
+     */
+    public static final class Key {
+        private final String mDataTypeName;
+        private final int mBucketDays;
+        private final String mTimeZoneId;
+
+        /**
+         * Creates a key.
+         *
+         * @param dataTypeName Name of the data type which was aggregated, for instance
+         *                     {@code com.google.step_count.delta}.
+         * @param bucketDays Number of calendar days per bucket.
+         * @param timeZone The time zone whose midnights the buckets start at.
+         */
+        public Key(String dataTypeName, int bucketDays, TimeZone timeZone) {
+            this(dataTypeName, bucketDays, timeZone.getID());
+        }
+
+        private Key(String dataTypeName, int bucketDays, String timeZoneId) {
+            if (dataTypeName == null) {
+                throw new NullPointerException("dataTypeName");
+            }
+            if (bucketDays <= 0) {
+                throw new IllegalArgumentException("bucketDays must be positive: " + bucketDays);
+            }
+            mDataTypeName = dataTypeName;
+            mBucketDays = bucketDays;
+            mTimeZoneId = timeZoneId;
+        }
+
+        public String getDataTypeName() {
+            return mDataTypeName;
+        }
+
+        public int getBucketDays() {
+            return mBucketDays;
+        }
+
+        public TimeZone getTimeZone() {
+            return TimeZone.getTimeZone(mTimeZoneId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mBucketDays == other.mBucketDays && mDataTypeName.equals(other.mDataTypeName)
+                    && mTimeZoneId.equals(other.mTimeZoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mDataTypeName.hashCode() * 31 + mBucketDays) * 31 + mTimeZoneId.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mDataTypeName + "/" + mBucketDays + "d/" + mTimeZoneId;
+        }
+    }
+
+    /**
+     * A run of consecutive buckets of the same length which are not cached, to be read with one
+     * aggregate request.
+     */
+    public static final class Fetch {
+        private final long mStartTimeMillis;
+        private final long mEndTimeMillis;
+        private final long mBucketMillis;
+
+        Fetch(long startTimeMillis, long endTimeMillis, long bucketMillis) {
+            mStartTimeMillis = startTimeMillis;
+            mEndTimeMillis = endTimeMillis;
+            mBucketMillis = bucketMillis;
+        }
+
+        /** Returns the start of the first bucket, to use as the start of the request. */
+        public long getStartTimeMillis() {
+            return mStartTimeMillis;
+        }
+
+        /**
+         * Returns the end of the request: the end of the last bucket, or the end of the read if
+         * that comes first.
+         */
+        public long getEndTimeMillis() {
+            return mEndTimeMillis;
+        }
+
+        /**
+         * Returns the length of each bucket, to use with {@code bucketByTime}. Usually a day, but
+         * 23 or 25 hours across a daylight saving change, which is then fetched on its own.
+         */
+        public long getBucketMillis() {
+            return mBucketMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + mStartTimeMillis + ", " + mEndTimeMillis + ") by " + mBucketMillis;
+        }
+    }
+
+    /** A time range written to, remembered so that fetches which overlapped it are not stored. */
+    private static final class Invalidation {
+        final String mDataTypeName;
+        final long mStartTimeMillis;
+        final long mEndTimeMillis;
+        final long mGeneration;
+
+        Invalidation(String dataTypeName, long startTimeMillis, long endTimeMillis,
+                long generation) {
+            mDataTypeName = dataTypeName;
+            mStartTimeMillis = startTimeMillis;
+            mEndTimeMillis = endTimeMillis;
+            mGeneration = generation;
+        }
+    }
+
+    // Number of recent invalidations remembered. A put of a fetch older than all of them is
+    // refused, since it could have overlapped one which was forgotten.
+    private static final int MAX_INVALIDATIONS = 64;
+
+    private final int mMaxBuckets;
+    // Points per bucket start, per key.
+    private final HashMap<Key, TreeMap<Long, List<FitDataPoint>>> mBuckets =
+            new HashMap<Key, TreeMap<Long, List<FitDataPoint>>>();
+    private final ArrayDeque<Invalidation> mInvalidations = new ArrayDeque<Invalidation>();
+    private long mGeneration;
+    private long mHitCount;
+    private long mMissCount;
+
+    /**
+     * Creates a cache which keeps up to {@link #DEFAULT_MAX_BUCKETS} buckets per key.
+     */
+    public AggregateBucketCache() {
+        this(DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBuckets Number of buckets kept per key. When there are more, the oldest are
+     *                   dropped.
+     */
+    public AggregateBucketCache(int maxBuckets) {
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("maxBuckets must be positive: " + maxBuckets);
+        }
+        mMaxBuckets = maxBuckets;
+    }
+
+    /** Returns the start of the bucket which contains the given time. */
+    public static long getBucketStart(Key key, long timeMillis) {
+        Calendar cal = Calendar.getInstance(key.getTimeZone());
+        cal.setTimeInMillis(timeMillis);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        if (key.getBucketDays() > 1) {
+            // Count days from the epoch in this zone, so buckets line up the same for any read.
+            long localDay = floorDiv(cal.getTimeInMillis() + cal.get(Calendar.ZONE_OFFSET)
+                    + cal.get(Calendar.DST_OFFSET), 24L * 60 * 60 * 1000);
+            cal.add(Calendar.DAY_OF_MONTH, (int) -floorMod(localDay, key.getBucketDays()));
+        }
+        return cal.getTimeInMillis();
+    }
+
+    /** Returns the end of the bucket which starts at the given time. */
+    public static long getBucketEnd(Key key, long bucketStartMillis) {
+        Calendar cal = Calendar.getInstance(key.getTimeZone());
+        cal.setTimeInMillis(bucketStartMillis);
+        cal.add(Calendar.DAY_OF_MONTH, key.getBucketDays());
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put} for a fetch started now.
+     */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Works out what has to be fetched to read a time range, and counts the buckets served from
+     * the cache.
+     *
+     * @param key What to read.
+     * @param startTimeMillis Start of the read. Rounded down to the start of its bucket.
+     * @param endTimeMillis End of the read.
+     * @param nowMillis The current time. The bucket containing it, and any later, are fetched.
+     * @return The runs of buckets to fetch, oldest first. Empty if everything is cached.
+     */
+    public List<Fetch> plan(Key key, long startTimeMillis, long endTimeMillis, long nowMillis) {
+        return plan(key, startTimeMillis, endTimeMillis, nowMillis, null);
+    }
+
+    /**
+     * Works out what has to be fetched to read a time range, like
+     * {@link #plan(Key, long, long, long)}, and also hands out the points of the buckets served
+     * from the cache. They are taken together with the plan, so a bucket which is invalidated or
+     * dropped before the fetches complete is still served, as it was when the read began.
+     *
+     * @param cached Receives the points of each cached bucket of the read, by bucket start.
+     */
+    public synchronized List<Fetch> plan(Key key, long startTimeMillis, long endTimeMillis,
+            long nowMillis, Map<Long, List<FitDataPoint>> cached) {
+        List<Fetch> fetches = new ArrayList<Fetch>();
+        TreeMap<Long, List<FitDataPoint>> buckets = mBuckets.get(key);
+        long runStart = -1;
+        long runBucketMillis = 0;
+        long start = getBucketStart(key, startTimeMillis);
+        while (start < endTimeMillis) {
+            long end = getBucketEnd(key, start);
+            List<FitDataPoint> points = buckets == null ? null : buckets.get(start);
+            if (points != null && end <= nowMillis) {
+                mHitCount++;
+                if (cached != null) {
+                    cached.put(start, points);
+                }
+                if (runStart >= 0) {
+                    fetches.add(new Fetch(runStart, start, runBucketMillis));
+                    runStart = -1;
+                }
+            } else {
+                mMissCount++;
+                if (runStart >= 0 && end - start != runBucketMillis) {
+                    fetches.add(new Fetch(runStart, start, runBucketMillis));
+                    runStart = -1;
+                }
+                if (runStart < 0) {
+                    runStart = start;
+                    runBucketMillis = end - start;
+                }
+            }
+            start = end;
+        }
+        if (runStart >= 0) {
+            fetches.add(new Fetch(runStart, Math.min(start, endTimeMillis), runBucketMillis));
+        }
+        return fetches;
+    }
+
+    /**
+     * Returns the cached points of a bucket, or null if it is not cached.
+     */
+    public synchronized List<FitDataPoint> get(Key key, long bucketStartMillis) {
+        TreeMap<Long, List<FitDataPoint>> buckets = mBuckets.get(key);
+        return buckets == null ? null : buckets.get(bucketStartMillis);
+    }
+
+    /**
+     * Stores a fetched bucket, unless it is still open or was invalidated after the fetch began.
+     *
+     * @param key What was read.
+     * @param bucketStartMillis Start of the bucket.
+     * @param points The points of the bucket. An empty list for a bucket with no data.
+     * @param fetchGeneration The {@link #getGeneration()} from before the fetch started.
+     * @param nowMillis The current time.
+     * @return Whether the bucket was stored.
+     */
+    public synchronized boolean put(Key key, long bucketStartMillis, List<FitDataPoint> points,
+            long fetchGeneration, long nowMillis) {
+        long end = getBucketEnd(key, bucketStartMillis);
+        if (end > nowMillis) {
+            return false;
+        }
+        if (fetchGeneration < mGeneration) {
+            Invalidation oldest = mInvalidations.peekFirst();
+            if (oldest == null || oldest.mGeneration > fetchGeneration + 1) {
+                return false;
+            }
+            for (Invalidation invalidation : mInvalidations) {
+                if (invalidation.mGeneration > fetchGeneration
+                        && invalidation.mDataTypeName.equals(key.mDataTypeName)
+                        && invalidation.mStartTimeMillis < end
+                        && Math.max(invalidation.mEndTimeMillis,
+                                invalidation.mStartTimeMillis + 1) > bucketStartMillis) {
+                    return false;
+                }
+            }
+        }
+        TreeMap<Long, List<FitDataPoint>> buckets = mBuckets.get(key);
+        if (buckets == null) {
+            buckets = new TreeMap<Long, List<FitDataPoint>>();
+            mBuckets.put(key, buckets);
+        }
+        buckets.put(bucketStartMillis,
+                Collections.unmodifiableList(new ArrayList<FitDataPoint>(points)));
+        while (buckets.size() > mMaxBuckets) {
+            buckets.pollFirstEntry();
+        }
+        return true;
+    }
+
+    /**
+     * Drops every cached bucket of the data type which overlaps a time range, for instance one
+     * just inserted, updated or deleted, and keeps fetches of them already in flight from being
+     * stored.
+     *
+     * @param dataTypeName Name of the data type written, for instance
+     *                     {@code com.google.step_count.delta}.
+     * @param startTimeMillis Start of the range written.
+     * @param endTimeMillis End of the range written.
+     * @return The number of cached buckets dropped.
+     */
+    public synchronized int invalidate(String dataTypeName, long startTimeMillis,
+            long endTimeMillis) {
+        mGeneration++;
+        mInvalidations.addLast(new Invalidation(dataTypeName, startTimeMillis, endTimeMillis,
+                mGeneration));
+        if (mInvalidations.size() > MAX_INVALIDATIONS) {
+            mInvalidations.removeFirst();
+        }
+        int dropped = 0;
+        for (Map.Entry<Key, TreeMap<Long, List<FitDataPoint>>> e : mBuckets.entrySet()) {
+            Key key = e.getKey();
+            if (key.mDataTypeName.equals(dataTypeName)) {
+                // An instantaneous write still belongs to the bucket it falls in.
+                long from = getBucketStart(key, startTimeMillis);
+                Map<Long, List<FitDataPoint>> overlapping = e.getValue().subMap(
+                        from, true, Math.max(endTimeMillis, startTimeMillis + 1), false);
+                dropped += overlapping.size();
+                overlapping.clear();
+            }
+        }
+        return dropped;
+    }
+
+    /** Drops everything. */
+    public synchronized void clear() {
+        mBuckets.clear();
+    }
+
+    /** Returns how many buckets {@link #plan} found cached. */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /** Returns how many buckets {@link #plan} found missing. */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Writes the cached buckets, for {@link #readFrom} to restore in a later process.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(mBuckets.size());
+        for (Map.Entry<Key, TreeMap<Long, List<FitDataPoint>>> e : mBuckets.entrySet()) {
+            Key key = e.getKey();
+            out.writeUTF(key.mDataTypeName);
+            out.writeInt(key.mBucketDays);
+            out.writeUTF(key.mTimeZoneId);
+            out.writeInt(e.getValue().size());
+            for (Map.Entry<Long, List<FitDataPoint>> bucket : e.getValue().entrySet()) {
+                List<FitDataPoint> points = bucket.getValue();
+                out.writeLong(bucket.getKey());
+                out.writeInt(points.size());
+                for (int i = 0; i < points.size(); i++) {
+                    points.get(i).writeTo(out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds buckets written by {@link #writeTo}. Buckets already in the cache are kept.
+     *
+     * @throws IOException If the data is truncated or was written by an unknown version.
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache version " + version);
+        }
+        HashMap<String, FitDataType> types = new HashMap<String, FitDataType>();
+        for (int keyCount = in.readInt(); keyCount > 0; keyCount--) {
+            Key key = new Key(in.readUTF(), in.readInt(), in.readUTF());
+            TreeMap<Long, List<FitDataPoint>> buckets = mBuckets.get(key);
+            if (buckets == null) {
+                buckets = new TreeMap<Long, List<FitDataPoint>>();
+                mBuckets.put(key, buckets);
+            }
+            for (int bucketCount = in.readInt(); bucketCount > 0; bucketCount--) {
+                long start = in.readLong();
+                int pointCount = in.readInt();
+                List<FitDataPoint> points = new ArrayList<FitDataPoint>(pointCount);
+                for (int i = 0; i < pointCount; i++) {
+                    points.add(FitDataPoint.readFrom(in, types));
+                }
+                if (!buckets.containsKey(start)) {
+                    buckets.put(start, Collections.unmodifiableList(points));
+                }
+            }
+            while (buckets.size() > mMaxBuckets) {
+                buckets.pollFirstEntry();
+            }
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
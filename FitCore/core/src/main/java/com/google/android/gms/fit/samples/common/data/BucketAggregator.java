@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.List;
+
+/**
+ * Sums a field of data points into consecutive time buckets of equal length, like a History API
+ * read with {@code aggregate(...).bucketByTime(...)}, but without a round trip. A point counts
+ * towards the bucket its start time falls in. For totals which match the History API's, with
+ * points spread over the buckets they cross, use {@link LocalAggregator}.
+ */
+public final class BucketAggregator {
+
+    private BucketAggregator() {
+    }
+
+    /**
+     * Sums a field by time bucket.
+     *
+     * @param points The data points, in any order. Points without the field, or starting outside
+     *               the buckets, are skipped.
+     * @param field The field to sum, for instance {@link FitField#STEPS}.
+     * @param startTimeMillis Start of the first bucket, in milliseconds since the epoch.
+     * @param bucketMillis Length of each bucket.
+     * @param bucketCount Number of buckets.
+     * @return The sum of each bucket, oldest first.
+     */
+    public static double[] sumByTime(List<FitDataPoint> points, FitField field,
+            long startTimeMillis, long bucketMillis, int bucketCount) {
+        checkBuckets(bucketMillis, bucketCount);
+        double[] sums = new double[bucketCount];
+        long endTimeMillis = startTimeMillis + bucketMillis * bucketCount;
+        // Most lists are all one type, so look the field up once per run of the same type.
+        FitDataType lastType = null;
+        int fieldIndex = -1;
+        for (int i = 0, size = points.size(); i < size; i++) {
+            FitDataPoint point = points.get(i);
+            long start = point.getStartTimeMillis();
+            if (start < startTimeMillis || start >= endTimeMillis) {
+                continue;
+            }
+            if (point.getDataType() != lastType) {
+                lastType = point.getDataType();
+                fieldIndex = lastType.indexOf(field);
+            }
+            if (fieldIndex >= 0) {
+                int bucket = (int) ((start - startTimeMillis) / bucketMillis);
+                sums[bucket] += point.getValue(fieldIndex);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Sums a field of a batch by time bucket, like {@link #sumByTime(List, FitField, long, long,
+     * int)}, straight from the batch's arrays.
+     *
+     * @return The sum of each bucket, oldest first, or all zeros if the batch's type does not have
+     *         the field.
+     */
+    public static double[] sumByTime(FitDataBatch batch, FitField field, long startTimeMillis,
+            long bucketMillis, int bucketCount) {
+        checkBuckets(bucketMillis, bucketCount);
+        double[] sums = new double[bucketCount];
+        int fieldIndex = batch.getDataType().indexOf(field);
+        if (fieldIndex < 0) {
+            return sums;
+        }
+        long endTimeMillis = startTimeMillis + bucketMillis * bucketCount;
+        long[] starts = batch.getStartTimes();
+        int size = batch.size();
+        if (field.getFormat() == FitField.FORMAT_INT32) {
+            int[] values = batch.getInts(fieldIndex);
+            for (int i = 0; i < size; i++) {
+                long start = starts[i];
+                if (start >= startTimeMillis && start < endTimeMillis) {
+                    sums[(int) ((start - startTimeMillis) / bucketMillis)] += values[i];
+                }
+            }
+        } else {
+            float[] values = batch.getFloats(fieldIndex);
+            for (int i = 0; i < size; i++) {
+                long start = starts[i];
+                if (start >= startTimeMillis && start < endTimeMillis) {
+                    sums[(int) ((start - startTimeMillis) / bucketMillis)] += values[i];
+                }
+            }
+        }
+        return sums;
+    }
+
+    private static void checkBuckets(long bucketMillis, int bucketCount) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketMillis must be positive: " + bucketMillis);
+        }
+        if (bucketCount < 0) {
+            throw new IllegalArgumentException("bucketCount must not be negative: "
+                    + bucketCount);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Inserts large numbers of data points, such as months of step counts backfilled from a
+ * pedometer, through a {@link HistoryWriter}. The points are split into chunks no larger than
+ * the History API accepts in one data set, one data type and source per chunk, and a bounded
+ * number of chunk inserts are kept in flight at once. A chunk whose insert fails is put back at
+ * the end of the queue and tried again, up to a number of attempts, while the others carry on.
+ *
+ * <p>Each call to {@link #insert} runs on its own, with its own limit on inserts in flight. The
+ * listener is told of progress and of the result, with the throughput achieved, on whichever
+ * thread the writer calls back on.</p>
+ *
+ * <p>Thread-safe. Has no Android dependencies.</p>
+ */
+public final class BulkInserter {
+
+    /** The most points the History API takes in one inserted data set. */
+    public static final int DEFAULT_MAX_POINTS_PER_CHUNK = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private static final Comparator<FitDataPoint> BY_START = new Comparator<FitDataPoint>() {
+        @Override
+        public int compare(FitDataPoint a, FitDataPoint b) {
+            long x = a.getStartTimeMillis();
+            long y = b.getStartTimeMillis();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+    };
+
+    /** Told how an {@link #insert} is going. */
+    public interface Listener {
+        /**
+         * Called after each chunk insert finishes, successfully or not.
+         *
+         * @param insertedPoints Points inserted so far.
+         * @param totalPoints Points to insert in all.
+         */
+        void onProgress(long insertedPoints, long totalPoints);
+
+        /** Called once, when every chunk was inserted or ran out of attempts. */
+        void onComplete(Result result);
+    }
+
+    /** The outcome of an {@link #insert}. */
+    public static final class Result {
+        private final long mTotalPoints;
+        private final long mInsertedPoints;
+        private final int mChunkCount;
+        private final int mRetryCount;
+        private final List<List<FitDataPoint>> mFailedChunks;
+        private final Throwable mLastFailure;
+        private final long mElapsedNanos;
+
+        Result(long totalPoints, long insertedPoints, int chunkCount, int retryCount,
+                List<List<FitDataPoint>> failedChunks, Throwable lastFailure,
+                long elapsedNanos) {
+            mTotalPoints = totalPoints;
+            mInsertedPoints = insertedPoints;
+            mChunkCount = chunkCount;
+            mRetryCount = retryCount;
+            mFailedChunks = failedChunks;
+            mLastFailure = lastFailure;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        /** Returns whether every point was inserted. */
+        public boolean isSuccessful() {
+            return mFailedChunks.isEmpty();
+        }
+
+        public long getTotalPoints() {
+            return mTotalPoints;
+        }
+
+        public long getInsertedPoints() {
+            return mInsertedPoints;
+        }
+
+        /** Returns the number of chunks the points were split into. */
+        public int getChunkCount() {
+            return mChunkCount;
+        }
+
+        /** Returns the number of chunk inserts which were tried again after failing. */
+        public int getRetryCount() {
+            return mRetryCount;
+        }
+
+        /**
+         * Returns the chunks which failed on every attempt, so they can be inserted again
+         * later. Empty if the insert was successful.
+         */
+        public List<List<FitDataPoint>> getFailedChunks() {
+            return mFailedChunks;
+        }
+
+        /** Returns why the last failed chunk insert failed, or null if none failed. */
+        public Throwable getLastFailure() {
+            return mLastFailure;
+        }
+
+        public long getElapsedMillis() {
+            return mElapsedNanos / 1000000;
+        }
+
+        /** Returns the points inserted per second of elapsed time. */
+        public double getPointsPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mInsertedPoints * 1e9 / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d of %d points in %d chunks, %d ms, %.0f points/s, %d retries, %d failed",
+                    mInsertedPoints, mTotalPoints, mChunkCount, getElapsedMillis(),
+                    getPointsPerSecond(), mRetryCount, mFailedChunks.size());
+        }
+    }
+
+    private final HistoryWriter mWriter;
+    private final int mMaxPointsPerChunk;
+    private final int mMaxInFlight;
+    private final int mMaxAttempts;
+
+    /**
+     * Creates an inserter with {@link #DEFAULT_MAX_POINTS_PER_CHUNK},
+     * {@link #DEFAULT_MAX_IN_FLIGHT} and {@link #DEFAULT_MAX_ATTEMPTS}.
+     */
+    public BulkInserter(HistoryWriter writer) {
+        this(writer, DEFAULT_MAX_POINTS_PER_CHUNK, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Creates an inserter.
+     *
+     * @param writer Where to insert the points.
+     * @param maxPointsPerChunk The most points inserted at once.
+     * @param maxInFlight The most chunk inserts started and not finished at any time.
+     * @param maxAttempts How many times a chunk is tried before it is given up on.
+     */
+    public BulkInserter(HistoryWriter writer, int maxPointsPerChunk, int maxInFlight,
+            int maxAttempts) {
+        if (maxPointsPerChunk <= 0) {
+            throw new IllegalArgumentException("maxPointsPerChunk must be positive: "
+                    + maxPointsPerChunk);
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        mWriter = writer;
+        mMaxPointsPerChunk = maxPointsPerChunk;
+        mMaxInFlight = maxInFlight;
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Starts inserting points, and returns without waiting for them to be inserted.
+     *
+     * @param points The points, in any order, of any data types and sources.
+     * @param listener Told of progress and of the result.
+     */
+    public void insert(Collection<FitDataPoint> points, Listener listener) {
+        new Job(chunk(points, mMaxPointsPerChunk), points.size(), listener).pump();
+    }
+
+    /**
+     * Splits points into chunks of one data type and source each, ordered by start time, with no
+     * more than the given number of points.
+     */
+    public static List<List<FitDataPoint>> chunk(Collection<FitDataPoint> points,
+            int maxPointsPerChunk) {
+        LinkedHashMap<String, List<FitDataPoint>> streams =
+                new LinkedHashMap<String, List<FitDataPoint>>();
+        for (FitDataPoint point : points) {
+            String stream = point.getDataType().getName() + '\u0000' + point.getSource();
+            List<FitDataPoint> list = streams.get(stream);
+            if (list == null) {
+                list = new ArrayList<FitDataPoint>();
+                streams.put(stream, list);
+            }
+            list.add(point);
+        }
+        List<List<FitDataPoint>> chunks = new ArrayList<List<FitDataPoint>>();
+        for (List<FitDataPoint> stream : streams.values()) {
+            Collections.sort(stream, BY_START);
+            for (int i = 0; i < stream.size(); i += maxPointsPerChunk) {
+                chunks.add(Collections.unmodifiableList(
+                        stream.subList(i, Math.min(i + maxPointsPerChunk, stream.size()))));
+            }
+        }
+        return chunks;
+    }
+
+    /** A chunk waiting to be inserted, with the number of times it was tried. */
+    private static final class Chunk {
+        final List<FitDataPoint> mPoints;
+        int mAttempts;
+
+        Chunk(List<FitDataPoint> points) {
+            mPoints = points;
+        }
+    }
+
+    /** The state of one call to {@link #insert}. */
+    private final class Job {
+        private final Listener mListener;
+        private final long mTotalPoints;
+        private final int mChunkCount;
+        private final long mStartNanos = System.nanoTime();
+
+        // Guarded by this.
+        private final ArrayDeque<Chunk> mPending = new ArrayDeque<Chunk>();
+        private final List<List<FitDataPoint>> mFailed = new ArrayList<List<FitDataPoint>>();
+        private Throwable mLastFailure;
+        private int mInFlight;
+        private long mInsertedPoints;
+        private int mRetryCount;
+        private boolean mComplete;
+
+        Job(List<List<FitDataPoint>> chunks, long totalPoints, Listener listener) {
+            for (int i = 0; i < chunks.size(); i++) {
+                mPending.add(new Chunk(chunks.get(i)));
+            }
+            mChunkCount = chunks.size();
+            mTotalPoints = totalPoints;
+            mListener = listener;
+        }
+
+        /** Starts inserts until the limit in flight is reached, or finishes if all are done. */
+        void pump() {
+            List<Chunk> toStart = new ArrayList<Chunk>();
+            Result result = null;
+            synchronized (this) {
+                while (mInFlight < mMaxInFlight && !mPending.isEmpty()) {
+                    Chunk chunk = mPending.removeFirst();
+                    chunk.mAttempts++;
+                    mInFlight++;
+                    toStart.add(chunk);
+                }
+                if (mInFlight == 0 && mPending.isEmpty() && !mComplete) {
+                    mComplete = true;
+                    result = new Result(mTotalPoints, mInsertedPoints, mChunkCount, mRetryCount,
+                            Collections.unmodifiableList(mFailed), mLastFailure,
+                            System.nanoTime() - mStartNanos);
+                }
+            }
+            if (result != null) {
+                mListener.onComplete(result);
+            }
+            // Outside the lock, since a writer may call back before insert() returns.
+            for (int i = 0; i < toStart.size(); i++) {
+                start(toStart.get(i));
+            }
+        }
+
+        private void start(final Chunk chunk) {
+            HistoryWriter.Callback callback = new HistoryWriter.Callback() {
+                @Override
+                public void onInsertComplete(Throwable failure) {
+                    finish(chunk, failure);
+                }
+            };
+            try {
+                mWriter.insert(chunk.mPoints, callback);
+            } catch (RuntimeException e) {
+                finish(chunk, e);
+            }
+        }
+
+        private void finish(Chunk chunk, Throwable failure) {
+            long inserted;
+            synchronized (this) {
+                mInFlight--;
+                if (failure == null) {
+                    mInsertedPoints += chunk.mPoints.size();
+                } else if (chunk.mAttempts < mMaxAttempts) {
+                    // Behind everything else waiting, which gives a passing failure time to pass.
+                    mRetryCount++;
+                    mPending.addLast(chunk);
+                } else {
+                    mFailed.add(chunk.mPoints);
+                    mLastFailure = failure;
+                }
+                inserted = mInsertedPoints;
+            }
+            mListener.onProgress(inserted, mTotalPoints);
+            pump();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import com.google.android.gms.fit.samples.common.logger.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes data points as lines of text, one per point, to a stream or to the log chain, for dumps
+ * too large for one record per point. Each line holds the type, start and end times and field
+ * values, separated by tabs, for instance (tabs shown as spaces):
+ *
+ * <pre>com.google.step_count.delta  2017-07-14 02:40:00  2017-07-14 02:45:00  steps=123</pre>
+ *
+ * <p>Lines are built in a buffer which is reused from call to call and handed to the sink a few
+ * kilobytes at a time. Dates go through one formatter, once per day: the text of recent days is
+ * cached, and the time of day is written digit by digit, so a run of points costs a cache lookup
+ * and six digits per time rather than a trip through {@link java.text.DateFormat}.</p>
+ *
+ * <p>Not thread-safe: use one per thread. Has no Android dependencies.</p>
+ */
+public final class DataPointDumper {
+
+    /** Characters buffered before they are handed to the sink. */
+    private static final int FLUSH_CHARS = 8 * 1024;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+    // The times of a run of points fall in a few days at a time.
+    private static final int DATE_CACHE_SIZE = 8;
+
+    private final TimeZone mTimeZone;
+    // Formats local days, counted from the epoch as if they were UTC ones.
+    private final SimpleDateFormat mDateFormat;
+    private final Date mDate = new Date();
+    private final long[] mDateDays = new long[DATE_CACHE_SIZE];
+    private final String[] mDates = new String[DATE_CACHE_SIZE];
+    private final StringBuilder mBuffer = new StringBuilder(FLUSH_CHARS + 256);
+    private char[] mChars;
+
+    /** Creates a dumper which writes times in the default time zone. */
+    public DataPointDumper() {
+        this(TimeZone.getDefault());
+    }
+
+    /** Creates a dumper which writes times in the given time zone. */
+    public DataPointDumper(TimeZone timeZone) {
+        mTimeZone = (TimeZone) timeZone.clone();
+        mDateFormat = new SimpleDateFormat("yyyy-MM-dd ", Locale.US);
+        mDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Writes a line per point to a sink, such as a {@link Writer} or a {@link StringBuilder}.
+     * The sink is not flushed.
+     */
+    public void dump(List<FitDataPoint> points, Appendable out) throws IOException {
+        mBuffer.setLength(0);
+        for (int i = 0, size = points.size(); i < size; i++) {
+            appendLine(points.get(i));
+            if (mBuffer.length() >= FLUSH_CHARS) {
+                flush(out);
+            }
+        }
+        flush(out);
+    }
+
+    /** Writes a line per point of a batch to a sink, like {@link #dump(List, Appendable)}. */
+    public void dump(FitDataBatch batch, Appendable out) throws IOException {
+        mBuffer.setLength(0);
+        for (int row = 0, size = batch.size(); row < size; row++) {
+            appendLine(batch, row);
+            if (mBuffer.length() >= FLUSH_CHARS) {
+                flush(out);
+            }
+        }
+        flush(out);
+    }
+
+    /**
+     * Logs a line per point at INFO priority. Lines are logged a few kilobytes at a time, as one
+     * message each, so a long dump costs a few trips down the chain rather than one per point.
+     */
+    public void log(String tag, List<FitDataPoint> points) {
+        if (!Log.isLoggable(Log.INFO, tag)) {
+            return;
+        }
+        mBuffer.setLength(0);
+        for (int i = 0, size = points.size(); i < size; i++) {
+            appendLine(points.get(i));
+            if (mBuffer.length() >= FLUSH_CHARS) {
+                flushToLog(tag);
+            }
+        }
+        flushToLog(tag);
+    }
+
+    /** Logs a line per point of a batch, like {@link #log(String, List)}. */
+    public void log(String tag, FitDataBatch batch) {
+        if (!Log.isLoggable(Log.INFO, tag)) {
+            return;
+        }
+        mBuffer.setLength(0);
+        for (int row = 0, size = batch.size(); row < size; row++) {
+            appendLine(batch, row);
+            if (mBuffer.length() >= FLUSH_CHARS) {
+                flushToLog(tag);
+            }
+        }
+        flushToLog(tag);
+    }
+
+    /** Appends a time as {@code yyyy-MM-dd HH:mm:ss}, in the dumper's time zone. */
+    public StringBuilder appendTime(StringBuilder out, long timeMillis) {
+        long localMillis = timeMillis + mTimeZone.getOffset(timeMillis);
+        long day = localMillis / DAY_MILLIS;
+        if (localMillis % DAY_MILLIS < 0) {
+            day--;
+        }
+        int slot = (int) (day & (DATE_CACHE_SIZE - 1));
+        String date = mDates[slot];
+        if (date == null || mDateDays[slot] != day) {
+            mDate.setTime(day * DAY_MILLIS);
+            date = mDateFormat.format(mDate);
+            mDates[slot] = date;
+            mDateDays[slot] = day;
+        }
+        int seconds = (int) ((localMillis - day * DAY_MILLIS) / 1000);
+        out.append(date);
+        appendTwoDigits(out, seconds / 3600).append(':');
+        appendTwoDigits(out, seconds / 60 % 60).append(':');
+        return appendTwoDigits(out, seconds % 60);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private void appendLine(FitDataPoint point) {
+        FitDataType type = point.getDataType();
+        mBuffer.append(type.getName()).append('\t');
+        appendTime(mBuffer, point.getStartTimeMillis()).append('\t');
+        appendTime(mBuffer, point.getEndTimeMillis());
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            FitField field = type.getField(i);
+            mBuffer.append('\t').append(field.getName()).append('=');
+            DataPointFormatter.appendValue(mBuffer, field, point.getValue(i));
+        }
+        mBuffer.append('\n');
+    }
+
+    private void appendLine(FitDataBatch batch, int row) {
+        FitDataType type = batch.getDataType();
+        mBuffer.append(type.getName()).append('\t');
+        appendTime(mBuffer, batch.getStartTimeMillis(row)).append('\t');
+        appendTime(mBuffer, batch.getEndTimeMillis(row));
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            FitField field = type.getField(i);
+            mBuffer.append('\t').append(field.getName()).append('=');
+            if (field.getFormat() == FitField.FORMAT_INT32) {
+                mBuffer.append(batch.getInt(i, row));
+            } else {
+                mBuffer.append(batch.getFloat(i, row));
+            }
+        }
+        mBuffer.append('\n');
+    }
+
+    private void flush(Appendable out) throws IOException {
+        int length = mBuffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (out instanceof Writer) {
+            // Straight from a reused array, rather than through a String of each chunk.
+            if (mChars == null || mChars.length < length) {
+                mChars = new char[Math.max(length, FLUSH_CHARS + 256)];
+            }
+            mBuffer.getChars(0, length, mChars, 0);
+            ((Writer) out).write(mChars, 0, length);
+        } else {
+            out.append(mBuffer);
+        }
+        mBuffer.setLength(0);
+    }
+
+    private void flushToLog(String tag) {
+        int length = mBuffer.length();
+        if (length == 0) {
+            return;
+        }
+        // Each message holds whole lines, without the last line break.
+        mBuffer.setLength(length - 1);
+        Log.println(Log.INFO, tag, mBuffer);
+        mBuffer.setLength(0);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogRecord;
+
+/**
+ * Turns data points into log output, the way the samples' {@code dumpDataSet} does, for code
+ * which has {@link FitDataPoint}s rather than the platform's classes.
+ */
+public final class DataPointFormatter {
+
+    private DataPointFormatter() {
+    }
+
+    /**
+     * Logs a data point as one structured record at INFO priority, with its type, start and end
+     * times and field values as key-value pairs.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param point The data point to log.
+     */
+    public static void log(String tag, FitDataPoint point) {
+        if (Log.isLoggable(Log.INFO, tag)) {
+            addFields(Log.event(tag).setMessage("Data point"), point).emit();
+        }
+    }
+
+    /**
+     * Adds the type, start and end times and field values of a data point to a record as
+     * key-value pairs. Whole number fields are added as longs, floating point fields as doubles.
+     *
+     * @return The record, for chaining.
+     */
+    public static LogRecord addFields(LogRecord record, FitDataPoint point) {
+        FitDataType type = point.getDataType();
+        record.kv("type", type.getName())
+                .kvTime("start", point.getStartTimeMillis())
+                .kvTime("end", point.getEndTimeMillis());
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            FitField field = type.getField(i);
+            if (field.getFormat() == FitField.FORMAT_INT32) {
+                record.kv(field.getName(), (long) point.getValue(i));
+            } else {
+                record.kv(field.getName(), point.getValue(i));
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Appends a field value as text: whole numbers without a fraction, floating point values
+     * with the precision of a float, which is all the platform keeps.
+     */
+    public static StringBuilder appendValue(StringBuilder out, FitField field, double value) {
+        if (field.getFormat() == FitField.FORMAT_INT32) {
+            return out.append((long) value);
+        }
+        return out.append((float) value);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link HistorySource} which serves points kept in memory, for exercising a
+ * {@link TimeSeriesSync} and {@link TimeSeriesStore} on a JVM, without a device or an account.
+ * It remembers the ranges it was asked for, and can be made to fail, so a caller can check what
+ * a sync requested and how it recovers.
+ *
+ * <p>Thread-safe.</p>
+ */
+public class FakeHistorySource implements HistorySource {
+
+    /** A read made of the source. */
+    public static final class Request {
+        private final FitDataType mDataType;
+        private final long mStartTimeMillis;
+        private final long mEndTimeMillis;
+
+        Request(FitDataType dataType, long startTimeMillis, long endTimeMillis) {
+            mDataType = dataType;
+            mStartTimeMillis = startTimeMillis;
+            mEndTimeMillis = endTimeMillis;
+        }
+
+        public FitDataType getDataType() {
+            return mDataType;
+        }
+
+        public long getStartTimeMillis() {
+            return mStartTimeMillis;
+        }
+
+        public long getEndTimeMillis() {
+            return mEndTimeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return mDataType + " [" + mStartTimeMillis + ", " + mEndTimeMillis + ")";
+        }
+    }
+
+    private final List<FitDataPoint> mPoints = new ArrayList<FitDataPoint>();
+    private final List<Request> mRequests = new ArrayList<Request>();
+    private int mFailuresLeft;
+    private long mLatencyMillis;
+
+    /** Adds points, as if another app had inserted them into the History API. */
+    public synchronized void insert(List<FitDataPoint> points) {
+        mPoints.addAll(points);
+    }
+
+    /** Adds a point, as if another app had inserted it into the History API. */
+    public synchronized void insert(FitDataPoint point) {
+        mPoints.add(point);
+    }
+
+    /** Removes the points of a data type which overlap a time range. */
+    public synchronized void delete(FitDataType dataType, long startTimeMillis,
+            long endTimeMillis) {
+        for (int i = mPoints.size() - 1; i >= 0; i--) {
+            if (overlaps(mPoints.get(i), dataType, startTimeMillis, endTimeMillis)) {
+                mPoints.remove(i);
+            }
+        }
+    }
+
+    /** Makes the next reads throw an IOException, as a read with no network would. */
+    public synchronized void failNextReads(int count) {
+        mFailuresLeft = count;
+    }
+
+    /**
+     * Makes each read take at least a given time, as a round trip to the History API would.
+     * Reads wait outside the source's lock, so concurrent reads overlap.
+     */
+    public synchronized void setLatencyMillis(long latencyMillis) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis must not be negative: "
+                    + latencyMillis);
+        }
+        mLatencyMillis = latencyMillis;
+    }
+
+    /** Returns the reads made so far, oldest first. */
+    public synchronized List<Request> getRequests() {
+        return new ArrayList<Request>(mRequests);
+    }
+
+    /** Forgets the reads made so far. */
+    public synchronized void clearRequests() {
+        mRequests.clear();
+    }
+
+    @Override
+    public List<FitDataPoint> read(FitDataType dataType, long startTimeMillis,
+            long endTimeMillis) throws IOException {
+        List<FitDataPoint> points = new ArrayList<FitDataPoint>();
+        long latencyMillis;
+        boolean fail;
+        synchronized (this) {
+            mRequests.add(new Request(dataType, startTimeMillis, endTimeMillis));
+            latencyMillis = mLatencyMillis;
+            fail = mFailuresLeft > 0;
+            if (fail) {
+                mFailuresLeft--;
+            } else {
+                for (int i = 0; i < mPoints.size(); i++) {
+                    if (overlaps(mPoints.get(i), dataType, startTimeMillis, endTimeMillis)) {
+                        points.add(mPoints.get(i));
+                    }
+                }
+            }
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during a simulated read");
+            }
+        }
+        if (fail) {
+            throw new IOException("Simulated read failure");
+        }
+        return points;
+    }
+
+    private static boolean overlaps(FitDataPoint point, FitDataType dataType,
+            long startTimeMillis, long endTimeMillis) {
+        return point.getDataType().getName().equals(dataType.getName())
+                && point.getStartTimeMillis() < endTimeMillis
+                && Math.max(point.getEndTimeMillis(), point.getStartTimeMillis() + 1)
+                        > startTimeMillis;
+    }
+}
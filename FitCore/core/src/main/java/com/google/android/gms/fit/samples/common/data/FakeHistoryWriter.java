@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HistoryWriter} which takes a set time to finish each insert, for measuring a
+ * {@link BulkInserter} on a JVM, without a device or an account. It can be made to fail, counts
+ * what it was sent and how many inserts were in flight at once, and can pass the points on to a
+ * {@link FakeHistorySource} so they can be read back.
+ *
+ * <p>Callbacks come on a thread of the writer's own. Thread-safe.</p>
+ */
+public class FakeHistoryWriter implements HistoryWriter {
+
+    private final long mLatencyMillis;
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private FakeHistorySource mTarget;
+
+    // Guarded by this.
+    private int mFailuresLeft;
+    private int mInFlight;
+    private int mMaxInFlight;
+    private int mInsertCount;
+    private long mPointCount;
+
+    /**
+     * Creates a writer.
+     *
+     * @param latencyMillis How long each insert takes to finish.
+     */
+    public FakeHistoryWriter(long latencyMillis) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis must not be negative: "
+                    + latencyMillis);
+        }
+        mLatencyMillis = latencyMillis;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FakeHistoryWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Passes the points of every successful insert on to a source, or to none if null. */
+    public synchronized void setTarget(FakeHistorySource target) {
+        mTarget = target;
+    }
+
+    /** Makes the next inserts fail with an IOException, as an insert with no network would. */
+    public synchronized void failNextInserts(int count) {
+        mFailuresLeft = count;
+    }
+
+    @Override
+    public void insert(final List<FitDataPoint> points, final Callback callback) {
+        final boolean fail;
+        synchronized (this) {
+            fail = mFailuresLeft > 0;
+            if (fail) {
+                mFailuresLeft--;
+            }
+            mInFlight++;
+            mMaxInFlight = Math.max(mMaxInFlight, mInFlight);
+        }
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                FakeHistorySource target;
+                synchronized (FakeHistoryWriter.this) {
+                    mInFlight--;
+                    if (!fail) {
+                        mInsertCount++;
+                        mPointCount += points.size();
+                    }
+                    target = mTarget;
+                }
+                if (fail) {
+                    callback.onInsertComplete(new IOException("Simulated insert failure"));
+                    return;
+                }
+                if (target != null) {
+                    target.insert(points);
+                }
+                callback.onInsertComplete(null);
+            }
+        }, mLatencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Returns the number of inserts which succeeded. */
+    public synchronized int getInsertCount() {
+        return mInsertCount;
+    }
+
+    /** Returns the number of points inserted successfully. */
+    public synchronized long getPointCount() {
+        return mPointCount;
+    }
+
+    /** Returns the most inserts which were in flight at once. */
+    public synchronized int getMaxInFlight() {
+        return mMaxInFlight;
+    }
+
+    /** Stops the writer's thread. Inserts still in flight never finish. */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Data points of one data type, stored by column: one array of start times, one of end times and
+ * one primitive array per field, {@code int[]} for INT32 fields and {@code float[]} for FLOAT
+ * fields, which is all the precision the platform keeps. A week or a month of points costs a
+ * handful of arrays rather than an object and a value array per point, and code which sums or
+ * exports them can loop over the arrays directly.
+ *
+ * <p>Rows are appended with {@link #add(long, long)} and their values set by field index.</p>
+ *
+ * <p>Not thread-safe. Has no Android dependencies.</p>
+ */
+public final class FitDataBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final FitDataType mDataType;
+    private final String mSource;
+    private long[] mStartTimes;
+    private long[] mEndTimes;
+    // Per field, exactly one of these is non-null, by the field's format.
+    private final int[][] mInts;
+    private final float[][] mFloats;
+    private int mSize;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param dataType The type of every point.
+     * @param source Name of the data source of every point, or null if not known or not all
+     *               the same.
+     */
+    public FitDataBatch(FitDataType dataType, String source) {
+        this(dataType, source, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch with room for a number of points before its arrays grow.
+     *
+     * @param dataType The type of every point.
+     * @param source Name of the data source of every point, or null if not known or not all
+     *               the same.
+     * @param capacity The number of points expected.
+     */
+    public FitDataBatch(FitDataType dataType, String source, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        mDataType = dataType;
+        mSource = source;
+        mStartTimes = new long[capacity];
+        mEndTimes = new long[capacity];
+        int fieldCount = dataType.getFieldCount();
+        mInts = new int[fieldCount][];
+        mFloats = new float[fieldCount][];
+        for (int i = 0; i < fieldCount; i++) {
+            if (dataType.getField(i).getFormat() == FitField.FORMAT_INT32) {
+                mInts[i] = new int[capacity];
+            } else {
+                mFloats[i] = new float[capacity];
+            }
+        }
+    }
+
+    /** Creates a batch holding copies of points, which must all be of the given type. */
+    public static FitDataBatch of(FitDataType dataType, String source, List<FitDataPoint> points) {
+        FitDataBatch batch = new FitDataBatch(dataType, source, points.size());
+        for (int i = 0, size = points.size(); i < size; i++) {
+            batch.add(points.get(i));
+        }
+        return batch;
+    }
+
+    public FitDataType getDataType() {
+        return mDataType;
+    }
+
+    /** Returns the name of the data source of every point, or null. */
+    public String getSource() {
+        return mSource;
+    }
+
+    /** Returns the number of points. */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Appends a point with every field zero, to be set with {@link #setInt} or
+     * {@link #setFloat}.
+     *
+     * @param startTimeMillis Start of the interval, in milliseconds since the epoch.
+     * @param endTimeMillis End of the interval. Equal to the start for an instantaneous reading.
+     * @return The index of the new point.
+     */
+    public int add(long startTimeMillis, long endTimeMillis) {
+        if (endTimeMillis < startTimeMillis) {
+            throw new IllegalArgumentException("End " + endTimeMillis + " is before start "
+                    + startTimeMillis);
+        }
+        if (mSize == mStartTimes.length) {
+            grow();
+        }
+        int row = mSize++;
+        mStartTimes[row] = startTimeMillis;
+        mEndTimes[row] = endTimeMillis;
+        for (int i = 0; i < mInts.length; i++) {
+            if (mInts[i] != null) {
+                mInts[i][row] = 0;
+            } else {
+                mFloats[i][row] = 0;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Appends a copy of a point of this batch's type. Its source is not kept.
+     *
+     * @return The index of the new point.
+     */
+    public int add(FitDataPoint point) {
+        if (!point.getDataType().equals(mDataType)) {
+            throw new IllegalArgumentException("Expected " + mDataType + ", got "
+                    + point.getDataType());
+        }
+        int row = add(point.getStartTimeMillis(), point.getEndTimeMillis());
+        for (int i = 0; i < mInts.length; i++) {
+            if (mInts[i] != null) {
+                mInts[i][row] = point.getInt(i);
+            } else {
+                mFloats[i][row] = (float) point.getValue(i);
+            }
+        }
+        return row;
+    }
+
+    /** Removes every point, keeping the arrays for reuse. */
+    public void clear() {
+        mSize = 0;
+    }
+
+    public long getStartTimeMillis(int row) {
+        checkRow(row);
+        return mStartTimes[row];
+    }
+
+    public long getEndTimeMillis(int row) {
+        checkRow(row);
+        return mEndTimes[row];
+    }
+
+    /** Returns the value of an INT32 field of a point. */
+    public int getInt(int fieldIndex, int row) {
+        checkRow(row);
+        return getInts(fieldIndex)[row];
+    }
+
+    /** Returns the value of a FLOAT field of a point. */
+    public float getFloat(int fieldIndex, int row) {
+        checkRow(row);
+        return getFloats(fieldIndex)[row];
+    }
+
+    /** Returns the value of a field of a point, whatever its format. */
+    public double getValue(int fieldIndex, int row) {
+        checkRow(row);
+        int[] ints = mInts[fieldIndex];
+        return ints != null ? ints[row] : mFloats[fieldIndex][row];
+    }
+
+    /** Sets the value of an INT32 field of a point. */
+    public void setInt(int fieldIndex, int row, int value) {
+        checkRow(row);
+        getInts(fieldIndex)[row] = value;
+    }
+
+    /** Sets the value of a FLOAT field of a point. */
+    public void setFloat(int fieldIndex, int row, float value) {
+        checkRow(row);
+        getFloats(fieldIndex)[row] = value;
+    }
+
+    /**
+     * Returns the start times, in milliseconds since the epoch. The array is the batch's own:
+     * only the first {@link #size()} elements are points, and it is replaced when the batch
+     * grows, so look it up again after adding.
+     */
+    public long[] getStartTimes() {
+        return mStartTimes;
+    }
+
+    /** Returns the end times, like {@link #getStartTimes()}. */
+    public long[] getEndTimes() {
+        return mEndTimes;
+    }
+
+    /** Returns the values of an INT32 field, like {@link #getStartTimes()}. */
+    public int[] getInts(int fieldIndex) {
+        int[] ints = mInts[fieldIndex];
+        if (ints == null) {
+            throw new IllegalArgumentException(mDataType.getField(fieldIndex) + " is not INT32");
+        }
+        return ints;
+    }
+
+    /** Returns the values of a FLOAT field, like {@link #getStartTimes()}. */
+    public float[] getFloats(int fieldIndex) {
+        float[] floats = mFloats[fieldIndex];
+        if (floats == null) {
+            throw new IllegalArgumentException(mDataType.getField(fieldIndex) + " is not FLOAT");
+        }
+        return floats;
+    }
+
+    /** Returns a point as a {@link FitDataPoint}, with the batch's source. */
+    public FitDataPoint toPoint(int row) {
+        checkRow(row);
+        double[] values = new double[mInts.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = mInts[i] != null ? mInts[i][row] : mFloats[i][row];
+        }
+        return new FitDataPoint(mDataType, mStartTimes[row], mEndTimes[row], mSource, values);
+    }
+
+    /** Returns every point as a {@link FitDataPoint}, in order. */
+    public List<FitDataPoint> toPoints() {
+        List<FitDataPoint> points = new ArrayList<FitDataPoint>(mSize);
+        for (int row = 0; row < mSize; row++) {
+            points.add(toPoint(row));
+        }
+        return points;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, mStartTimes.length * 2);
+        mStartTimes = Arrays.copyOf(mStartTimes, capacity);
+        mEndTimes = Arrays.copyOf(mEndTimes, capacity);
+        for (int i = 0; i < mInts.length; i++) {
+            if (mInts[i] != null) {
+                mInts[i] = Arrays.copyOf(mInts[i], capacity);
+            } else {
+                mFloats[i] = Arrays.copyOf(mFloats[i], capacity);
+            }
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + mSize);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One reading over a time interval, like the platform's {@code DataPoint}, without the Android
+ * dependencies. Values are kept as doubles, one per field of the data type, which hold every
+ * INT32 value exactly.
+ */
+public final class FitDataPoint {
+
+    private final FitDataType mDataType;
+    private final long mStartTimeMillis;
+    private final long mEndTimeMillis;
+    private final String mSource;
+    private final double[] mValues;
+
+    /**
+     * Creates a data point.
+     *
+     * @param dataType The type of the point.
+     * @param startTimeMillis Start of the interval, in milliseconds since the epoch.
+     * @param endTimeMillis End of the interval, in milliseconds since the epoch. Equal to the
+     *                      start for an instantaneous reading.
+     * @param source Name of the data source the point came from, or null.
+     * @param values One value per field of the data type, in order.
+     */
+    public FitDataPoint(FitDataType dataType, long startTimeMillis, long endTimeMillis,
+            String source, double... values) {
+        if (endTimeMillis < startTimeMillis) {
+            throw new IllegalArgumentException("End " + endTimeMillis + " is before start "
+                    + startTimeMillis);
+        }
+        if (values.length != dataType.getFieldCount()) {
+            throw new IllegalArgumentException(dataType + " has " + dataType.getFieldCount()
+                    + " fields, got " + values.length + " values");
+        }
+        mDataType = dataType;
+        mStartTimeMillis = startTimeMillis;
+        mEndTimeMillis = endTimeMillis;
+        mSource = source;
+        mValues = values.clone();
+    }
+
+    public FitDataType getDataType() {
+        return mDataType;
+    }
+
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return mEndTimeMillis;
+    }
+
+    /** Returns the name of the data source the point came from, or null. */
+    public String getSource() {
+        return mSource;
+    }
+
+    /** Returns the value of the field at the given index of the data type. */
+    public double getValue(int fieldIndex) {
+        return mValues[fieldIndex];
+    }
+
+    /** Returns the value of an INT32 field at the given index of the data type. */
+    public int getInt(int fieldIndex) {
+        return (int) mValues[fieldIndex];
+    }
+
+    /**
+     * Writes the point, type and fields included, for {@link #readFrom} to read back.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(mDataType.getName());
+        out.writeByte(mValues.length);
+        for (int i = 0; i < mValues.length; i++) {
+            out.writeUTF(mDataType.getField(i).getName());
+            out.writeByte(mDataType.getField(i).getFormat());
+            out.writeDouble(mValues[i]);
+        }
+        out.writeLong(mStartTimeMillis);
+        out.writeLong(mEndTimeMillis);
+        out.writeBoolean(mSource != null);
+        if (mSource != null) {
+            out.writeUTF(mSource);
+        }
+    }
+
+    /**
+     * Reads a point written by {@link #writeTo}.
+     *
+     * @param types Types read so far, by name. Points of a type already in it share its
+     *              instance, and new types are added.
+     */
+    static FitDataPoint readFrom(DataInput in, Map<String, FitDataType> types)
+            throws IOException {
+        String typeName = in.readUTF();
+        int fieldCount = in.readByte();
+        String[] fieldNames = new String[fieldCount];
+        int[] formats = new int[fieldCount];
+        double[] values = new double[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fieldNames[i] = in.readUTF();
+            formats[i] = in.readByte();
+            values[i] = in.readDouble();
+        }
+        long start = in.readLong();
+        long end = in.readLong();
+        String source = in.readBoolean() ? in.readUTF() : null;
+        try {
+            FitField[] fields = new FitField[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                fields[i] = new FitField(fieldNames[i], formats[i]);
+            }
+            FitDataType type = new FitDataType(typeName, fields);
+            FitDataType known = types.get(typeName);
+            if (type.equals(known)) {
+                type = known;
+            } else {
+                types.put(typeName, type);
+            }
+            return new FitDataPoint(type, start, end, source, values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt data point: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FitDataPoint)) {
+            return false;
+        }
+        FitDataPoint other = (FitDataPoint) o;
+        return mStartTimeMillis == other.mStartTimeMillis
+                && mEndTimeMillis == other.mEndTimeMillis
+                && mDataType.equals(other.mDataType)
+                && (mSource == null ? other.mSource == null : mSource.equals(other.mSource))
+                && Arrays.equals(mValues, other.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mDataType.hashCode();
+        hash = hash * 31 + (int) (mStartTimeMillis ^ (mStartTimeMillis >>> 32));
+        hash = hash * 31 + (int) (mEndTimeMillis ^ (mEndTimeMillis >>> 32));
+        hash = hash * 31 + (mSource == null ? 0 : mSource.hashCode());
+        return hash * 31 + Arrays.hashCode(mValues);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(mDataType).append(" [").append(mStartTimeMillis).append(", ")
+                .append(mEndTimeMillis).append(']');
+        for (int i = 0; i < mValues.length; i++) {
+            out.append(' ').append(mDataType.getField(i)).append('=');
+            DataPointFormatter.appendValue(out, mDataType.getField(i), mValues[i]);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.Arrays;
+
+/**
+ * A kind of fitness data: a name and the fields each data point of it has, like the platform's
+ * {@code DataType}, without the Android dependencies.
+ */
+public final class FitDataType {
+
+    public static final FitDataType STEP_COUNT_DELTA =
+            new FitDataType("com.google.step_count.delta", FitField.STEPS);
+    public static final FitDataType SPEED = new FitDataType("com.google.speed", FitField.SPEED);
+    public static final FitDataType ACTIVITY_SEGMENT =
+            new FitDataType("com.google.activity.segment", FitField.ACTIVITY);
+    /** The average, most and least speed over an interval, as an aggregate read returns. */
+    public static final FitDataType SPEED_SUMMARY = new FitDataType("com.google.speed.summary",
+            FitField.AVERAGE, FitField.MAX, FitField.MIN);
+
+    private final String mName;
+    private final FitField[] mFields;
+
+    /**
+     * Creates a data type.
+     *
+     * @param name Name of the data type, as the platform reports it.
+     * @param fields The fields of each data point, in order.
+     */
+    public FitDataType(String name, FitField... fields) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("A data type needs at least one field");
+        }
+        mName = name;
+        mFields = fields.clone();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Returns the number of fields. */
+    public int getFieldCount() {
+        return mFields.length;
+    }
+
+    /** Returns the field at the given index. */
+    public FitField getField(int index) {
+        return mFields[index];
+    }
+
+    /** Returns the index of the field, or -1 if this type does not have it. */
+    public int indexOf(FitField field) {
+        for (int i = 0; i < mFields.length; i++) {
+            if (mFields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FitDataType)) {
+            return false;
+        }
+        FitDataType other = (FitDataType) o;
+        return mName.equals(other.mName) && Arrays.equals(mFields, other.mFields);
+    }
+
+    @Override
+    public int hashCode() {
+        return mName.hashCode() * 31 + Arrays.hashCode(mFields);
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+/**
+ * A field of a {@link FitDataType}: a name and whether its values are whole numbers or floating
+ * point, like the platform's {@code Field}, without the Android dependencies.
+ */
+public final class FitField {
+
+    /** Values are whole numbers, such as a step count. Same value as the platform's. */
+    public static final int FORMAT_INT32 = 1;
+    /** Values are floating point, such as a speed. Same value as the platform's. */
+    public static final int FORMAT_FLOAT = 2;
+
+    public static final FitField STEPS = new FitField("steps", FORMAT_INT32);
+    public static final FitField SPEED = new FitField("speed", FORMAT_FLOAT);
+    /** The kind of activity of a segment, as the platform numbers them. */
+    public static final FitField ACTIVITY = new FitField("activity", FORMAT_INT32);
+    public static final FitField AVERAGE = new FitField("average", FORMAT_FLOAT);
+    public static final FitField MAX = new FitField("max", FORMAT_FLOAT);
+    public static final FitField MIN = new FitField("min", FORMAT_FLOAT);
+
+    private final String mName;
+    private final int mFormat;
+
+    /**
+     * Creates a field.
+     *
+     * @param name Name of the field, as the platform reports it.
+     * @param format {@link #FORMAT_INT32} or {@link #FORMAT_FLOAT}.
+     */
+    public FitField(String name, int format) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (format != FORMAT_INT32 && format != FORMAT_FLOAT) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        mName = name;
+        mFormat = format;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FitField)) {
+            return false;
+        }
+        FitField other = (FitField) o;
+        return mFormat == other.mFormat && mName.equals(other.mName);
+    }
+
+    @Override
+    public int hashCode() {
+        return mName.hashCode() * 31 + mFormat;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
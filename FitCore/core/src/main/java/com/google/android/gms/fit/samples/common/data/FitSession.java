@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+/**
+ * A named time interval, such as a run, like the platform's {@code Session}, without the Android
+ * dependencies.
+ */
+public final class FitSession {
+
+    private final String mName;
+    private final String mIdentifier;
+    private final long mStartTimeMillis;
+    private final long mEndTimeMillis;
+
+    /**
+     * Creates a session.
+     *
+     * @param name Name of the session, as shown to the user.
+     * @param identifier Identifier of the session, unique within the app.
+     * @param startTimeMillis Start of the session, in milliseconds since the epoch.
+     * @param endTimeMillis End of the session, in milliseconds since the epoch.
+     */
+    public FitSession(String name, String identifier, long startTimeMillis, long endTimeMillis) {
+        if (endTimeMillis < startTimeMillis) {
+            throw new IllegalArgumentException("End " + endTimeMillis + " is before start "
+                    + startTimeMillis);
+        }
+        mName = name;
+        mIdentifier = identifier;
+        mStartTimeMillis = startTimeMillis;
+        mEndTimeMillis = endTimeMillis;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getIdentifier() {
+        return mIdentifier;
+    }
+
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return mEndTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mName + " [" + mStartTimeMillis + ", " + mEndTimeMillis + ")";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Somewhere data points can be read from by time range: the History API on a device, through an
+ * adapter around its {@code HistoryClient}, or a {@link FakeHistorySource} off it.
+ */
+public interface HistorySource {
+
+    /**
+     * Reads the points of a data type, from every data source, whose interval overlaps a time
+     * range. Blocks until the points are read, so it must not be called on the main thread.
+     *
+     * @param dataType The type to read.
+     * @param startTimeMillis Start of the range, in milliseconds since the epoch.
+     * @param endTimeMillis End of the range, in milliseconds since the epoch.
+     * @return The points, in any order.
+     * @throws IOException If the read failed.
+     */
+    List<FitDataPoint> read(FitDataType dataType, long startTimeMillis, long endTimeMillis)
+            throws IOException;
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.List;
+
+/**
+ * Somewhere data points can be inserted: the History API on a device, through an adapter around
+ * its {@code HistoryClient}, or a {@link FakeHistoryWriter} off it.
+ */
+public interface HistoryWriter {
+
+    /** Told when an insert finishes. */
+    interface Callback {
+        /**
+         * Called once per insert, on any thread.
+         *
+         * @param failure Why the insert failed, or null if it succeeded.
+         */
+        void onInsertComplete(Throwable failure);
+    }
+
+    /**
+     * Starts inserting points, which all have the same data type and source, and returns without
+     * waiting for the insert to finish.
+     *
+     * @param points The points, ordered by start time.
+     * @param callback Told when the insert finishes.
+     */
+    void insert(List<FitDataPoint> points, Callback callback);
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Buckets and aggregates raw data points on the device, the way a History API read with
+ * {@code aggregate(...)} and {@code bucketByTime}, {@code bucketByActivitySegment} or
+ * {@code bucketBySession} does on the server, so a change between hourly, daily and weekly
+ * views of data already read costs no round trip.
+ *
+ * <p>Two aggregations are supported, by the type of the data:</p>
+ * <ul>
+ * <li>{@link FitDataType#STEP_COUNT_DELTA} is summed into a point of the same type, like
+ * {@code AGGREGATE_STEP_COUNT_DELTA}. A point whose interval crosses a bucket boundary counts
+ * towards each bucket in proportion to how much of its interval falls in it, and each total is
+ * rounded to whole steps.</li>
+ * <li>{@link FitDataType#SPEED} is summarised into a {@link FitDataType#SPEED_SUMMARY} point of
+ * the average, most and least speed, like {@code AGGREGATE_SPEED_SUMMARY}. A speed holds for the
+ * whole of its interval, so it counts once towards every bucket the interval overlaps.</li>
+ * </ul>
+ *
+ * <p>A bucket no point overlaps has no aggregate point, as a bucket read from the server has an
+ * empty data set. Instantaneous points count towards the bucket their time falls in.</p>
+ *
+ * <p>Has no state. Has no Android dependencies.</p>
+ */
+public final class LocalAggregator {
+
+    /** A time interval and the aggregate of the data in it. */
+    public static final class Bucket {
+        /** A bucket of a fixed time interval. Same value as the platform's. */
+        public static final int TYPE_TIME = 1;
+        /** A bucket of the time of a session. Same value as the platform's. */
+        public static final int TYPE_SESSION = 2;
+        /** A bucket of the time of an activity segment. Same value as the platform's. */
+        public static final int TYPE_ACTIVITY_SEGMENT = 4;
+
+        private final int mType;
+        private final long mStartTimeMillis;
+        private final long mEndTimeMillis;
+        private final int mActivity;
+        private final FitSession mSession;
+        private final FitDataPoint mPoint;
+
+        Bucket(int type, long startTimeMillis, long endTimeMillis, int activity,
+                FitSession session, FitDataPoint point) {
+            mType = type;
+            mStartTimeMillis = startTimeMillis;
+            mEndTimeMillis = endTimeMillis;
+            mActivity = activity;
+            mSession = session;
+            mPoint = point;
+        }
+
+        /** Returns how the bucket was made, one of the TYPE constants. */
+        public int getBucketType() {
+            return mType;
+        }
+
+        public long getStartTimeMillis() {
+            return mStartTimeMillis;
+        }
+
+        public long getEndTimeMillis() {
+            return mEndTimeMillis;
+        }
+
+        /** Returns the activity of an activity segment bucket, or -1 for other buckets. */
+        public int getActivity() {
+            return mActivity;
+        }
+
+        /** Returns the session of a session bucket, or null for other buckets. */
+        public FitSession getSession() {
+            return mSession;
+        }
+
+        /** Returns the aggregate of the data in the bucket, or null if there was none. */
+        public FitDataPoint getPoint() {
+            return mPoint;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + mStartTimeMillis + ", " + mEndTimeMillis + ") " + mPoint;
+        }
+    }
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    private static final Comparator<FitSession> SESSIONS_BY_START = new Comparator<FitSession>() {
+        @Override
+        public int compare(FitSession a, FitSession b) {
+            long x = a.getStartTimeMillis();
+            long y = b.getStartTimeMillis();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+    };
+
+    private LocalAggregator() {
+    }
+
+    /**
+     * Splits a time range into buckets of a fixed length, the last one cut short at the end of
+     * the range, like {@code bucketByTime}.
+     *
+     * @return The boundaries, from the start of the range to its end.
+     */
+    public static long[] getTimeBounds(long startTimeMillis, long endTimeMillis,
+            long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketMillis must be positive: " + bucketMillis);
+        }
+        return RangeReader.split(startTimeMillis, endTimeMillis, bucketMillis);
+    }
+
+    /**
+     * Splits a time range into calendar periods of a time zone, such as days or weeks, so that
+     * days stay days across daylight saving time changes. Start the range at the start of a
+     * period, such as midnight, for each bucket to be one whole period.
+     *
+     * @param calendarField The {@link Calendar} field to step, for instance
+     *                      {@link Calendar#HOUR_OF_DAY}, {@link Calendar#DAY_OF_MONTH} or
+     *                      {@link Calendar#WEEK_OF_YEAR}.
+     * @param amount How many of the field each bucket is.
+     * @return The boundaries, from the start of the range to its end.
+     */
+    public static long[] getCalendarBounds(long startTimeMillis, long endTimeMillis,
+            TimeZone timeZone, int calendarField, int amount) {
+        if (endTimeMillis < startTimeMillis) {
+            throw new IllegalArgumentException("End " + endTimeMillis + " is before start "
+                    + startTimeMillis);
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive: " + amount);
+        }
+        // Calendar adds these as elapsed time, so skip stepping it.
+        switch (calendarField) {
+            case Calendar.HOUR:
+            case Calendar.HOUR_OF_DAY:
+                return getTimeBounds(startTimeMillis, endTimeMillis, amount * HOUR_MILLIS);
+            case Calendar.MINUTE:
+                return getTimeBounds(startTimeMillis, endTimeMillis, amount * MINUTE_MILLIS);
+            default:
+                break;
+        }
+        Calendar calendar = Calendar.getInstance(timeZone, Locale.US);
+        calendar.setTimeInMillis(startTimeMillis);
+        long[] bounds = new long[16];
+        int count = 0;
+        long bound = startTimeMillis;
+        while (true) {
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count * 2);
+            }
+            bounds[count++] = bound;
+            if (bound >= endTimeMillis) {
+                break;
+            }
+            calendar.add(calendarField, amount);
+            bound = Math.min(calendar.getTimeInMillis(), endTimeMillis);
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Aggregates data into time buckets.
+     *
+     * @param data The points, in any order.
+     * @param bounds The boundaries of the buckets, for instance from {@link #getTimeBounds} or
+     *               {@link #getCalendarBounds}.
+     */
+    public static List<Bucket> bucketByTime(FitDataBatch data, long[] bounds) {
+        int count = Math.max(0, bounds.length - 1);
+        long[] starts = Arrays.copyOf(bounds, count);
+        long[] ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (bounds[i + 1] < bounds[i]) {
+                throw new IllegalArgumentException("Bounds out of order at " + i);
+            }
+            ends[i] = bounds[i + 1];
+        }
+        FitDataPoint[] points = aggregate(data, starts, ends);
+        List<Bucket> buckets = new ArrayList<Bucket>(count);
+        for (int i = 0; i < count; i++) {
+            buckets.add(new Bucket(Bucket.TYPE_TIME, starts[i], ends[i], -1, null, points[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Aggregates data into a bucket per activity segment, like {@code bucketByActivitySegment}.
+     *
+     * @param data The points, in any order.
+     * @param segments {@link FitDataType#ACTIVITY_SEGMENT} points, which must not overlap.
+     * @param minDurationMillis Segments shorter than this get no bucket.
+     * @return The buckets, in time order.
+     */
+    public static List<Bucket> bucketByActivitySegment(FitDataBatch data, FitDataBatch segments,
+            long minDurationMillis) {
+        int activityIndex = segments.getDataType().indexOf(FitField.ACTIVITY);
+        if (activityIndex < 0) {
+            throw new IllegalArgumentException(segments.getDataType() + " has no activity");
+        }
+        // Sort the segments which are long enough by start time.
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int row = 0; row < segments.size(); row++) {
+            if (segments.getEndTimeMillis(row) - segments.getStartTimeMillis(row)
+                    >= minDurationMillis) {
+                rows.add(row);
+            }
+        }
+        final long[] segmentStarts = segments.getStartTimes();
+        Collections.sort(rows, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long x = segmentStarts[a];
+                long y = segmentStarts[b];
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        long[] starts = new long[rows.size()];
+        long[] ends = new long[rows.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = segments.getStartTimeMillis(rows.get(i));
+            ends[i] = segments.getEndTimeMillis(rows.get(i));
+        }
+        FitDataPoint[] points = aggregate(data, starts, ends);
+        List<Bucket> buckets = new ArrayList<Bucket>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            buckets.add(new Bucket(Bucket.TYPE_ACTIVITY_SEGMENT, starts[i], ends[i],
+                    segments.getInt(activityIndex, rows.get(i)), null, points[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Aggregates data into a bucket per session, like {@code bucketBySession}.
+     *
+     * @param data The points, in any order.
+     * @param sessions The sessions, which must not overlap.
+     * @param minDurationMillis Sessions shorter than this get no bucket.
+     * @return The buckets, in time order.
+     */
+    public static List<Bucket> bucketBySession(FitDataBatch data, List<FitSession> sessions,
+            long minDurationMillis) {
+        List<FitSession> sorted = new ArrayList<FitSession>();
+        for (int i = 0; i < sessions.size(); i++) {
+            FitSession session = sessions.get(i);
+            if (session.getEndTimeMillis() - session.getStartTimeMillis() >= minDurationMillis) {
+                sorted.add(session);
+            }
+        }
+        Collections.sort(sorted, SESSIONS_BY_START);
+        long[] starts = new long[sorted.size()];
+        long[] ends = new long[sorted.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = sorted.get(i).getStartTimeMillis();
+            ends[i] = sorted.get(i).getEndTimeMillis();
+        }
+        FitDataPoint[] points = aggregate(data, starts, ends);
+        List<Bucket> buckets = new ArrayList<Bucket>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            buckets.add(new Bucket(Bucket.TYPE_SESSION, starts[i], ends[i], -1, sorted.get(i),
+                    points[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Aggregates data into intervals sorted by start time which do not overlap, returning the
+     * aggregate point of each, or null where no point overlapped it.
+     */
+    private static FitDataPoint[] aggregate(FitDataBatch data, long[] starts, long[] ends) {
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i] < ends[i - 1]) {
+                throw new IllegalArgumentException("Buckets overlap at " + starts[i]);
+            }
+        }
+        FitDataType type = data.getDataType();
+        if (type.equals(FitDataType.STEP_COUNT_DELTA)) {
+            return sumProrated(data, starts, ends);
+        } else if (type.equals(FitDataType.SPEED)) {
+            return summarize(data, starts, ends);
+        }
+        throw new IllegalArgumentException("Cannot aggregate " + type);
+    }
+
+    private static FitDataPoint[] sumProrated(FitDataBatch data, long[] starts, long[] ends) {
+        int count = starts.length;
+        double[] sums = new double[count];
+        boolean[] hasData = new boolean[count];
+        long[] pointStarts = data.getStartTimes();
+        long[] pointEnds = data.getEndTimes();
+        int[] steps = data.getInts(data.getDataType().indexOf(FitField.STEPS));
+        int hint = 0;
+        for (int row = 0, size = data.size(); row < size; row++) {
+            long start = pointStarts[row];
+            long end = pointEnds[row];
+            if (start == end) {
+                int i = find(starts, ends, start, hint);
+                if (i >= 0) {
+                    sums[i] += steps[row];
+                    hasData[i] = true;
+                    hint = i;
+                }
+                continue;
+            }
+            double perMilli = (double) steps[row] / (end - start);
+            hint = firstEndingAfter(ends, start, hint);
+            for (int i = hint; i < count && starts[i] < end; i++) {
+                long overlap = Math.min(end, ends[i]) - Math.max(start, starts[i]);
+                if (overlap > 0) {
+                    // The whole value if the point is inside the bucket, so no rounding error.
+                    sums[i] += overlap == end - start ? steps[row] : perMilli * overlap;
+                    hasData[i] = true;
+                }
+            }
+        }
+        FitDataPoint[] points = new FitDataPoint[count];
+        for (int i = 0; i < count; i++) {
+            if (hasData[i]) {
+                points[i] = new FitDataPoint(FitDataType.STEP_COUNT_DELTA, starts[i], ends[i],
+                        null, Math.round(sums[i]));
+            }
+        }
+        return points;
+    }
+
+    private static FitDataPoint[] summarize(FitDataBatch data, long[] starts, long[] ends) {
+        int count = starts.length;
+        double[] sums = new double[count];
+        int[] counts = new int[count];
+        float[] max = new float[count];
+        float[] min = new float[count];
+        long[] pointStarts = data.getStartTimes();
+        long[] pointEnds = data.getEndTimes();
+        float[] speeds = data.getFloats(data.getDataType().indexOf(FitField.SPEED));
+        int hint = 0;
+        for (int row = 0, size = data.size(); row < size; row++) {
+            long start = pointStarts[row];
+            long end = pointEnds[row];
+            int first;
+            int stop;
+            if (start == end) {
+                first = find(starts, ends, start, hint);
+                if (first < 0) {
+                    continue;
+                }
+                stop = first + 1;
+            } else {
+                first = firstEndingAfter(ends, start, hint);
+                stop = first;
+                while (stop < count && starts[stop] < end) {
+                    stop++;
+                }
+            }
+            hint = first;
+            float speed = speeds[row];
+            for (int i = first; i < stop; i++) {
+                if (start != end && Math.min(end, ends[i]) <= Math.max(start, starts[i])) {
+                    continue;
+                }
+                if (counts[i] == 0) {
+                    max[i] = speed;
+                    min[i] = speed;
+                } else {
+                    max[i] = Math.max(max[i], speed);
+                    min[i] = Math.min(min[i], speed);
+                }
+                sums[i] += speed;
+                counts[i]++;
+            }
+        }
+        FitDataPoint[] points = new FitDataPoint[count];
+        for (int i = 0; i < count; i++) {
+            if (counts[i] > 0) {
+                points[i] = new FitDataPoint(FitDataType.SPEED_SUMMARY, starts[i], ends[i],
+                        null, (float) (sums[i] / counts[i]), max[i], min[i]);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Returns the index of the first interval which ends after a time.
+     *
+     * @param hint Where to look first. Points usually come in time order, so the answer for the
+     *             last one usually holds for the next.
+     */
+    private static int firstEndingAfter(long[] ends, long timeMillis, int hint) {
+        if (hint < ends.length && ends[hint] > timeMillis
+                && (hint == 0 || ends[hint - 1] <= timeMillis)) {
+            return hint;
+        }
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Returns the index of the interval a time falls in, or -1 if none. */
+    private static int find(long[] starts, long[] ends, long timeMillis, int hint) {
+        int i = firstEndingAfter(ends, timeMillis, hint);
+        return i < starts.length && starts[i] <= timeMillis ? i : -1;
+    }
+}
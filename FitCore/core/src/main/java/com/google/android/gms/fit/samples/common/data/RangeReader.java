@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads long time ranges from a {@link HistorySource} as a series of shorter windows, a bounded
+ * number at a time, so a year of raw points is neither one huge response nor a year of reads one
+ * after another. Windows are read in parallel on an executor, and handed to a listener in time
+ * order as soon as every earlier window is in, so a caller can show the first weeks while later
+ * ones are still being read.
+ *
+ * <p>Each point is handed over once, with the window its start time falls in, or with the first
+ * window if it starts before the range. Within a window points are ordered by start time, so the
+ * windows together are in time order.</p>
+ *
+ * <p>A range reader is itself a {@link HistorySource}, whose reads block until every window is
+ * in, so it can stand in for the source it wraps.</p>
+ *
+ * <p>Thread-safe. Has no Android dependencies.</p>
+ */
+public final class RangeReader implements HistorySource {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    /** The most points a window is sized for by default. */
+    public static final int DEFAULT_MAX_POINTS_PER_WINDOW = 10000;
+
+    private static final Comparator<FitDataPoint> BY_START = new Comparator<FitDataPoint>() {
+        @Override
+        public int compare(FitDataPoint a, FitDataPoint b) {
+            long x = a.getStartTimeMillis();
+            long y = b.getStartTimeMillis();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+    };
+
+    /** Told of the windows of a {@link #read(FitDataType, long, long, Listener)}. */
+    public interface Listener {
+        /**
+         * Called with each window, in time order, one call at a time.
+         *
+         * @param startTimeMillis Start of the window.
+         * @param endTimeMillis End of the window.
+         * @param points The points of the window, ordered by start time.
+         */
+        void onWindow(long startTimeMillis, long endTimeMillis, List<FitDataPoint> points);
+
+        /**
+         * Called once, after the last window, or after a window failed and the reads in flight
+         * finished. Windows already passed to {@link #onWindow} are still good, so a caller can
+         * read again from the end of the last one.
+         *
+         * @param failure Why a window could not be read, or null if every window was.
+         */
+        void onComplete(Throwable failure);
+    }
+
+    private final HistorySource mSource;
+    private final Executor mExecutor;
+    private final long mWindowMillis;
+    private final int mMaxInFlight;
+
+    /**
+     * Creates a range reader.
+     *
+     * @param source Where to read the windows from.
+     * @param executor Runs the reads of the windows. Needs as many threads as reads in flight
+     *                 for them all to run at once.
+     * @param windowMillis The length of each window, for instance from
+     *                     {@link #getWindowMillis}.
+     * @param maxInFlight The most windows being read at any time.
+     */
+    public RangeReader(HistorySource source, Executor executor, long windowMillis,
+            int maxInFlight) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive: " + windowMillis);
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        mSource = source;
+        mExecutor = executor;
+        mWindowMillis = windowMillis;
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Returns the length of window which holds about a number of points of a data type, as a
+     * whole number of buckets, so that no bucket is split between windows.
+     *
+     * @param pointIntervalMillis How far apart the data type's points usually are, for instance a
+     *                            minute for step count deltas.
+     * @param maxPointsPerWindow The most points a window should hold.
+     * @param bucketMillis The length of the buckets the points are summed into, or 1 if none.
+     */
+    public static long getWindowMillis(long pointIntervalMillis, int maxPointsPerWindow,
+            long bucketMillis) {
+        if (pointIntervalMillis <= 0 || maxPointsPerWindow <= 0 || bucketMillis <= 0) {
+            throw new IllegalArgumentException("Arguments must be positive: "
+                    + pointIntervalMillis + ", " + maxPointsPerWindow + ", " + bucketMillis);
+        }
+        long windowMillis = pointIntervalMillis * maxPointsPerWindow;
+        return Math.max(bucketMillis, windowMillis / bucketMillis * bucketMillis);
+    }
+
+    /**
+     * Splits a time range into windows, every one the given length but the last.
+     *
+     * @return The boundaries, from the start of the range to its end: the windows run from each
+     *         to the next.
+     */
+    public static long[] split(long startTimeMillis, long endTimeMillis, long windowMillis) {
+        if (endTimeMillis < startTimeMillis) {
+            throw new IllegalArgumentException("End " + endTimeMillis + " is before start "
+                    + startTimeMillis);
+        }
+        long count = (endTimeMillis - startTimeMillis + windowMillis - 1) / windowMillis;
+        if (count >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many windows: " + count);
+        }
+        long[] bounds = new long[(int) count + 1];
+        for (int i = 0; i < count; i++) {
+            bounds[i] = startTimeMillis + i * windowMillis;
+        }
+        bounds[(int) count] = endTimeMillis;
+        return bounds;
+    }
+
+    /**
+     * Starts reading the points of a data type which overlap a time range, and returns without
+     * waiting for them.
+     *
+     * @param listener Told of each window, then of the end of the read, on the executor's
+     *                 threads, or on this one for an empty range.
+     */
+    public void read(FitDataType dataType, long startTimeMillis, long endTimeMillis,
+            Listener listener) {
+        new Job(dataType, split(startTimeMillis, endTimeMillis, mWindowMillis), listener).pump();
+    }
+
+    /**
+     * Reads the points of a data type which overlap a time range, window by window, and returns
+     * them in time order. Blocks until every window is in, so it must not be called on the main
+     * thread, nor on one of the executor's threads if it might run out of them.
+     */
+    @Override
+    public List<FitDataPoint> read(FitDataType dataType, long startTimeMillis,
+            long endTimeMillis) throws IOException {
+        final List<FitDataPoint> points = new ArrayList<FitDataPoint>();
+        final Throwable[] failure = new Throwable[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        read(dataType, startTimeMillis, endTimeMillis, new Listener() {
+            @Override
+            public void onWindow(long start, long end, List<FitDataPoint> window) {
+                points.addAll(window);
+            }
+
+            @Override
+            public void onComplete(Throwable t) {
+                failure[0] = t;
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + dataType);
+        }
+        // The latch makes the listener's writes visible here.
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        } else if (failure[0] != null) {
+            throw new IOException("Reading " + dataType + " failed", failure[0]);
+        }
+        return points;
+    }
+
+    /** The state of one call to {@link #read(FitDataType, long, long, Listener)}. */
+    private final class Job {
+        private final FitDataType mDataType;
+        private final long[] mBounds;
+        private final Listener mListener;
+
+        // Guarded by this. Windows read and not yet handed over, null where not read.
+        private final List<List<FitDataPoint>> mResults;
+        private int mNextToStart;
+        private int mNextToDeliver;
+        private int mInFlight;
+        private Throwable mFailure;
+        private boolean mComplete;
+        // Whether a thread is handing windows to the listener.
+        private boolean mDelivering;
+
+        Job(FitDataType dataType, long[] bounds, Listener listener) {
+            mDataType = dataType;
+            mBounds = bounds;
+            mListener = listener;
+            mResults = new ArrayList<List<FitDataPoint>>(
+                    Collections.<List<FitDataPoint>>nCopies(bounds.length - 1, null));
+        }
+
+        private int getWindowCount() {
+            return mBounds.length - 1;
+        }
+
+        /** Starts reads until the limit in flight is reached, then hands over what is in. */
+        void pump() {
+            List<Integer> toStart = new ArrayList<Integer>();
+            synchronized (this) {
+                while (mInFlight < mMaxInFlight && mNextToStart < getWindowCount()
+                        && mFailure == null) {
+                    toStart.add(mNextToStart++);
+                    mInFlight++;
+                }
+            }
+            for (int i = 0; i < toStart.size(); i++) {
+                start(toStart.get(i));
+            }
+            deliver();
+        }
+
+        private void start(final int window) {
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<FitDataPoint> points;
+                        try {
+                            points = readWindow(window);
+                        } catch (IOException e) {
+                            finish(window, null, e);
+                            return;
+                        } catch (RuntimeException e) {
+                            finish(window, null, e);
+                            return;
+                        }
+                        finish(window, points, null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                finish(window, null, e);
+            }
+        }
+
+        /** Reads a window, keeping only the points which start in it. */
+        private List<FitDataPoint> readWindow(int window) throws IOException {
+            long start = mBounds[window];
+            List<FitDataPoint> read = mSource.read(mDataType, start, mBounds[window + 1]);
+            List<FitDataPoint> points = new ArrayList<FitDataPoint>(read.size());
+            for (int i = 0; i < read.size(); i++) {
+                FitDataPoint point = read.get(i);
+                // Points which started earlier overlap the window before too, and go with it.
+                if (window == 0 || point.getStartTimeMillis() >= start) {
+                    points.add(point);
+                }
+            }
+            Collections.sort(points, BY_START);
+            return points;
+        }
+
+        private void finish(int window, List<FitDataPoint> points, Throwable failure) {
+            synchronized (this) {
+                mInFlight--;
+                if (failure == null) {
+                    mResults.set(window, points);
+                } else if (mFailure == null) {
+                    mFailure = failure;
+                }
+            }
+            pump();
+        }
+
+        /**
+         * Hands over the windows which are in and follow the last one handed over, then the end
+         * of the read if it came. Only one thread does so at a time: the others leave what they
+         * brought to it, rather than wait while the listener runs.
+         */
+        private void deliver() {
+            synchronized (this) {
+                if (mDelivering) {
+                    return;
+                }
+                mDelivering = true;
+            }
+            while (true) {
+                int window;
+                List<FitDataPoint> points;
+                Throwable failure;
+                synchronized (this) {
+                    if (mNextToDeliver < getWindowCount() && mResults.get(mNextToDeliver) != null) {
+                        window = mNextToDeliver++;
+                        points = mResults.set(window, null);
+                        failure = null;
+                    } else if (!mComplete && mInFlight == 0
+                            && (mNextToDeliver == getWindowCount() || mFailure != null)) {
+                        mComplete = true;
+                        mDelivering = false;
+                        window = -1;
+                        points = null;
+                        failure = mFailure;
+                    } else {
+                        mDelivering = false;
+                        return;
+                    }
+                }
+                if (points == null) {
+                    mListener.onComplete(failure);
+                    return;
+                }
+                mListener.onWindow(mBounds[window], mBounds[window + 1],
+                        Collections.unmodifiableList(points));
+            }
+        }
+    }
+}
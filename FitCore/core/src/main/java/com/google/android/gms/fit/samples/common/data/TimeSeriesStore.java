@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A durable copy of History API data on the device: data points grouped by data type and data
+ * source, and for each data type a watermark, the time up to which it has been synced. A
+ * {@link TimeSeriesSync} keeps it up to date, asking only for what is newer than the watermark.
+ *
+ * <p>Everything is held in memory and also appended to a log file, which is read back when the
+ * store is opened. Each change is written as one batch and flushed to the disk before the method
+ * returns, and a batch which was cut short by a crash is ignored when the file is read back, so
+ * the store always reopens in the state after some complete change. When most of the file is
+ * made of points since deleted, it is rewritten with just the live ones.</p>
+ *
+ * <p>Thread-safe. Has no Android dependencies.</p>
+ */
+public class TimeSeriesStore implements Closeable {
+
+    /** Returned by {@link #getWatermark} for a data type which was never synced. */
+    public static final long NO_WATERMARK = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x46495453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final int ENTRY_POINT = 1;
+    private static final int ENTRY_WATERMARK = 2;
+    private static final int ENTRY_DELETE = 3;
+    private static final int ENTRY_COMMIT = 4;
+    // Far larger than any real entry, so a length beyond it means the file is damaged.
+    private static final int MAX_ENTRY_SIZE = 64 * 1024;
+    // Never rewrite a file with fewer entries than this, however much of it is dead.
+    private static final int MIN_COMPACT_ENTRIES = 1024;
+
+    private static final Comparator<FitDataPoint> BY_TIME = new Comparator<FitDataPoint>() {
+        @Override
+        public int compare(FitDataPoint a, FitDataPoint b) {
+            if (a.getStartTimeMillis() != b.getStartTimeMillis()) {
+                return a.getStartTimeMillis() < b.getStartTimeMillis() ? -1 : 1;
+            }
+            if (a.getEndTimeMillis() != b.getEndTimeMillis()) {
+                return a.getEndTimeMillis() < b.getEndTimeMillis() ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    /** The points of one data type from one data source. */
+    private static final class Group {
+        // Points by start time.
+        final TreeMap<Long, List<FitDataPoint>> mPoints = new TreeMap<Long, List<FitDataPoint>>();
+        // Longest interval of any point, so a query knows how far back to look.
+        long mMaxDurationMillis;
+    }
+
+    private final File mFile;
+    // Groups by data type name, then by source. The null source is allowed.
+    private final HashMap<String, HashMap<String, Group>> mGroups =
+            new HashMap<String, HashMap<String, Group>>();
+    // Watermarks by data type name.
+    private final HashMap<String, Long> mWatermarks = new HashMap<String, Long>();
+    private final HashMap<String, FitDataType> mTypes = new HashMap<String, FitDataType>();
+    private final ByteArrayOutputStream mEntryBytes = new ByteArrayOutputStream();
+    private final DataOutputStream mEntryOut = new DataOutputStream(mEntryBytes);
+    private final CRC32 mCrc = new CRC32();
+
+    private FileOutputStream mFileOut;
+    private DataOutputStream mOut;
+    private int mPointCount;
+    // Entries in the file, live or not.
+    private int mEntryCount;
+
+    /**
+     * Opens a store, creating its file if needed. A write which fails closes the store, which
+     * then has to be opened again.
+     *
+     * @param file The log file, for instance under Context.getFilesDir().
+     * @throws IOException If the file cannot be read or written, or is not a store.
+     */
+    public TimeSeriesStore(File file) throws IOException {
+        mFile = file;
+        long length = file.exists() ? load() : 0;
+        if (length == 0) {
+            writeFile(file);
+        } else {
+            openForAppend();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Adds points, skipping any already stored.
+     *
+     * @return The number of points added.
+     */
+    public synchronized int add(Collection<FitDataPoint> points) throws IOException {
+        ensureOpen();
+        try {
+            int added = 0;
+            for (FitDataPoint point : points) {
+                if (addPoint(point)) {
+                    writePoint(point);
+                    added++;
+                }
+            }
+            if (added > 0) {
+                commit();
+            }
+            return added;
+        } catch (IOException e) {
+            abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the points of a data type which overlap a time range with the given ones, as one
+     * change: after a crash, the store holds either the old points or the new ones.
+     *
+     * @return The number of points added.
+     */
+    public synchronized int replace(String dataTypeName, long startTimeMillis, long endTimeMillis,
+            Collection<FitDataPoint> points) throws IOException {
+        ensureOpen();
+        try {
+            deletePoints(dataTypeName, startTimeMillis, endTimeMillis);
+            writeDelete(dataTypeName, startTimeMillis, endTimeMillis);
+            int added = 0;
+            for (FitDataPoint point : points) {
+                if (addPoint(point)) {
+                    writePoint(point);
+                    added++;
+                }
+            }
+            commit();
+            return added;
+        } catch (IOException e) {
+            abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the points of a data type, from every source, which overlap a time range.
+     *
+     * @return The number of points removed.
+     */
+    public synchronized int delete(String dataTypeName, long startTimeMillis, long endTimeMillis)
+            throws IOException {
+        ensureOpen();
+        try {
+            int deleted = deletePoints(dataTypeName, startTimeMillis, endTimeMillis);
+            if (deleted > 0) {
+                writeDelete(dataTypeName, startTimeMillis, endTimeMillis);
+                commit();
+            }
+            return deleted;
+        } catch (IOException e) {
+            abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the points of a data type, from every source, whose interval overlaps a time
+     * range, ordered by start time.
+     */
+    public synchronized List<FitDataPoint> query(String dataTypeName, long startTimeMillis,
+            long endTimeMillis) {
+        List<FitDataPoint> result = new ArrayList<FitDataPoint>();
+        HashMap<String, Group> groups = mGroups.get(dataTypeName);
+        if (groups == null) {
+            return result;
+        }
+        for (Group group : groups.values()) {
+            for (List<FitDataPoint> points : overlapping(group, startTimeMillis, endTimeMillis)) {
+                for (int i = 0; i < points.size(); i++) {
+                    if (overlaps(points.get(i), startTimeMillis, endTimeMillis)) {
+                        result.add(points.get(i));
+                    }
+                }
+            }
+        }
+        Collections.sort(result, BY_TIME);
+        return result;
+    }
+
+    /**
+     * Returns the time up to which a data type has been synced, or {@link #NO_WATERMARK}.
+     */
+    public synchronized long getWatermark(String dataTypeName) {
+        Long watermark = mWatermarks.get(dataTypeName);
+        return watermark == null ? NO_WATERMARK : watermark;
+    }
+
+    /**
+     * Records the time up to which a data type has been synced.
+     */
+    public synchronized void setWatermark(String dataTypeName, long timeMillis)
+            throws IOException {
+        ensureOpen();
+        try {
+            mWatermarks.put(dataTypeName, timeMillis);
+            writeWatermark(dataTypeName, timeMillis);
+            commit();
+        } catch (IOException e) {
+            abandon();
+            throw e;
+        }
+    }
+
+    /** Returns the number of points stored. */
+    public synchronized int size() {
+        return mPointCount;
+    }
+
+    /** Returns whether the store was closed, by {@link #close} or by a failed write. */
+    public synchronized boolean isClosed() {
+        return mOut == null;
+    }
+
+    /** Flushes and closes the file. The store cannot be changed afterwards. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } finally {
+                mOut = null;
+            }
+        }
+    }
+
+    private boolean addPoint(FitDataPoint point) {
+        Group group = getGroup(point.getDataType().getName(), point.getSource());
+        List<FitDataPoint> points = group.mPoints.get(point.getStartTimeMillis());
+        if (points == null) {
+            points = new ArrayList<FitDataPoint>(1);
+            group.mPoints.put(point.getStartTimeMillis(), points);
+        } else if (points.contains(point)) {
+            return false;
+        }
+        points.add(point);
+        group.mMaxDurationMillis = Math.max(group.mMaxDurationMillis,
+                point.getEndTimeMillis() - point.getStartTimeMillis());
+        mPointCount++;
+        return true;
+    }
+
+    private int deletePoints(String dataTypeName, long startTimeMillis, long endTimeMillis) {
+        HashMap<String, Group> groups = mGroups.get(dataTypeName);
+        if (groups == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (Group group : groups.values()) {
+            Iterator<List<FitDataPoint>> it =
+                    overlapping(group, startTimeMillis, endTimeMillis).iterator();
+            while (it.hasNext()) {
+                List<FitDataPoint> points = it.next();
+                for (int i = points.size() - 1; i >= 0; i--) {
+                    if (overlaps(points.get(i), startTimeMillis, endTimeMillis)) {
+                        points.remove(i);
+                        deleted++;
+                    }
+                }
+                if (points.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        mPointCount -= deleted;
+        return deleted;
+    }
+
+    private Group getGroup(String dataTypeName, String source) {
+        HashMap<String, Group> groups = mGroups.get(dataTypeName);
+        if (groups == null) {
+            groups = new HashMap<String, Group>();
+            mGroups.put(dataTypeName, groups);
+        }
+        Group group = groups.get(source);
+        if (group == null) {
+            group = new Group();
+            groups.put(source, group);
+        }
+        return group;
+    }
+
+    /** Returns the lists of points of a group which can overlap a time range. */
+    private static Collection<List<FitDataPoint>> overlapping(Group group, long startTimeMillis,
+            long endTimeMillis) {
+        // Points starting earlier than this all end before the range.
+        long from = startTimeMillis - group.mMaxDurationMillis;
+        if (from > startTimeMillis) {
+            from = Long.MIN_VALUE;
+        }
+        if (from >= endTimeMillis) {
+            return Collections.emptyList();
+        }
+        return group.mPoints.subMap(from, true, endTimeMillis, false).values();
+    }
+
+    private static boolean overlaps(FitDataPoint point, long startTimeMillis,
+            long endTimeMillis) {
+        // An instantaneous point overlaps the range it falls in.
+        return point.getStartTimeMillis() < endTimeMillis
+                && Math.max(point.getEndTimeMillis(), point.getStartTimeMillis() + 1)
+                        > startTimeMillis;
+    }
+
+    /**
+     * Reads the file into memory, dropping a damaged or unfinished tail.
+     *
+     * @return The length of the good part of the file, 0 if it is empty.
+     */
+    private long load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(mFile)));
+        long good;
+        try {
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(mFile + " is not a time series store");
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported store version " + version);
+            }
+            good = HEADER_SIZE;
+            long offset = HEADER_SIZE;
+            List<byte[]> batch = new ArrayList<byte[]>();
+            int batchEntries = 0;
+            while (true) {
+                byte[] entry = readEntry(in);
+                if (entry == null) {
+                    break;
+                }
+                offset += 4 + entry.length + 4;
+                batchEntries++;
+                if (entry[0] == ENTRY_COMMIT) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        apply(batch.get(i));
+                    }
+                    batch.clear();
+                    mEntryCount += batchEntries;
+                    batchEntries = 0;
+                    good = offset;
+                } else {
+                    batch.add(entry);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        if (good < mFile.length()) {
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(good);
+            } finally {
+                file.close();
+            }
+        }
+        return good;
+    }
+
+    /** Reads one entry and checks it, or returns null at the end of the good part of a file. */
+    private byte[] readEntry(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_ENTRY_SIZE) {
+                return null;
+            }
+            byte[] entry = new byte[length];
+            in.readFully(entry);
+            int crc = in.readInt();
+            mCrc.reset();
+            mCrc.update(entry, 0, length);
+            return (int) mCrc.getValue() == crc ? entry : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void apply(byte[] entry) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(entry, 1, entry.length - 1));
+        switch (entry[0]) {
+            case ENTRY_POINT:
+                addPoint(FitDataPoint.readFrom(in, mTypes));
+                break;
+            case ENTRY_WATERMARK:
+                mWatermarks.put(in.readUTF(), in.readLong());
+                break;
+            case ENTRY_DELETE:
+                deletePoints(in.readUTF(), in.readLong(), in.readLong());
+                break;
+            default:
+                throw new IOException("Unknown entry type " + entry[0]);
+        }
+    }
+
+    private void writePoint(FitDataPoint point) throws IOException {
+        mEntryOut.writeByte(ENTRY_POINT);
+        point.writeTo(mEntryOut);
+        endEntry(mOut);
+    }
+
+    private void writeWatermark(String dataTypeName, long timeMillis) throws IOException {
+        mEntryOut.writeByte(ENTRY_WATERMARK);
+        mEntryOut.writeUTF(dataTypeName);
+        mEntryOut.writeLong(timeMillis);
+        endEntry(mOut);
+    }
+
+    private void writeDelete(String dataTypeName, long startTimeMillis, long endTimeMillis)
+            throws IOException {
+        mEntryOut.writeByte(ENTRY_DELETE);
+        mEntryOut.writeUTF(dataTypeName);
+        mEntryOut.writeLong(startTimeMillis);
+        mEntryOut.writeLong(endTimeMillis);
+        endEntry(mOut);
+    }
+
+    /** Ends the batch and waits until it is on the disk. */
+    private void commit() throws IOException {
+        mEntryOut.writeByte(ENTRY_COMMIT);
+        endEntry(mOut);
+        mOut.flush();
+        mFileOut.getFD().sync();
+        compactIfNeeded();
+    }
+
+    /** Writes the entry built in mEntryBytes, framed by its length and checksum. */
+    private void endEntry(DataOutputStream out) throws IOException {
+        mEntryOut.flush();
+        byte[] entry = mEntryBytes.toByteArray();
+        mEntryBytes.reset();
+        mCrc.reset();
+        mCrc.update(entry, 0, entry.length);
+        out.writeInt(entry.length);
+        out.write(entry);
+        out.writeInt((int) mCrc.getValue());
+        mEntryCount++;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (mEntryCount > MIN_COMPACT_ENTRIES
+                && mEntryCount > 2 * (mPointCount + mWatermarks.size())) {
+            File tmp = new File(mFile.getPath() + ".tmp");
+            close();
+            writeFile(tmp);
+            close();
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tmp + " to " + mFile);
+            }
+            openForAppend();
+        }
+    }
+
+    /** Writes everything stored to a new file, which is left open for appending. */
+    private void writeFile(File file) throws IOException {
+        mFileOut = new FileOutputStream(file);
+        mOut = new DataOutputStream(new BufferedOutputStream(mFileOut));
+        mOut.writeInt(MAGIC);
+        mOut.writeInt(VERSION);
+        mEntryCount = 0;
+        for (HashMap<String, Group> groups : mGroups.values()) {
+            for (Group group : groups.values()) {
+                for (List<FitDataPoint> points : group.mPoints.values()) {
+                    for (int i = 0; i < points.size(); i++) {
+                        writePoint(points.get(i));
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Long> watermark : mWatermarks.entrySet()) {
+            writeWatermark(watermark.getKey(), watermark.getValue());
+        }
+        mEntryOut.writeByte(ENTRY_COMMIT);
+        endEntry(mOut);
+        mOut.flush();
+        mFileOut.getFD().sync();
+    }
+
+    private void openForAppend() throws IOException {
+        mFileOut = new FileOutputStream(mFile, true);
+        mOut = new DataOutputStream(new BufferedOutputStream(mFileOut));
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mOut == null) {
+            throw new IOException("Store is closed");
+        }
+    }
+
+    /**
+     * Closes the store after a failed write. Whatever the batch wrote is ignored when the file is
+     * read back, but nothing could be appended after it, so the store has to be reopened.
+     */
+    private void abandon() {
+        mEntryBytes.reset();
+        try {
+            close();
+        } catch (IOException e) {
+            // Already failing.
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Brings a {@link TimeSeriesStore} up to date from a {@link HistorySource}. Rather than reading a
+ * fixed window every time, {@link #sync} reads from the watermark of the data type up to now, so
+ * data already synced is not fetched again. The first sync of a data type reads an initial window
+ * instead.
+ *
+ * <p>A sync only sees points newer than the watermark. After changing older data, such as with
+ * an update or a delete, call {@link #resync} with the time range changed.</p>
+ *
+ * <p>Blocks on the source, so it must not be used on the main thread.</p>
+ */
+public class TimeSeriesSync {
+
+    private final TimeSeriesStore mStore;
+    private final HistorySource mSource;
+    private final long mInitialWindowMillis;
+
+    /**
+     * Creates a sync.
+     *
+     * @param store The store to bring up to date.
+     * @param source Where to read the data from.
+     * @param initialWindowMillis How far back the first sync of a data type reads.
+     */
+    public TimeSeriesSync(TimeSeriesStore store, HistorySource source, long initialWindowMillis) {
+        if (initialWindowMillis < 0) {
+            throw new IllegalArgumentException("initialWindowMillis must not be negative: "
+                    + initialWindowMillis);
+        }
+        mStore = store;
+        mSource = source;
+        mInitialWindowMillis = initialWindowMillis;
+    }
+
+    /**
+     * Reads what is new since the last sync of a data type and stores it, then marks the data
+     * type synced up to now.
+     *
+     * @param dataType The type to sync.
+     * @param nowMillis The current time, the end of the read.
+     * @return The number of points added.
+     * @throws IOException If the read or the store failed. The watermark is then unchanged,
+     *                     so the next sync reads the same range again.
+     */
+    public int sync(FitDataType dataType, long nowMillis) throws IOException {
+        String name = dataType.getName();
+        long start = getSyncStart(name, nowMillis);
+        if (start >= nowMillis) {
+            return 0;
+        }
+        List<FitDataPoint> points = mSource.read(dataType, start, nowMillis);
+        int added = mStore.add(points);
+        mStore.setWatermark(name, nowMillis);
+        return added;
+    }
+
+    /**
+     * Reads a time range again and replaces what is stored for it, for instance after its data
+     * was updated or deleted. The watermark is left alone.
+     *
+     * @return The number of points stored for the range.
+     * @throws IOException If the read or the store failed. The store is then unchanged.
+     */
+    public int resync(FitDataType dataType, long startTimeMillis, long endTimeMillis)
+            throws IOException {
+        List<FitDataPoint> points = mSource.read(dataType, startTimeMillis, endTimeMillis);
+        return mStore.replace(dataType.getName(), startTimeMillis, endTimeMillis, points);
+    }
+
+    /**
+     * Returns where the next sync of a data type starts: its watermark, or the start of the
+     * initial window if it was never synced.
+     */
+    public long getSyncStart(String dataTypeName, long nowMillis) {
+        long watermark = mStore.getWatermark(dataTypeName);
+        return watermark == TimeSeriesStore.NO_WATERMARK
+                ? nowMillis - mInitialWindowMillis : watermark;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LogNode} which hands log data off to a background thread instead of passing it down the
+ * chain on the calling thread. Put it at the head of the chain so that callers such as sensor
+ * listeners only pay for a copy into a bounded ring buffer, while the rest of the chain (logcat,
+ * filters, on-screen output) runs on a dedicated drain thread.
+ *
+ * <p>The ring buffer is lock-free for any number of producers. When it is full, the configured
+ * {@link OverflowPolicy} decides whether the caller waits, or which record is thrown away. Dropped
+ * records are counted and can be read back with {@link #getDroppedCount()}.</p>
+ */
+public class AsyncLogNode implements LogRecordNode {
+
+    /**
+     * What to do with a new record when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for the drain thread to make room. No record is ever lost. */
+        BLOCK,
+        /** Discard the oldest queued record to make room for the new one. */
+        DROP_OLDEST,
+        /** Discard the new record and leave the queue untouched. */
+        DROP_NEWEST
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // How long a blocked producer sleeps before checking for free space again.
+    private static final long BLOCK_PARK_NANOS = 50 * 1000;
+
+    // Bounded multi-producer queue after Dmitry Vyukov's design: each slot carries a sequence
+    // number telling producers and consumers whether it is free or holds a published record.
+    // Slots are allocated once and reused, and messages which are not Strings are copied into
+    // the slot's own builder, so queueing a record allocates nothing in steady state.
+    private final LogRecord[] mSlots;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final OverflowPolicy mPolicy;
+    private final AtomicLong mDroppedOldest = new AtomicLong();
+    private final AtomicLong mDroppedNewest = new AtomicLong();
+
+    private final Thread mDrainThread;
+    private volatile boolean mDrainerParked;
+    private volatile boolean mClosed;
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private volatile LogNode mNext;
+
+    /**
+     * Creates a node with {@link #DEFAULT_CAPACITY} slots which blocks callers when full.
+     *
+     * @param next The next LogNode in the pipeline.
+     */
+    public AsyncLogNode(LogNode next) {
+        this(next, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a node and starts its drain thread.
+     *
+     * @param next The next LogNode in the pipeline.
+     * @param capacity Number of records that can be queued. Rounded up to a power of two.
+     * @param policy What to do when the queue is full.
+     */
+    public AsyncLogNode(LogNode next, int capacity, OverflowPolicy policy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new LogRecord[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new LogRecord();
+            mSequences.set(i, i);
+        }
+        mMask = size - 1;
+        mPolicy = policy;
+        mNext = next;
+
+        mDrainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "AsyncLogNode");
+        mDrainThread.setDaemon(true);
+        mDrainThread.start();
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Queues the log data for the drain thread and returns without waiting for the rest of the
+     * chain, unless the queue is full and the policy is {@link OverflowPolicy#BLOCK}.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        LogRecord record = LogRecord.obtain(priority, tag).setMessage(msg).setThrowable(tr);
+        println(record);
+        record.recycle();
+    }
+
+    /**
+     * Copies the record into the queue for the drain thread. String messages are shared rather
+     * than copied.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        // Records logged by the chain itself, or after close(), are passed along directly.
+        // Queueing them from the drain thread could deadlock a full buffer in BLOCK mode.
+        if (mClosed || Thread.currentThread() == mDrainThread) {
+            LogRecord.dispatch(mNext, record);
+            return;
+        }
+
+        while (!offer(record)) {
+            switch (mPolicy) {
+                case DROP_NEWEST:
+                    mDroppedNewest.incrementAndGet();
+                    return;
+                case DROP_OLDEST:
+                    if (poll(null)) {
+                        mDroppedOldest.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                default:
+                    LockSupport.unpark(mDrainThread);
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    if (mClosed) {
+                        LogRecord.dispatch(mNext, record);
+                        return;
+                    }
+                    break;
+            }
+        }
+
+        if (mDrainerParked) {
+            LockSupport.unpark(mDrainThread);
+        }
+    }
+
+    /**
+     * Returns the total number of records thrown away because the queue was full.
+     */
+    public long getDroppedCount() {
+        return mDroppedOldest.get() + mDroppedNewest.get();
+    }
+
+    /**
+     * Returns the number of queued records discarded under {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    public long getDroppedOldestCount() {
+        return mDroppedOldest.get();
+    }
+
+    /**
+     * Returns the number of new records discarded under {@link OverflowPolicy#DROP_NEWEST}.
+     */
+    public long getDroppedNewestCount() {
+        return mDroppedNewest.get();
+    }
+
+    /**
+     * Returns the number of records waiting for the drain thread.
+     */
+    public int getPendingCount() {
+        return (int) Math.max(0, mTail.get() - mHead.get());
+    }
+
+    /**
+     * Returns the capacity of the ring buffer.
+     */
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * Stops accepting records into the queue and waits for the drain thread to pass along what
+     * is already queued. Records logged afterwards go down the chain on the calling thread.
+     *
+     * @param timeoutMillis Maximum time to wait for the queue to drain, 0 to wait forever.
+     * @return true if the drain thread finished within the timeout.
+     */
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        shutdown();
+        mDrainThread.join(timeoutMillis);
+        return !mDrainThread.isAlive();
+    }
+
+    /**
+     * Like {@link #close(long)}, but returns straight away. The drain thread still passes along
+     * what is already queued before it exits.
+     */
+    void shutdown() {
+        mClosed = true;
+        LockSupport.unpark(mDrainThread);
+    }
+
+    private void drain() {
+        LogRecord scratch = new LogRecord();
+        while (true) {
+            if (poll(scratch)) {
+                try {
+                    LogRecord.dispatch(mNext, scratch);
+                } catch (Throwable t) {
+                    // A misbehaving node further down must not stop logging altogether. That
+                    // includes Errors, such as running out of memory while formatting: if this
+                    // thread died, producers in BLOCK mode would wait on a full ring forever.
+                }
+                scratch.clear();
+                continue;
+            }
+            if (mClosed) {
+                return;
+            }
+            // Publish that we are about to sleep, then look again: a producer either sees the
+            // flag and wakes us, or we see its record here.
+            mDrainerParked = true;
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+            mDrainerParked = false;
+        }
+    }
+
+    private boolean offer(LogRecord record) {
+        long pos = mTail.get();
+        while (true) {
+            int index = (int) pos & mMask;
+            long diff = mSequences.get(index) - pos;
+            if (diff == 0) {
+                if (mTail.compareAndSet(pos, pos + 1)) {
+                    mSlots[index].copyFrom(record);
+                    mSequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = mTail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = mTail.get();
+            }
+        }
+    }
+
+    // Removes the oldest record, copying it into out unless out is null.
+    private boolean poll(LogRecord out) {
+        long pos = mHead.get();
+        while (true) {
+            int index = (int) pos & mMask;
+            long diff = mSequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (mHead.compareAndSet(pos, pos + 1)) {
+                    LogRecord slot = mSlots[index];
+                    if (out != null) {
+                        out.copyFrom(slot);
+                    }
+                    slot.clear();
+                    mSequences.set(index, pos + mMask + 1);
+                    return true;
+                }
+                pos = mHead.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = mHead.get();
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        long pos = mHead.get();
+        return mSequences.get((int) pos & mMask) != pos + 1;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * {@link LogNode} which keeps recent log records in memory in the compact {@link LogCodec}
+ * encoding, rather than as formatted lines of text. Records go into fixed-size blocks; once the
+ * configured number of blocks is full, the oldest block is dropped and reused. Text is only
+ * produced when the records are read back with {@link #read(LogCodec.Visitor)}.
+ */
+public class CompactLogBuffer implements LogRecordNode {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_BLOCKS = 16;
+
+    private final int mBlockSize;
+    private final int mMaxBlocks;
+
+    // Guarded by this. Full blocks, oldest first, each flipped for reading.
+    private final ArrayDeque<ByteBuffer> mFullBlocks = new ArrayDeque<ByteBuffer>();
+    private ByteBuffer mCurrentBlock;
+    private final LogCodec.Encoder mEncoder = new LogCodec.Encoder();
+    private long mRecordCount;
+    private long mDroppedBlockCount;
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private LogNode mNext;
+
+    /**
+     * Creates a buffer of {@link #DEFAULT_MAX_BLOCKS} blocks of {@link #DEFAULT_BLOCK_SIZE} bytes.
+     */
+    public CompactLogBuffer() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+    }
+
+    /**
+     * Creates a buffer holding at most blockSize * maxBlocks bytes of encoded records.
+     *
+     * @param blockSize Size of each block in bytes. Records larger than a block are shortened.
+     * @param maxBlocks Number of blocks kept, including the one being written.
+     */
+    public CompactLogBuffer(int blockSize, int maxBlocks) {
+        if (blockSize < 256) {
+            throw new IllegalArgumentException("blockSize too small: " + blockSize);
+        }
+        if (maxBlocks < 1) {
+            throw new IllegalArgumentException("maxBlocks must be positive: " + maxBlocks);
+        }
+        mBlockSize = blockSize;
+        mMaxBlocks = maxBlocks;
+        mCurrentBlock = ByteBuffer.allocate(blockSize);
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Encodes and stores the log data.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        write(System.currentTimeMillis(), priority, tag, msg, null, tr);
+
+        if (mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Encodes and stores the record, straight from its CharSequence, with its key-value pairs
+     * as they are.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        write(record.getTimeMillis(), record.getPriority(), record.getTag(), record.getMessage(),
+                record.getFields(), record.getThrowable());
+
+        LogRecord.dispatch(mNext, record);
+    }
+
+    /**
+     * Decodes every record kept, oldest first. A {@link LogCodec.FieldVisitor} receives key-value
+     * pairs as they were logged. Logging from other threads waits while this runs.
+     */
+    public synchronized void read(LogCodec.Visitor visitor) {
+        LogCodec.Decoder decoder = new LogCodec.Decoder();
+        for (ByteBuffer block : mFullBlocks) {
+            decoder.reset();
+            decoder.decode(block.duplicate(), visitor);
+        }
+        ByteBuffer current = mCurrentBlock.duplicate();
+        current.flip();
+        decoder.reset();
+        decoder.decode(current, visitor);
+    }
+
+    /**
+     * Returns the number of bytes of encoded records currently kept.
+     */
+    public synchronized int getSizeBytes() {
+        int size = mCurrentBlock.position();
+        for (ByteBuffer block : mFullBlocks) {
+            size += block.limit();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of records written since the buffer was created, including dropped ones.
+     */
+    public synchronized long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Returns the number of blocks dropped to stay within the size limit.
+     */
+    public synchronized long getDroppedBlockCount() {
+        return mDroppedBlockCount;
+    }
+
+    /**
+     * Removes every record.
+     */
+    public synchronized void clear() {
+        mFullBlocks.clear();
+        mCurrentBlock.clear();
+        mEncoder.reset();
+    }
+
+    private synchronized void write(long timeMillis, int priority, String tag, CharSequence msg,
+            LogFields fields, Throwable tr) {
+        String trace = tr == null ? null : StackTraceCache.getStackTraceString(tr);
+        int maxSize = LogCodec.Encoder.maxEncodedSize(tag, msg, trace, fields) + 1;
+
+        if (maxSize > mCurrentBlock.remaining() && mCurrentBlock.position() > 0) {
+            startBlock();
+        }
+        if (maxSize > mBlockSize) {
+            // Too big for any block: drop the stack trace and key-value pairs, then shorten
+            // the message.
+            trace = null;
+            fields = null;
+            int fixedSize = LogCodec.Encoder.maxEncodedSize(tag, null, null) + 1;
+            if (fixedSize > mBlockSize) {
+                return;
+            }
+            if (msg != null && fixedSize + msg.length() * 3 > mBlockSize) {
+                msg = msg.subSequence(0, (mBlockSize - fixedSize) / 3);
+            }
+        }
+
+        mEncoder.encode(mCurrentBlock, timeMillis, priority, tag, msg, trace, fields);
+        mRecordCount++;
+    }
+
+    private void startBlock() {
+        ByteBuffer full = mCurrentBlock;
+        full.flip();
+        mFullBlocks.addLast(full);
+
+        ByteBuffer next;
+        if (mFullBlocks.size() >= mMaxBlocks) {
+            next = mFullBlocks.removeFirst();
+            mDroppedBlockCount++;
+        } else {
+            next = ByteBuffer.allocate(mBlockSize);
+        }
+        next.clear();
+        mCurrentBlock = next;
+        mEncoder.reset();
+    }
+}
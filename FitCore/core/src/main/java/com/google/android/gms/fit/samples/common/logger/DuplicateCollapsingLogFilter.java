@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.Locale;
+
+/**
+ * {@link LogNode} filter which collapses runs of identical records, the way syslog does. A record
+ * with the same priority, tag, message and exception type as the one before it, arriving within
+ * the {@link #setWindowMillis(long) window} of the first of the run, is not passed along. Once the
+ * run ends, a single "Last message repeated N times" line follows in its place.
+ *
+ * <p>A run ends when a different record arrives, when the window runs out, or when
+ * {@link #flush()} is called. A timer ends a run with repeats once its window is up, so its count
+ * is sent even if nothing is logged after it. Messages are compared by hash first, so checking a record which is
+ * not a duplicate costs one pass over the message and no allocation.</p>
+ */
+public class DuplicateCollapsingLogFilter implements LogRecordNode {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 10000;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    // Guarded by this. The last record passed along, and how often it has repeated since.
+    private boolean mHasLast;
+    private int mLastPriority;
+    private String mLastTag;
+    private final StringBuilder mLastMessage = new StringBuilder();
+    private boolean mLastMessageNull;
+    private final LogFields mLastFields = new LogFields();
+    private int mLastHash;
+    private Class<?> mLastThrowableClass;
+    private long mLastStartNanos;
+    private int mRepeats;
+    private long mWindowNanos = DEFAULT_WINDOW_MILLIS * NANOS_PER_MILLI;
+    private long mCollapsedTotal;
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushExpiredTask = new Runnable() {
+        @Override
+        public void run() {
+            flushExpired();
+        }
+    };
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private LogNode mNext;
+
+    /**
+     * Takes the "next" LogNode as a parameter, to simplify chaining.
+     *
+     * @param next The next LogNode in the pipeline.
+     */
+    public DuplicateCollapsingLogFilter(LogNode next) {
+        mNext = next;
+    }
+
+    public DuplicateCollapsingLogFilter() {
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Sets how long after the first record of a run its duplicates are still collapsed.
+     */
+    public synchronized void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative: "
+                    + windowMillis);
+        }
+        mWindowNanos = windowMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the number of records collapsed since the filter was created.
+     */
+    public synchronized long getCollapsedCount() {
+        return mCollapsedTotal;
+    }
+
+    /**
+     * Sends the repeat count of the current run, if it has any repeats, and ends the run.
+     */
+    public void flush() {
+        int priority;
+        String tag;
+        int repeats;
+        synchronized (this) {
+            priority = mLastPriority;
+            tag = mLastTag;
+            repeats = mRepeats;
+            mHasLast = false;
+            mRepeats = 0;
+        }
+        sendRepeats(priority, tag, repeats);
+    }
+
+    /**
+     * Ends the current run if its window is up, sending its repeat count, or sets the timer again
+     * for when it will be.
+     */
+    private void flushExpired() {
+        int priority;
+        String tag;
+        int repeats;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (!mHasLast || mRepeats == 0) {
+                return;
+            }
+            long leftNanos = mLastStartNanos + mWindowNanos - System.nanoTime();
+            if (leftNanos > 0) {
+                scheduleFlushLocked(leftNanos);
+                return;
+            }
+            priority = mLastPriority;
+            tag = mLastTag;
+            repeats = mRepeats;
+            mHasLast = false;
+            mRepeats = 0;
+        }
+        sendRepeats(priority, tag, repeats);
+    }
+
+    private void scheduleFlushLocked(long delayNanos) {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            LogTimer.schedule(mFlushExpiredTask, delayNanos);
+        }
+    }
+
+    /**
+     * Passes the log data along unless it repeats the previous record.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        if (admit(priority, tag, msg, null, tr) && mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Passes the record along unless it repeats the previous one.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        if (admit(record.getPriority(), record.getTag(), record.getMessage(),
+                record.getFields(), record.getThrowable())) {
+            LogRecord.dispatch(mNext, record);
+        }
+    }
+
+    /**
+     * Returns whether the record starts a new run, sending the repeat count of the run it ends
+     * first. The count is sent outside the lock, so nodes further down may log back into the chain.
+     */
+    private boolean admit(int priority, String tag, CharSequence msg, LogFields fields,
+            Throwable tr) {
+        int endedPriority = 0;
+        String endedTag = null;
+        int endedRepeats = 0;
+        synchronized (this) {
+            long now = System.nanoTime();
+            int hash = hash(priority, tag, msg, fields);
+            Class<?> throwableClass = tr == null ? null : tr.getClass();
+            if (mHasLast && hash == mLastHash && isLast(priority, tag, msg, fields, throwableClass)
+                    && now - mLastStartNanos < mWindowNanos) {
+                if (mRepeats++ == 0) {
+                    // The run may be the last one for a while, so have its count sent when it
+                    // runs out rather than when the next record arrives.
+                    scheduleFlushLocked(mLastStartNanos + mWindowNanos - now);
+                }
+                mCollapsedTotal++;
+                return false;
+            }
+
+            endedPriority = mLastPriority;
+            endedTag = mLastTag;
+            endedRepeats = mRepeats;
+
+            mHasLast = true;
+            mLastPriority = priority;
+            mLastTag = tag;
+            mLastMessage.setLength(0);
+            mLastMessageNull = msg == null;
+            if (msg != null) {
+                mLastMessage.append(msg);
+            }
+            if (fields != null) {
+                mLastFields.copyFrom(fields);
+            } else {
+                mLastFields.clear();
+            }
+            mLastHash = hash;
+            mLastThrowableClass = throwableClass;
+            mLastStartNanos = now;
+            mRepeats = 0;
+        }
+        sendRepeats(endedPriority, endedTag, endedRepeats);
+        return true;
+    }
+
+    private boolean isLast(int priority, String tag, CharSequence msg, LogFields fields,
+            Class<?> throwableClass) {
+        if (priority != mLastPriority || throwableClass != mLastThrowableClass) {
+            return false;
+        }
+        if (fields == null ? mLastFields.size() != 0 : !fields.equals(mLastFields)) {
+            return false;
+        }
+        if (tag == null ? mLastTag != null : !tag.equals(mLastTag)) {
+            return false;
+        }
+        if (msg == null) {
+            return mLastMessageNull;
+        }
+        if (mLastMessageNull || msg.length() != mLastMessage.length()) {
+            return false;
+        }
+        for (int i = 0; i < msg.length(); i++) {
+            if (msg.charAt(i) != mLastMessage.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int priority, String tag, CharSequence msg, LogFields fields) {
+        int hash = priority * 31 + (tag == null ? 0 : tag.hashCode());
+        if (fields != null && fields.size() > 0) {
+            hash = hash * 31 + fields.hashCode();
+        }
+        if (msg != null) {
+            for (int i = 0; i < msg.length(); i++) {
+                hash = hash * 31 + msg.charAt(i);
+            }
+        }
+        return hash;
+    }
+
+    private void sendRepeats(int priority, String tag, int repeats) {
+        if (repeats > 0 && mNext != null) {
+            mNext.println(priority, tag, String.format(Locale.US,
+                    "Last message repeated %d %s", repeats, repeats == 1 ? "time" : "times"),
+                    null);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+/**
+ * {@link LogNode} which passes every record to any number of children, instead of the single
+ * next node of a chain. Children can be added and removed at any time, from any thread: the list
+ * of children is copied on every change and swapped in whole, so logging never takes a lock and
+ * always sees a complete list.
+ *
+ * <p>Children are called one after another on the logging thread. A child which throws does not
+ * keep the children after it from getting the record. A child added as
+ * {@link #addChild(LogNode, boolean) isolated} instead gets its own {@link AsyncLogNode} queue and
+ * thread, so a slow sink such as a file or the network does not hold up the others. An isolated
+ * child which falls behind loses its oldest records rather than blocking the caller.</p>
+ */
+public class FanOutLogNode implements LogRecordNode {
+
+    /** A child, and the node records are actually handed to. */
+    private static final class Child {
+        final LogNode mNode;
+        final LogNode mTarget;
+
+        Child(LogNode node, LogNode target) {
+            mNode = node;
+            mTarget = target;
+        }
+    }
+
+    private static final Child[] NO_CHILDREN = new Child[0];
+
+    // Replaced, never modified, so readers can iterate it without locking. Writers hold this.
+    private volatile Child[] mChildren = NO_CHILDREN;
+
+    public FanOutLogNode() {
+    }
+
+    /**
+     * Creates a node with the given children, called on the logging thread.
+     *
+     * @param children The LogNodes every record is passed to.
+     */
+    public FanOutLogNode(LogNode... children) {
+        for (LogNode child : children) {
+            addChild(child);
+        }
+    }
+
+    /**
+     * Adds a child, called on the logging thread.
+     */
+    public void addChild(LogNode child) {
+        addChild(child, false);
+    }
+
+    /**
+     * Adds a child.
+     *
+     * @param child The LogNode to pass records to.
+     * @param isolated Whether to pass records to the child on a thread of its own.
+     */
+    public synchronized void addChild(LogNode child, boolean isolated) {
+        if (child == null) {
+            throw new NullPointerException("child");
+        }
+        LogNode target = isolated ? new AsyncLogNode(child, AsyncLogNode.DEFAULT_CAPACITY,
+                AsyncLogNode.OverflowPolicy.DROP_OLDEST) : child;
+        Child[] children = mChildren;
+        Child[] newChildren = new Child[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, children.length);
+        newChildren[children.length] = new Child(child, target);
+        mChildren = newChildren;
+    }
+
+    /**
+     * Removes a child. An isolated child still receives whatever was queued for it.
+     *
+     * @return true if the child was found.
+     */
+    public synchronized boolean removeChild(LogNode child) {
+        Child[] children = mChildren;
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].mNode == child) {
+                Child[] newChildren = new Child[children.length - 1];
+                System.arraycopy(children, 0, newChildren, 0, i);
+                System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+                mChildren = newChildren;
+                if (children[i].mTarget instanceof AsyncLogNode) {
+                    ((AsyncLogNode) children[i].mTarget).shutdown();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current children, in the order they are called.
+     */
+    public LogNode[] getChildren() {
+        Child[] children = mChildren;
+        LogNode[] nodes = new LogNode[children.length];
+        for (int i = 0; i < children.length; i++) {
+            nodes[i] = children[i].mNode;
+        }
+        return nodes;
+    }
+
+    /**
+     * Passes the log data to every child.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        Child[] children = mChildren;
+        for (int i = 0; i < children.length; i++) {
+            try {
+                children[i].mTarget.println(priority, tag, msg, tr);
+            } catch (RuntimeException e) {
+                // One broken sink, such as a full disk, must not cut off the others.
+            }
+        }
+    }
+
+    /**
+     * Passes the same record to every child. Children restore any change they make to it, so
+     * each one sees it as it was logged.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        Child[] children = mChildren;
+        for (int i = 0; i < children.length; i++) {
+            try {
+                LogRecord.dispatch(children[i].mTarget, record);
+            } catch (RuntimeException e) {
+                // One broken sink, such as a full disk, must not cut off the others.
+            }
+        }
+    }
+}
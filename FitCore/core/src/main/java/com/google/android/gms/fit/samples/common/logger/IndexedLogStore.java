@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link LogNode} which keeps the most recent records in memory, indexed so they can be searched
+ * by tag, minimum priority and message text without looking at every record. Each record gets an
+ * increasing id; the store keeps a list of ids per tag, per priority, and per trigram (three
+ * consecutive characters, ignoring case) of message text. A search walks the shortest of the
+ * lists which apply, and only checks the records on it.
+ *
+ * <p>Searches can also pick up where an earlier one stopped, with
+ * {@link #search(Query, long, int)}, so a filtered view can be kept up to date by asking only for
+ * what arrived since. {@code LogListView.setFilter} does exactly that.</p>
+ *
+ * <p>Thread-safe. Has no Android dependencies.</p>
+ */
+public class IndexedLogStore implements LogRecordNode {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    // Lowest and highest priority with a list of their own; anything outside is clamped.
+    private static final int MIN_INDEXED_PRIORITY = 0;
+    private static final int MAX_INDEXED_PRIORITY = 7;
+
+    /**
+     * A stored record.
+     */
+    public static final class Entry {
+        private final long mId;
+        private final long mTimeMillis;
+        private final int mPriority;
+        private final String mTag;
+        private final String mMessage;
+        private final String mStackTrace;
+
+        Entry(long id, long timeMillis, int priority, String tag, String message,
+                String stackTrace) {
+            mId = id;
+            mTimeMillis = timeMillis;
+            mPriority = priority;
+            mTag = tag;
+            mMessage = message;
+            mStackTrace = stackTrace;
+        }
+
+        /** Returns the id of the record. Ids increase in the order records were logged. */
+        public long getId() {
+            return mId;
+        }
+
+        /** Returns when the record was logged, in milliseconds since the epoch. */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        /** Returns the log level of the record. */
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /** Returns the tag of the record, or null. */
+        public String getTag() {
+            return mTag;
+        }
+
+        /** Returns the message of the record, or null. */
+        public String getMessage() {
+            return mMessage;
+        }
+
+        /** Returns the formatted stack trace of the logged exception, or null. */
+        public String getStackTrace() {
+            return mStackTrace;
+        }
+    }
+
+    /**
+     * What to search for. Every condition which is set must hold. Setters return the query, so
+     * they can be chained: {@code new Query().setMinPriority(Log.ERROR).setTag("BasicSessions")}.
+     */
+    public static final class Query {
+        private int mMinPriority = Integer.MIN_VALUE;
+        private String mTag;
+        private String mText;
+
+        /** Matches only records at or above the given priority. */
+        public Query setMinPriority(int priority) {
+            mMinPriority = priority;
+            return this;
+        }
+
+        /** Matches only records with exactly this tag, or any tag if null. */
+        public Query setTag(String tag) {
+            mTag = tag;
+            return this;
+        }
+
+        /** Matches only records whose message contains this text, ignoring case, or any if null. */
+        public Query setText(String text) {
+            mText = text == null || text.length() == 0 ? null : text;
+            return this;
+        }
+
+        public int getMinPriority() {
+            return mMinPriority;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        public String getText() {
+            return mText;
+        }
+
+        /** Checks a record against the query directly, without the index. */
+        public boolean matches(Entry entry) {
+            if (entry.mPriority < mMinPriority) {
+                return false;
+            }
+            if (mTag != null && !mTag.equals(entry.mTag)) {
+                return false;
+            }
+            return mText == null || containsIgnoreCase(entry.mMessage, mText);
+        }
+    }
+
+    /** Ascending ids, with stale ones dropped from the front as the store evicts records. */
+    private static final class PostingList {
+        private long[] mIds = new long[4];
+        private int mStart;
+        private int mEnd;
+
+        void add(long id) {
+            // A message may contain the same trigram more than once; list each record once.
+            if (mEnd > mStart && mIds[mEnd - 1] == id) {
+                return;
+            }
+            if (mEnd == mIds.length) {
+                if (mStart > mIds.length / 2) {
+                    System.arraycopy(mIds, mStart, mIds, 0, mEnd - mStart);
+                } else {
+                    mIds = Arrays.copyOf(mIds, mIds.length * 2);
+                    System.arraycopy(mIds, mStart, mIds, 0, mEnd - mStart);
+                }
+                mEnd -= mStart;
+                mStart = 0;
+            }
+            mIds[mEnd++] = id;
+        }
+
+        /** Drops ids below the given one. */
+        void trimBelow(long oldestId) {
+            while (mStart < mEnd && mIds[mStart] < oldestId) {
+                mStart++;
+            }
+            if (mStart == mEnd) {
+                mStart = 0;
+                mEnd = 0;
+            }
+        }
+
+        int size() {
+            return mEnd - mStart;
+        }
+
+        long get(int i) {
+            return mIds[mStart + i];
+        }
+    }
+
+    private final Entry[] mEntries;
+    private long mNextId;
+    // Id of the first record since the store was created or cleared.
+    private long mFirstId;
+    private final HashMap<String, PostingList> mTagPostings = new HashMap<String, PostingList>();
+    private final PostingList[] mPriorityPostings =
+            new PostingList[MAX_INDEXED_PRIORITY - MIN_INDEXED_PRIORITY + 1];
+    private final HashMap<Long, PostingList> mTrigramPostings = new HashMap<Long, PostingList>();
+    // Records added since posting lists were last swept for evicted ids.
+    private int mAddsSinceSweep;
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private LogNode mNext;
+
+    /**
+     * Creates a store which keeps the {@link #DEFAULT_CAPACITY} most recent records.
+     */
+    public IndexedLogStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a store which keeps the given number of most recent records.
+     */
+    public IndexedLogStore(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mEntries = new Entry[capacity];
+        for (int i = 0; i < mPriorityPostings.length; i++) {
+            mPriorityPostings[i] = new PostingList();
+        }
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Stores and indexes the log data.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        add(System.currentTimeMillis(), priority, tag, msg, tr);
+
+        if (mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Stores and indexes the record.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        // Key-value pairs are stored as text, which is what searches match against.
+        add(record.getTimeMillis(), record.getPriority(), record.getTag(), record.getText(),
+                record.getThrowable());
+
+        LogRecord.dispatch(mNext, record);
+    }
+
+    /**
+     * Returns every stored record which matches the query, oldest first.
+     */
+    public List<Entry> search(Query query) {
+        return search(query, -1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the most recent stored records which match the query and came after a given one,
+     * oldest first.
+     *
+     * @param query What to search for.
+     * @param afterId Only records with a higher id are returned. -1 for all.
+     * @param limit The most records to return. If more match, the oldest are left out.
+     */
+    public synchronized List<Entry> search(Query query, long afterId, int limit) {
+        long firstId = Math.max(oldestId(), afterId + 1);
+        if (firstId >= mNextId || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Find the shortest list of candidate ids. Without one, every record is a candidate.
+        PostingList candidates = null;
+        boolean none = false;
+        if (query.mTag != null) {
+            candidates = mTagPostings.get(query.mTag);
+            none = candidates == null;
+        }
+        if (!none && query.mText != null && query.mText.length() >= 3) {
+            String text = query.mText;
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                PostingList list = mTrigramPostings.get(trigram(text, i));
+                if (list == null) {
+                    none = true;
+                    break;
+                }
+                if (candidates == null || list.size() < candidates.size()) {
+                    candidates = list;
+                }
+            }
+        }
+        if (none) {
+            return Collections.emptyList();
+        }
+        long[] priorityCandidates = null;
+        if (query.mMinPriority > MIN_INDEXED_PRIORITY) {
+            int size = 0;
+            for (int p = clampPriority(query.mMinPriority); p <= MAX_INDEXED_PRIORITY; p++) {
+                size += mPriorityPostings[p - MIN_INDEXED_PRIORITY].size();
+            }
+            if (candidates == null || size < candidates.size()) {
+                priorityCandidates = mergePriorityPostings(clampPriority(query.mMinPriority));
+                candidates = null;
+            }
+        }
+
+        // Walk the candidates newest first, so the limit keeps the most recent matches.
+        ArrayList<Entry> results = new ArrayList<Entry>();
+        if (priorityCandidates != null) {
+            for (int i = priorityCandidates.length - 1; i >= 0 && results.size() < limit; i--) {
+                if (!collect(priorityCandidates[i], firstId, query, results)) {
+                    break;
+                }
+            }
+        } else if (candidates != null) {
+            for (int i = candidates.size() - 1; i >= 0 && results.size() < limit; i--) {
+                if (!collect(candidates.get(i), firstId, query, results)) {
+                    break;
+                }
+            }
+        } else {
+            for (long id = mNextId - 1; id >= firstId && results.size() < limit; id--) {
+                collect(id, firstId, query, results);
+            }
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Passes every stored record to a visitor, oldest first, for instance a
+     * {@link LogArchiveWriter}. Logging from other threads waits while this runs.
+     */
+    public synchronized void read(LogCodec.Visitor visitor) {
+        for (long id = oldestId(); id < mNextId; id++) {
+            Entry entry = mEntries[(int) (id % mEntries.length)];
+            if (entry != null) {
+                visitor.onRecord(entry.mTimeMillis, entry.mPriority, entry.mTag, entry.mMessage,
+                        entry.mStackTrace);
+            }
+        }
+    }
+
+    /**
+     * Returns the id the next record will get. Every stored record has a lower one.
+     */
+    public synchronized long getNextId() {
+        return mNextId;
+    }
+
+    /**
+     * Returns the number of records stored.
+     */
+    public synchronized int size() {
+        return (int) (mNextId - oldestId());
+    }
+
+    /**
+     * Returns the most records kept.
+     */
+    public int getCapacity() {
+        return mEntries.length;
+    }
+
+    /**
+     * Removes every record. Ids keep increasing from where they were.
+     */
+    public synchronized void clear() {
+        Arrays.fill(mEntries, null);
+        mTagPostings.clear();
+        mTrigramPostings.clear();
+        for (PostingList list : mPriorityPostings) {
+            list.trimBelow(Long.MAX_VALUE);
+        }
+        mFirstId = mNextId;
+        mAddsSinceSweep = 0;
+    }
+
+    private synchronized void add(long timeMillis, int priority, String tag, String msg,
+            Throwable tr) {
+        long id = mNextId++;
+        String trace = tr == null ? null : StackTraceCache.getStackTraceString(tr);
+        mEntries[(int) (id % mEntries.length)] =
+                new Entry(id, timeMillis, priority, tag, msg, trace);
+
+        if (tag != null) {
+            PostingList list = mTagPostings.get(tag);
+            if (list == null) {
+                list = new PostingList();
+                mTagPostings.put(tag, list);
+            }
+            list.add(id);
+        }
+        mPriorityPostings[clampPriority(priority) - MIN_INDEXED_PRIORITY].add(id);
+        if (msg != null) {
+            for (int i = 0; i + 3 <= msg.length(); i++) {
+                Long key = trigram(msg, i);
+                PostingList list = mTrigramPostings.get(key);
+                if (list == null) {
+                    list = new PostingList();
+                    mTrigramPostings.put(key, list);
+                }
+                list.add(id);
+            }
+        }
+
+        // Once per capacity's worth of records, drop evicted ids from every list, and lists
+        // which are left empty, so the index stays proportional to what is stored.
+        if (++mAddsSinceSweep >= mEntries.length) {
+            mAddsSinceSweep = 0;
+            sweep();
+        }
+    }
+
+    private void sweep() {
+        long oldestId = oldestId();
+        sweep(mTagPostings.values().iterator(), oldestId);
+        sweep(mTrigramPostings.values().iterator(), oldestId);
+        for (PostingList list : mPriorityPostings) {
+            list.trimBelow(oldestId);
+        }
+    }
+
+    private static void sweep(Iterator<PostingList> lists, long oldestId) {
+        while (lists.hasNext()) {
+            PostingList list = lists.next();
+            list.trimBelow(oldestId);
+            if (list.size() == 0) {
+                lists.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds the entry with the given id to the results if it matches. Returns false once ids fall
+     * below firstId, to stop the caller's walk.
+     */
+    private boolean collect(long id, long firstId, Query query, List<Entry> results) {
+        if (id < firstId) {
+            return false;
+        }
+        Entry entry = mEntries[(int) (id % mEntries.length)];
+        if (entry != null && entry.mId == id && query.matches(entry)) {
+            results.add(entry);
+        }
+        return true;
+    }
+
+    private long[] mergePriorityPostings(int minPriority) {
+        int size = 0;
+        for (int p = minPriority; p <= MAX_INDEXED_PRIORITY; p++) {
+            size += mPriorityPostings[p - MIN_INDEXED_PRIORITY].size();
+        }
+        long[] ids = new long[size];
+        int n = 0;
+        for (int p = minPriority; p <= MAX_INDEXED_PRIORITY; p++) {
+            PostingList list = mPriorityPostings[p - MIN_INDEXED_PRIORITY];
+            for (int i = 0; i < list.size(); i++) {
+                ids[n++] = list.get(i);
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private long oldestId() {
+        return Math.max(mFirstId, mNextId - mEntries.length);
+    }
+
+    private static int clampPriority(int priority) {
+        return Math.max(MIN_INDEXED_PRIORITY, Math.min(MAX_INDEXED_PRIORITY, priority));
+    }
+
+    /** Packs three characters starting at i, lower-cased, into one key. */
+    private static Long trigram(String s, int i) {
+        return ((long) Character.toLowerCase(s.charAt(i)) << 32)
+                | ((long) Character.toLowerCase(s.charAt(i + 1)) << 16)
+                | Character.toLowerCase(s.charAt(i + 2));
+    }
+
+    static boolean containsIgnoreCase(String haystack, String needle) {
+        if (haystack == null) {
+            return false;
+        }
+        int last = haystack.length() - needle.length();
+        for (int i = 0; i <= last; i++) {
+            if (haystack.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
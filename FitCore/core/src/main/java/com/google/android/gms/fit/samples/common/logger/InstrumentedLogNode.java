@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LogNode} which wraps another node and measures it: how many records it was given, how
+ * many characters of message text, and how long each call to its println took. Put it wherever the
+ * wrapped node would go, for instance {@code logWrapper.setNext(new InstrumentedLogNode("view",
+ * logView))}, then read the numbers back with {@link #snapshot()}.
+ *
+ * <p>The time measured includes everything the wrapped node calls, which for a node in the middle
+ * of a chain is the rest of the chain. Wrap the nodes further down as well to tell their share
+ * apart. Measuring takes no lock, so it does not change how the chain behaves under contention.</p>
+ */
+public class InstrumentedLogNode implements LogRecordNode {
+
+    /**
+     * An unchanging copy of the numbers measured for one node.
+     */
+    public static final class Snapshot {
+        private final String mName;
+        private final long mCount;
+        private final long mChars;
+        private final long mTotalNanos;
+        private final long mP50Nanos;
+        private final long mP99Nanos;
+        private final long mMaxNanos;
+
+        Snapshot(String name, long count, long chars, long totalNanos, long p50Nanos,
+                long p99Nanos, long maxNanos) {
+            mName = name;
+            mCount = count;
+            mChars = chars;
+            mTotalNanos = totalNanos;
+            mP50Nanos = p50Nanos;
+            mP99Nanos = p99Nanos;
+            mMaxNanos = maxNanos;
+        }
+
+        /** Returns the name the node was instrumented under. */
+        public String getName() {
+            return mName;
+        }
+
+        /** Returns the number of calls to println. */
+        public long getCount() {
+            return mCount;
+        }
+
+        /** Returns the number of characters of message text passed to println. */
+        public long getChars() {
+            return mChars;
+        }
+
+        /** Returns the total time spent in println. */
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        /** Returns the median time of a call to println. */
+        public long getP50Nanos() {
+            return mP50Nanos;
+        }
+
+        /** Returns the 99th percentile time of a call to println. */
+        public long getP99Nanos() {
+            return mP99Nanos;
+        }
+
+        /** Returns the longest time of a call to println. */
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        /**
+         * Returns the numbers on one line, with times in microseconds, for instance
+         * {@code "view: 1200 calls, 48000 chars, p50 12.0us, p99 310.5us, max 2041.0us"}.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d calls, %d chars, p50 %.1fus, p99 %.1fus, max %.1fus",
+                    mName, mCount, mChars, mP50Nanos / 1000.0, mP99Nanos / 1000.0,
+                    mMaxNanos / 1000.0);
+        }
+    }
+
+    private final String mName;
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private final AtomicLong mChars = new AtomicLong();
+
+    // The node being measured.
+    private LogNode mNext;
+
+    /**
+     * Wraps a node.
+     *
+     * @param name Name to report the numbers under.
+     * @param next The LogNode to measure.
+     */
+    public InstrumentedLogNode(String name, LogNode next) {
+        mName = name;
+        mNext = next;
+    }
+
+    /**
+     * Returns the node being measured.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the node being measured.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Returns the name the numbers are reported under.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Passes the log data to the wrapped node, timing the call.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        LogNode next = mNext;
+        if (next == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            next.println(priority, tag, msg, tr);
+        } finally {
+            record(start, msg);
+        }
+    }
+
+    /**
+     * Passes the record to the wrapped node, timing the call.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        LogNode next = mNext;
+        if (next == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            LogRecord.dispatch(next, record);
+        } finally {
+            record(start, record.getMessage());
+        }
+    }
+
+    /**
+     * Returns the numbers measured so far.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(mName, mHistogram.getCount(), mChars.get(),
+                mHistogram.getTotalNanos(), mHistogram.getPercentileNanos(0.5),
+                mHistogram.getPercentileNanos(0.99), mHistogram.getMaxNanos());
+    }
+
+    /**
+     * Starts measuring afresh.
+     */
+    public void reset() {
+        mHistogram.reset();
+        mChars.set(0);
+    }
+
+    private void record(long start, CharSequence msg) {
+        mHistogram.record(System.nanoTime() - start);
+        if (msg != null) {
+            mChars.addAndGet(msg.length());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Layout of the binary journal written by {@link JournalLogNode} and read back by
+ * {@link JournalReader}. Kept free of Android dependencies so the reader runs on a plain JVM.
+ *
+ * <p>A journal is a directory of fixed-size segment files, named so that they sort oldest
+ * first. Each segment starts with an 8 byte header (magic number, format version, padding),
+ * followed by records in the {@link LogCodec} encoding, with tag ids and time deltas starting
+ * afresh in every segment. The unused tail of a segment is zero-filled, which reads as the
+ * codec's end marker.</p>
+ */
+final class JournalFormat {
+
+    static final int MAGIC = 0x464a4e4c; // "FJNL"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private JournalFormat() {
+    }
+
+    /** Returns the file name of the segment with the given sequence number. */
+    static String segmentName(long sequence) {
+        return String.format(Locale.US, "%s%012d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /** Returns the sequence number encoded in a segment file name. */
+    static long segmentSequence(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /** Returns the segments in a journal directory, oldest first. Never null. */
+    static File[] listSegments(File directory) {
+        File[] segments = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+}
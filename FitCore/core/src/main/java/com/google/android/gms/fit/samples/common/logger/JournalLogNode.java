@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link LogNode} which appends binary records to a memory-mapped journal on disk. Writes are
+ * plain memory copies into the mapped segment, so logging costs no system call per line, and
+ * whatever was written survives the process being killed. Records use the compact
+ * {@link LogCodec} encoding, with tags interned per segment.
+ *
+ * <p>The journal is split into segments of a fixed size. When a segment is full, logging moves
+ * on to a new one and the oldest segments beyond the configured count are deleted. Use
+ * {@link JournalReader} to turn a journal back into text, on or off the device.</p>
+ */
+public class JournalLogNode implements LogRecordNode {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+
+    // Guarded by this.
+    private long mSequence;
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private IOException mFailure;
+    private final LogCodec.Encoder mEncoder = new LogCodec.Encoder();
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private LogNode mNext;
+
+    /**
+     * Opens a journal with {@link #DEFAULT_SEGMENT_SIZE} and {@link #DEFAULT_MAX_SEGMENTS}.
+     *
+     * @param directory Directory holding the segments, for instance under Context.getFilesDir().
+     */
+    public JournalLogNode(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Opens a journal, starting a new segment after any segments already in the directory.
+     *
+     * @param directory Directory holding the segments. Created if missing.
+     * @param segmentSize Size in bytes of each segment file.
+     * @param maxSegments Number of segments kept, including the one being written.
+     */
+    public JournalLogNode(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= JournalFormat.HEADER_SIZE + 64) {
+            throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be positive: " + maxSegments);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mMaxSegments = maxSegments;
+
+        File[] existing = JournalFormat.listSegments(directory);
+        mSequence = existing.length == 0
+                ? 0 : JournalFormat.segmentSequence(existing[existing.length - 1]) + 1;
+        openSegment();
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Returns the directory the segments are written to.
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Returns the error that stopped the journal, or null if it is still being written. Once a
+     * segment cannot be opened the journal stops writing, but records are still passed along.
+     */
+    public synchronized IOException getFailure() {
+        return mFailure;
+    }
+
+    /**
+     * Appends the log data to the journal.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        write(System.currentTimeMillis(), priority, tag, msg, null, tr);
+
+        if (mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Appends the record to the journal, encoding the message straight from its CharSequence and
+     * the key-value pairs as they are.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        write(record.getTimeMillis(), record.getPriority(), record.getTag(), record.getMessage(),
+                record.getFields(), record.getThrowable());
+
+        LogRecord.dispatch(mNext, record);
+    }
+
+    /**
+     * Forces everything written so far out to the storage device.
+     */
+    public synchronized void sync() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Forces the current segment to disk and stops writing. Records are still passed along.
+     */
+    public synchronized void close() throws IOException {
+        closeSegment();
+        if (mFailure == null) {
+            mFailure = new IOException("Journal closed");
+        }
+    }
+
+    private synchronized void write(long timeMillis, int priority, String tag, CharSequence msg,
+            LogFields fields, Throwable tr) {
+        if (mBuffer == null) {
+            return;
+        }
+        String trace = tr == null ? null : StackTraceCache.getStackTraceString(tr);
+
+        // The most a record can take, plus the end marker after it.
+        int maxSize = LogCodec.Encoder.maxEncodedSize(tag, msg, trace, fields) + 1;
+        int segmentCapacity = mSegmentSize - JournalFormat.HEADER_SIZE;
+
+        if (maxSize > mBuffer.remaining()
+                && mBuffer.position() > JournalFormat.HEADER_SIZE) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                mFailure = e;
+                return;
+            }
+        }
+        if (maxSize > segmentCapacity) {
+            // Too big for any segment: drop the stack trace and key-value pairs, then shorten
+            // the message.
+            trace = null;
+            fields = null;
+            int fixedSize = LogCodec.Encoder.maxEncodedSize(tag, null, null) + 1;
+            if (fixedSize > segmentCapacity) {
+                return;
+            }
+            if (msg != null && fixedSize + msg.length() * 3 > segmentCapacity) {
+                msg = msg.subSequence(0, (segmentCapacity - fixedSize) / 3);
+            }
+        }
+
+        mEncoder.encode(mBuffer, timeMillis, priority, tag, msg, trace, fields);
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        mSequence++;
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        File segment = new File(mDirectory, JournalFormat.segmentName(mSequence));
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(mSegmentSize);
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        mFile = file;
+        mBuffer.putInt(JournalFormat.MAGIC);
+        mBuffer.put(JournalFormat.VERSION);
+        mBuffer.position(JournalFormat.HEADER_SIZE);
+        mEncoder.reset();
+
+        File[] segments = JournalFormat.listSegments(mDirectory);
+        for (int i = 0; i < segments.length - mMaxSegments; i++) {
+            segments[i].delete();
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (mBuffer != null) {
+            mBuffer.force();
+            mBuffer = null;
+        }
+        if (mFile != null) {
+            // The mapping stays valid until it is garbage collected; closing the file is safe.
+            mFile.close();
+            mFile = null;
+        }
+    }
+}
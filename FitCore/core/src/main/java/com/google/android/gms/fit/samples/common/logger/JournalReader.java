@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Decodes a journal written by {@link JournalLogNode}. Has no Android dependencies, so a journal
+ * pulled off a device with {@code adb pull} can be read on a desktop JVM:
+ *
+ * <pre>
+ * java -cp classes com.google.android.gms.fit.samples.common.logger.JournalReader journal/
+ * </pre>
+ */
+public final class JournalReader {
+
+    private JournalReader() {
+    }
+
+    /**
+     * Reads every segment of a journal, oldest first.
+     *
+     * @param directory The directory the journal was written to.
+     * @param visitor Receives the records.
+     */
+    public static void readJournal(File directory, LogCodec.Visitor visitor) throws IOException {
+        for (File segment : JournalFormat.listSegments(directory)) {
+            readSegment(segment, visitor);
+        }
+    }
+
+    /**
+     * Reads a single segment file.
+     *
+     * @param segment The segment to read.
+     * @param visitor Receives the records.
+     */
+    public static void readSegment(File segment, LogCodec.Visitor visitor) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < JournalFormat.HEADER_SIZE
+                    || buffer.getInt() != JournalFormat.MAGIC) {
+                throw new IOException(segment + " is not a journal segment");
+            }
+            byte version = buffer.get();
+            if (version != JournalFormat.VERSION) {
+                throw new IOException(segment + " has unsupported version " + version);
+            }
+            buffer.position(JournalFormat.HEADER_SIZE);
+            new LogCodec.Decoder().decode(buffer, visitor);
+        } finally {
+            file.close();
+        }
+    }
+
+    /** Returns the single letter logcat uses for a priority, or '-' for none. */
+    static char priorityLetter(int priority) {
+        switch (priority) {
+            case 2:
+                return 'V';
+            case 3:
+                return 'D';
+            case 4:
+                return 'I';
+            case 5:
+                return 'W';
+            case 6:
+                return 'E';
+            case 7:
+                return 'A';
+            default:
+                return '-';
+        }
+    }
+
+    /**
+     * Returns a visitor which prints each record as a line of text, in a logcat-like format,
+     * followed by its stack trace if it has one. Shared with {@link LogArchiveReader}.
+     */
+    static LogCodec.Visitor newTextPrinter(final PrintStream out) {
+        final SimpleDateFormat dateFormat =
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        final Date date = new Date();
+        return new LogCodec.Visitor() {
+            @Override
+            public void onRecord(long timeMillis, int priority, String tag, String msg,
+                    String stackTrace) {
+                date.setTime(timeMillis);
+                out.print(dateFormat.format(date));
+                out.print(' ');
+                out.print(priorityLetter(priority));
+                out.print('/');
+                out.print(tag == null ? "" : tag);
+                out.print(": ");
+                out.println(msg == null ? "" : msg);
+                if (stackTrace != null) {
+                    out.print(stackTrace);
+                }
+            }
+        };
+    }
+
+    /**
+     * Prints the journals or segments named on the command line as text, one record per line,
+     * in a logcat-like format.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JournalReader <journal directory or segment>...");
+            System.exit(1);
+        }
+        LogCodec.Visitor printer = newTextPrinter(System.out);
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                readJournal(file, printer);
+            } else {
+                readSegment(file, printer);
+            }
+        }
+        System.out.flush();
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helper class for a list (or tree) of LoggerNodes.
+ *
+ * <p>When this is set as the head of the list,
+ * an instance of it can function as a drop-in replacement for {@code android.util.Log}.
+ * Most of the methods in this class serve only to map a method call in Log to its equivalent
+ * in LogNode.</p>
+ */
+public class Log {
+    // The same values as Android's native logging facilities, to make for easy migration and
+    // interop, spelled out so this class also runs on a plain JVM.
+    public static final int NONE = -1;
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    // Stores the beginning of the LogNode topology. Volatile, so a topology built on one thread
+    // is seen whole by threads which log through it.
+    private static volatile LogNode mLogNode;
+
+    // Records below this priority are discarded before any message text is built.
+    private static volatile int mMinPriority = VERBOSE;
+
+    // Per-tag overrides of mMinPriority. Only consulted when at least one has been set.
+    private static final Map<String, Integer> mTagMinPriorities =
+            new ConcurrentHashMap<String, Integer>();
+    private static volatile boolean mHasTagMinPriorities;
+
+    /**
+     * Returns the next LogNode in the linked list.
+     */
+    public static LogNode getLogNode() {
+        return mLogNode;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to. Wire up the whole topology first and then set its
+     * head here, and it is safely published to every thread. To add or remove sinks while other
+     * threads are logging, use a {@link FanOutLogNode}.
+     */
+    public static void setLogNode(LogNode node) {
+        mLogNode = node;
+    }
+
+    /**
+     * Returns the lowest priority that is passed on to the LogNode topology.
+     */
+    public static int getMinPriority() {
+        return mMinPriority;
+    }
+
+    /**
+     * Sets the lowest priority that is passed on to the LogNode topology. Anything below it is
+     * dropped at the call site, before the LogNodes see it. Defaults to {@link #VERBOSE}.
+     */
+    public static void setMinPriority(int priority) {
+        mMinPriority = priority;
+    }
+
+    /**
+     * Overrides the lowest priority passed on for a single tag.
+     *
+     * @param tag The tag to override.
+     * @param priority The minimum priority for this tag, or {@link #NONE} to remove the override
+     *                 and fall back to {@link #getMinPriority()}.
+     */
+    public static void setMinPriority(String tag, int priority) {
+        if (priority == NONE) {
+            mTagMinPriorities.remove(tag);
+        } else {
+            mTagMinPriorities.put(tag, priority);
+        }
+        mHasTagMinPriorities = !mTagMinPriorities.isEmpty();
+    }
+
+    /**
+     * Checks whether a record of the given priority and tag would reach the LogNode topology.
+     * Use this to skip expensive work, like building a message in a loop, when nothing would be
+     * logged anyway.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data.
+     * @return true if a LogNode is set and the priority is at or above the minimum for the tag.
+     */
+    public static boolean isLoggable(int priority, String tag) {
+        if (mLogNode == null) {
+            return false;
+        }
+        int minPriority = mMinPriority;
+        if (mHasTagMinPriorities && tag != null) {
+            Integer tagMinPriority = mTagMinPriorities.get(tag);
+            if (tagMinPriority != null) {
+                minPriority = tagMinPriority;
+            }
+        }
+        return priority >= minPriority;
+    }
+
+    /**
+     * Instructs the LogNode to print the log data provided. Other LogNodes can
+     * be chained to the end of the LogNode as desired.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void println(int priority, String tag, String msg, Throwable tr) {
+        LogNode node = mLogNode;
+        if (node != null && isLoggable(priority, tag)) {
+            node.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Instructs the LogNode to print the log data provided. Other LogNodes can
+     * be chained to the end of the LogNode as desired.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged. The actual message to be logged.
+     */
+    public static void println(int priority, String tag, String msg) {
+        println(priority, tag, msg, null);
+    }
+
+    /**
+     * Prints a message held in any CharSequence, such as a reused StringBuilder. When the
+     * LogNodes implement {@link LogRecordNode} the message is passed along without being copied
+     * into a String.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged. Must not be changed until this call returns.
+     */
+    public static void println(int priority, String tag, CharSequence msg) {
+        LogNode node = mLogNode;
+        if (node != null && isLoggable(priority, tag)) {
+            LogRecord record = LogRecord.obtain(priority, tag).setMessage(msg);
+            LogRecord.dispatch(node, record);
+            record.recycle();
+        }
+    }
+
+    /**
+     * Prints a record, then recycles it. See {@link LogRecord#obtain(int, String)}.
+     *
+     * @param record The record to be logged.
+     */
+    public static void println(LogRecord record) {
+        LogNode node = mLogNode;
+        if (node != null && isLoggable(record.getPriority(), record.getTag())) {
+            LogRecord.dispatch(node, record);
+        }
+        record.recycle();
+    }
+
+    /**
+     * Starts a structured record at INFO priority. Add key-value pairs to it, then emit it:
+     *
+     * <pre>
+     * Log.event(TAG).kv("type", typeName).kvTime("start", startMillis).kv("steps", steps).emit();
+     * </pre>
+     *
+     * <p>Values are carried through the chain as they are, and only turned into text by the nodes
+     * which display them. See {@link LogRecord#kv(String, long)}.</p>
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     */
+    public static LogRecord event(String tag) {
+        return LogRecord.obtain(INFO, tag);
+    }
+
+    /**
+     * Starts a structured record. See {@link #event(String)}.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     */
+    public static LogRecord event(int priority, String tag) {
+        return LogRecord.obtain(priority, tag);
+    }
+
+    /**
+     * Formats and prints a message, but only if the priority and tag pass
+     * {@link #isLoggable(int, String)}. The format string is not evaluated otherwise.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param format A {@link String#format(String, Object...)} format string.
+     * @param args Arguments referenced by the format specifiers in the format string.
+     */
+    public static void printf(int priority, String tag, String format, Object... args) {
+        if (isLoggable(priority, tag)) {
+            println(priority, tag, String.format(format, args), null);
+        }
+    }
+
+    /**
+     * Prints the message produced by the supplier, but only if the priority and tag pass
+     * {@link #isLoggable(int, String)}. The supplier is not called otherwise.
+     *
+     * <p>This method and its per-level variants, {@code vLazy}, {@code dLazy} and so on, are
+     * named apart from {@code println}, {@code v}, {@code d}, ... rather than overloading them,
+     * so that calls such as {@code Log.i(tag, null)} stay unambiguous.</p>
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void printlnLazy(int priority, String tag, MessageSupplier supplier) {
+        if (isLoggable(priority, tag)) {
+            println(priority, tag, supplier.get(), null);
+        }
+    }
+
+    /**
+     * Prints a message at VERBOSE priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void v(String tag, String msg, Throwable tr) {
+        println(VERBOSE, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at VERBOSE priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void v(String tag, String msg) {
+        v(tag, msg, null);
+    }
+
+    /**
+     * Prints a message at VERBOSE priority. The supplier is only called if the priority is
+     * loggable.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void vLazy(String tag, MessageSupplier supplier) {
+        printlnLazy(VERBOSE, tag, supplier);
+    }
+
+
+    /**
+     * Prints a message at DEBUG priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void d(String tag, String msg, Throwable tr) {
+        println(DEBUG, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at DEBUG priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void d(String tag, String msg) {
+        d(tag, msg, null);
+    }
+
+
+    /**
+     * Prints a message at DEBUG priority. The supplier is only called if the priority is
+     * loggable.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void dLazy(String tag, MessageSupplier supplier) {
+        printlnLazy(DEBUG, tag, supplier);
+    }
+
+    /**
+     * Prints a message at INFO priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void i(String tag, String msg, Throwable tr) {
+        println(INFO, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at INFO priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void i(String tag, String msg) {
+        i(tag, msg, null);
+    }
+
+
+    /**
+     * Prints a message at INFO priority. The supplier is only called if the priority is
+     * loggable.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void iLazy(String tag, MessageSupplier supplier) {
+        printlnLazy(INFO, tag, supplier);
+    }
+
+    /**
+     * Prints a message at WARN priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void w(String tag, String msg, Throwable tr) {
+        println(WARN, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at WARN priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void w(String tag, String msg) {
+        w(tag, msg, null);
+    }
+
+
+    /**
+     * Prints a message at WARN priority. The supplier is only called if the priority is
+     * loggable.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void wLazy(String tag, MessageSupplier supplier) {
+        printlnLazy(WARN, tag, supplier);
+    }
+
+    /**
+     * Prints a message at WARN priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void w(String tag, Throwable tr) {
+        w(tag, null, tr);
+    }
+
+    /**
+     * Prints a message at ERROR priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void e(String tag, String msg, Throwable tr) {
+        println(ERROR, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at ERROR priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void e(String tag, String msg) {
+        e(tag, msg, null);
+    }
+
+
+    /**
+     * Prints a message at ERROR priority. The supplier is only called if the priority is
+     * loggable.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param supplier Builds the message to be logged.
+     */
+    public static void eLazy(String tag, MessageSupplier supplier) {
+        printlnLazy(ERROR, tag, supplier);
+    }
+
+    /**
+     * Prints a message at ASSERT priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void wtf(String tag, String msg, Throwable tr) {
+        println(ASSERT, tag, msg, tr);
+    }
+
+    /**
+     * Prints a message at ASSERT priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     */
+    public static void wtf(String tag, String msg) {
+        wtf(tag, msg, null);
+    }
+
+    /**
+     * Prints a message at ASSERT priority.
+     *
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    public static void wtf(String tag, Throwable tr) {
+        wtf(tag, null, tr);
+    }
+}
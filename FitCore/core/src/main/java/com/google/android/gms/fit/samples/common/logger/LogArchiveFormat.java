@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+/**
+ * Layout of the compressed archive written by {@link LogArchiveWriter} and read back by
+ * {@link LogArchiveReader}. Kept free of Android dependencies so the reader runs on a plain JVM.
+ *
+ * <p>An archive starts with an 8 byte header (magic number, format version, padding), followed by
+ * blocks. Each block is its raw size and compressed size as big-endian ints, then the
+ * compressed bytes. Raw, a block is records in the {@link LogCodec} encoding, with tag ids and
+ * time deltas starting afresh in every block, so blocks decode independently. A block with a raw
+ * size of zero ends the archive. Blocks are compressed with deflate, which every Android version
+ * and JVM supports without extra libraries.</p>
+ */
+final class LogArchiveFormat {
+
+    static final int MAGIC = 0x464c4741; // "FLGA"
+    static final byte VERSION = 2;
+    // Version 2 added records with key-value pairs; older archives still decode.
+    static final byte MIN_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 8;
+
+    // Upper bound of a block's raw size, to reject corrupt archives before allocating.
+    static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    private LogArchiveFormat() {
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes an archive written by {@link LogArchiveWriter}. Has no Android dependencies, so an
+ * archive shared from a device can be read on a desktop JVM:
+ *
+ * <pre>
+ * java -cp classes com.google.android.gms.fit.samples.common.logger.LogArchiveReader logs.flga
+ * </pre>
+ */
+public final class LogArchiveReader {
+
+    private LogArchiveReader() {
+    }
+
+    /**
+     * Reads every record in an archive, oldest first.
+     *
+     * @param archive The archive to read.
+     * @param visitor Receives the records.
+     * @return The number of records read.
+     */
+    public static long readArchive(File archive, LogCodec.Visitor visitor) throws IOException {
+        FileInputStream stream = new FileInputStream(archive);
+        Inflater inflater = new Inflater();
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(LogArchiveFormat.HEADER_SIZE);
+            if (!readFully(channel, header) || header.getInt() != LogArchiveFormat.MAGIC) {
+                throw new IOException(archive + " is not a log archive");
+            }
+            byte version = header.get();
+            if (version < LogArchiveFormat.MIN_VERSION || version > LogArchiveFormat.VERSION) {
+                throw new IOException(archive + " has unsupported version " + version);
+            }
+
+            LogCodec.Decoder decoder = new LogCodec.Decoder();
+            ByteBuffer blockHeader = ByteBuffer.allocate(LogArchiveFormat.BLOCK_HEADER_SIZE);
+            ByteBuffer compressed = ByteBuffer.allocate(0);
+            byte[] raw = new byte[0];
+            long count = 0;
+            while (true) {
+                blockHeader.clear();
+                if (!readFully(channel, blockHeader)) {
+                    // Cut short between blocks, for instance while still being copied: keep
+                    // what is there.
+                    break;
+                }
+                int rawSize = blockHeader.getInt();
+                int compressedSize = blockHeader.getInt();
+                if (rawSize == 0) {
+                    break;
+                }
+                if (rawSize < 0 || rawSize > LogArchiveFormat.MAX_BLOCK_SIZE || compressedSize < 0
+                        || compressedSize > 2 * LogArchiveFormat.MAX_BLOCK_SIZE) {
+                    throw new IOException(archive + " has a corrupt block header");
+                }
+
+                if (compressed.capacity() < compressedSize) {
+                    compressed = ByteBuffer.allocate(compressedSize);
+                }
+                compressed.clear();
+                compressed.limit(compressedSize);
+                if (!readFully(channel, compressed)) {
+                    throw new EOFException(archive + " ends in the middle of a block");
+                }
+                if (raw.length < rawSize) {
+                    raw = new byte[rawSize];
+                }
+                inflater.reset();
+                inflater.setInput(compressed.array(), 0, compressedSize);
+                try {
+                    int inflated = 0;
+                    while (inflated < rawSize && !inflater.finished()) {
+                        int n = inflater.inflate(raw, inflated, rawSize - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        inflated += n;
+                    }
+                    if (inflated != rawSize) {
+                        throw new IOException(archive + " has a truncated block");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException(archive + " has a corrupt block: " + e.getMessage());
+                }
+
+                decoder.reset();
+                count += decoder.decode(ByteBuffer.wrap(raw, 0, rawSize), visitor);
+            }
+            return count;
+        } finally {
+            inflater.end();
+            stream.close();
+        }
+    }
+
+    /**
+     * Fills the buffer from the channel, then flips it. Returns false if the channel ended before
+     * any byte was read; throws if it ended part way.
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Prints the archives named on the command line as text, one record per line, in a
+     * logcat-like format.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: LogArchiveReader <archive>...");
+            System.exit(1);
+        }
+        LogCodec.Visitor printer = JournalReader.newTextPrinter(System.out);
+        for (String arg : args) {
+            readArchive(new File(arg), printer);
+        }
+        System.out.flush();
+    }
+}
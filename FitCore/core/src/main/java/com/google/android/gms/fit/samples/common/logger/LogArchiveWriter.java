@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Writes log records to a compressed archive file, for sharing logs pulled from a device. Records
+ * are encoded with {@link LogCodec} into a block, and each full block is compressed and written
+ * straight to the file through a {@link FileChannel}, so memory use stays at a couple of blocks
+ * however much is exported. Read an archive back with {@link LogArchiveReader}, on or off the
+ * device.
+ *
+ * <p>The writer is a {@link LogCodec.FieldVisitor}, so anything which keeps records can be
+ * exported by handing it the writer, key-value pairs included, for instance:</p>
+ *
+ * <pre>
+ * LogArchiveWriter writer = new LogArchiveWriter(file);
+ * try {
+ *     store.read(writer);
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ *
+ * <p>Not thread-safe.</p>
+ */
+public class LogArchiveWriter implements LogCodec.FieldVisitor {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private final FileOutputStream mStream;
+    private final FileChannel mChannel;
+    private final int mBlockSize;
+    private final ByteBuffer mBlock;
+    private final Deflater mDeflater;
+    private final LogCodec.Encoder mEncoder = new LogCodec.Encoder();
+    private byte[] mCompressed;
+    private ByteBuffer mOutput;
+
+    private long mRecordCount;
+    private long mRawBytes;
+    private long mArchiveBytes;
+    private IOException mFailure;
+    private boolean mClosed;
+
+    /**
+     * Creates an archive with {@link #DEFAULT_BLOCK_SIZE} blocks, compressed for speed.
+     *
+     * @param file The file to write. Replaced if it exists.
+     */
+    public LogArchiveWriter(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Creates an archive.
+     *
+     * @param file The file to write. Replaced if it exists.
+     * @param blockSize Raw size of each block in bytes. Larger blocks compress better.
+     * @param level Deflate compression level, from {@link Deflater#BEST_SPEED} to
+     *              {@link Deflater#BEST_COMPRESSION}.
+     */
+    public LogArchiveWriter(File file, int blockSize, int level) throws IOException {
+        if (blockSize < 1024 || blockSize > LogArchiveFormat.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("blockSize out of range: " + blockSize);
+        }
+        mBlockSize = blockSize;
+        mBlock = ByteBuffer.allocate(blockSize);
+        // Deflate can make incompressible data slightly larger; this is well above its bound.
+        mCompressed = new byte[blockSize + blockSize / 8 + 64];
+        mOutput = ByteBuffer.allocateDirect(
+                LogArchiveFormat.BLOCK_HEADER_SIZE + mCompressed.length);
+        mDeflater = new Deflater(level);
+
+        mStream = new FileOutputStream(file);
+        mChannel = mStream.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(LogArchiveFormat.HEADER_SIZE);
+        header.putInt(LogArchiveFormat.MAGIC);
+        header.put(LogArchiveFormat.VERSION);
+        header.position(LogArchiveFormat.HEADER_SIZE);
+        header.flip();
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            mStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a record. Errors are kept and thrown from {@link #close()}, since a visitor cannot
+     * throw them; after one, further records are ignored.
+     */
+    @Override
+    public void onRecord(long timeMillis, int priority, String tag, String msg,
+            String stackTrace) {
+        if (mFailure != null) {
+            return;
+        }
+        try {
+            write(timeMillis, priority, tag, msg, stackTrace, null);
+        } catch (IOException e) {
+            mFailure = e;
+        }
+    }
+
+    /**
+     * Adds a record with key-value pairs. Errors are kept and thrown from {@link #close()}, as
+     * for {@link #onRecord(long, int, String, String, String)}.
+     */
+    @Override
+    public void onRecord(long timeMillis, int priority, String tag, String msg,
+            String stackTrace, LogFields fields) {
+        if (mFailure != null) {
+            return;
+        }
+        try {
+            write(timeMillis, priority, tag, msg, stackTrace, fields);
+        } catch (IOException e) {
+            mFailure = e;
+        }
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param timeMillis When the record was logged, in milliseconds since the epoch.
+     * @param priority Log level of the record.
+     * @param tag Tag of the record, or null.
+     * @param msg The message, or null.
+     * @param stackTrace The formatted stack trace of the logged exception, or null.
+     * @param fields The key-value pairs of the record, or null.
+     */
+    public void write(long timeMillis, int priority, String tag, CharSequence msg,
+            CharSequence stackTrace, LogFields fields) throws IOException {
+        if (mClosed) {
+            throw new IOException("Archive closed");
+        }
+        // The most a record can take, plus the end marker after it.
+        int maxSize = LogCodec.Encoder.maxEncodedSize(tag, msg, stackTrace, fields) + 1;
+        if (maxSize > mBlock.remaining() && mBlock.position() > 0) {
+            flushBlock();
+        }
+        if (maxSize > mBlockSize) {
+            // Too big for any block: drop the stack trace and key-value pairs, then shorten the
+            // message.
+            stackTrace = null;
+            fields = null;
+            int fixedSize = LogCodec.Encoder.maxEncodedSize(tag, null, null) + 1;
+            if (fixedSize > mBlockSize) {
+                return;
+            }
+            if (msg != null && fixedSize + msg.length() * 3 > mBlockSize) {
+                msg = msg.subSequence(0, (mBlockSize - fixedSize) / 3);
+            }
+        }
+        mEncoder.encode(mBlock, timeMillis, priority, tag, msg, stackTrace, fields);
+        mRecordCount++;
+    }
+
+    /**
+     * Writes out the last block and closes the file.
+     *
+     * @throws IOException if writing any record failed.
+     */
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            if (mFailure == null) {
+                if (mBlock.position() > 0) {
+                    flushBlock();
+                }
+                mOutput.clear();
+                mOutput.putInt(0);
+                mOutput.putInt(0);
+                mOutput.flip();
+                writeFully(mOutput);
+            }
+        } catch (IOException e) {
+            mFailure = e;
+        } finally {
+            mClosed = true;
+            mDeflater.end();
+            mStream.close();
+        }
+        if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    /** Returns the number of records written. */
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /** Returns the size of the records before compression, in bytes, so far. */
+    public long getRawBytes() {
+        return mRawBytes;
+    }
+
+    /** Returns the size of the archive file, in bytes, so far. */
+    public long getArchiveBytes() {
+        return mArchiveBytes;
+    }
+
+    private void flushBlock() throws IOException {
+        int rawSize = mBlock.position();
+        mDeflater.reset();
+        mDeflater.setInput(mBlock.array(), 0, rawSize);
+        mDeflater.finish();
+        int compressedSize = 0;
+        while (!mDeflater.finished()) {
+            if (compressedSize == mCompressed.length) {
+                byte[] larger = new byte[mCompressed.length * 2];
+                System.arraycopy(mCompressed, 0, larger, 0, compressedSize);
+                mCompressed = larger;
+            }
+            compressedSize += mDeflater.deflate(mCompressed, compressedSize,
+                    mCompressed.length - compressedSize);
+        }
+
+        int blockBytes = LogArchiveFormat.BLOCK_HEADER_SIZE + compressedSize;
+        if (mOutput.capacity() < blockBytes) {
+            mOutput = ByteBuffer.allocateDirect(blockBytes);
+        }
+        mOutput.clear();
+        mOutput.putInt(rawSize);
+        mOutput.putInt(compressedSize);
+        mOutput.put(mCompressed, 0, compressedSize);
+        mOutput.flip();
+        writeFully(mOutput);
+
+        mRawBytes += rawSize;
+        mBlock.clear();
+        mEncoder.reset();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mArchiveBytes += mChannel.write(buffer);
+        }
+    }
+}
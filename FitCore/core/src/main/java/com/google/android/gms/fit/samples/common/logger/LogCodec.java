@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact binary encoding of log records, shared by the journal on disk ({@link JournalLogNode})
+ * and the in-memory log ({@link CompactLogBuffer}). Has no Android dependencies.
+ *
+ * <p>Encoded data is a sequence of entries, each starting with a one byte type:</p>
+ * <ul>
+ *     <li>{@link #ENTRY_TAG} interns a tag or field key: the next id as a varint, then the
+ *     string. Records refer to it by id from then on.</li>
+ *     <li>{@link #ENTRY_RECORD} is a log record: the priority as one byte, the tag id plus one
+ *     as a varint (0 for no tag), the time since the previous record in milliseconds as a
+ *     zigzag varint, then the message and stack trace as strings.</li>
+ *     <li>{@link #ENTRY_RECORD_WITH_FIELDS} is a log record followed by its {@link LogFields}:
+ *     the number of fields as a varint, then for each the key id as a varint, the type as one
+ *     byte, and the value: a zigzag varint for longs and times, 8 bytes for doubles, a string
+ *     for strings.</li>
+ *     <li>{@link #ENTRY_END}, a zero byte, marks the end of the data.</li>
+ * </ul>
+ *
+ * <p>Strings are their UTF-8 byte count plus one as a varint (0 for null), then the bytes. The
+ * type byte of each entry is written after its body, so data cut short by a crash ends cleanly
+ * at the last complete entry. A typical record costs about six bytes plus its message, instead
+ * of the tag, priority name and timestamp as text.</p>
+ *
+ * <p>Tag ids and time deltas are relative to the start of the data, so an {@link Encoder} is
+ * {@link Encoder#reset() reset} at the start of every segment or block, each of which is then
+ * decoded on its own.</p>
+ */
+public final class LogCodec {
+
+    public static final byte ENTRY_END = 0;
+    public static final byte ENTRY_TAG = 1;
+    public static final byte ENTRY_RECORD = 2;
+    public static final byte ENTRY_RECORD_WITH_FIELDS = 3;
+
+    /** Receives each decoded record. */
+    public interface Visitor {
+        /**
+         * Called once per record, oldest first.
+         * @param timeMillis When the record was logged, in milliseconds since the epoch.
+         * @param priority Log level of the record.
+         * @param tag Tag of the record, or null.
+         * @param msg The message, or null.
+         * @param stackTrace The formatted stack trace of the logged exception, or null.
+         */
+        void onRecord(long timeMillis, int priority, String tag, String msg, String stackTrace);
+    }
+
+    /**
+     * Receives each decoded record with its key-value pairs as they were logged. Plain
+     * {@link Visitor}s get the pairs as text at the end of the message instead.
+     */
+    public interface FieldVisitor extends Visitor {
+        /**
+         * Called instead of {@link #onRecord(long, int, String, String, String)} for records
+         * which have key-value pairs.
+         * @param fields The key-value pairs. Only valid for the duration of the call.
+         */
+        void onRecord(long timeMillis, int priority, String tag, String msg, String stackTrace,
+                LogFields fields);
+    }
+
+    private LogCodec() {
+    }
+
+    /**
+     * Encodes records into a ByteBuffer. Not thread-safe.
+     */
+    public static final class Encoder {
+        private final HashMap<String, Integer> mTagIds = new HashMap<String, Integer>();
+        private long mLastTimeMillis;
+
+        /** Forgets interned tags and the time base, for the start of a new segment or block. */
+        public void reset() {
+            mTagIds.clear();
+            mLastTimeMillis = 0;
+        }
+
+        /**
+         * Returns the most bytes {@link #encode} can write for a record, assuming every character
+         * needs three bytes of UTF-8 and the tag is not interned yet.
+         */
+        public static int maxEncodedSize(String tag, CharSequence msg, CharSequence stackTrace) {
+            // Tag entry: type, id, string. Record entry: type, priority, tag id, time delta.
+            return (1 + 5 + maxStringSize(tag)) + (1 + 1 + 5 + 10)
+                    + maxStringSize(msg) + maxStringSize(stackTrace);
+        }
+
+        /**
+         * Like {@link #maxEncodedSize(String, CharSequence, CharSequence)}, for a record with
+         * key-value pairs.
+         */
+        public static int maxEncodedSize(String tag, CharSequence msg, CharSequence stackTrace,
+                LogFields fields) {
+            int size = maxEncodedSize(tag, msg, stackTrace);
+            if (fields != null && fields.size() > 0) {
+                size += 5;
+                for (int i = 0; i < fields.size(); i++) {
+                    // Key entry, key id, type, then the largest value.
+                    size += (1 + 5 + maxStringSize(fields.getKey(i))) + 5 + 1;
+                    size += fields.getType(i) == LogFields.TYPE_STRING
+                            ? maxStringSize(fields.getString(i)) : 10;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Appends a record, preceded by a tag entry if the tag has not been seen since the last
+         * reset. The buffer must have at least {@link #maxEncodedSize} bytes remaining.
+         */
+        public void encode(ByteBuffer out, long timeMillis, int priority, String tag,
+                CharSequence msg, CharSequence stackTrace) {
+            encode(out, timeMillis, priority, tag, msg, stackTrace, null);
+        }
+
+        /**
+         * Appends a record with key-value pairs, preceded by entries for any tag or key not seen
+         * since the last reset. The buffer must have at least
+         * {@link #maxEncodedSize(String, CharSequence, CharSequence, LogFields)} bytes remaining.
+         *
+         * @param fields The key-value pairs, or null.
+         */
+        public void encode(ByteBuffer out, long timeMillis, int priority, String tag,
+                CharSequence msg, CharSequence stackTrace, LogFields fields) {
+            int tagRef = tag == null ? 0 : intern(out, tag) + 1;
+            int fieldCount = fields == null ? 0 : fields.size();
+            for (int i = 0; i < fieldCount; i++) {
+                intern(out, fields.getKey(i));
+            }
+
+            int start = beginEntry(out);
+            out.put((byte) priority);
+            putVarint(out, tagRef);
+            putVarlong(out, zigzag(timeMillis - mLastTimeMillis));
+            putString(out, msg);
+            putString(out, stackTrace);
+            if (fieldCount > 0) {
+                putVarint(out, fieldCount);
+                for (int i = 0; i < fieldCount; i++) {
+                    int type = fields.getType(i);
+                    putVarint(out, mTagIds.get(fields.getKey(i)));
+                    out.put((byte) type);
+                    if (type == LogFields.TYPE_STRING) {
+                        putString(out, fields.getString(i));
+                    } else if (type == LogFields.TYPE_DOUBLE) {
+                        out.putLong(fields.getNumber(i));
+                    } else {
+                        putVarlong(out, zigzag(fields.getNumber(i)));
+                    }
+                }
+            }
+            commitEntry(out, start, fieldCount > 0 ? ENTRY_RECORD_WITH_FIELDS : ENTRY_RECORD);
+            mLastTimeMillis = timeMillis;
+        }
+
+        /** Returns the id of a tag or key, writing a tag entry for it first if it is new. */
+        private int intern(ByteBuffer out, String s) {
+            Integer id = mTagIds.get(s);
+            if (id == null) {
+                id = mTagIds.size();
+                int start = beginEntry(out);
+                putVarint(out, id);
+                putString(out, s);
+                commitEntry(out, start, ENTRY_TAG);
+                mTagIds.put(s, id);
+            }
+            return id;
+        }
+
+        private static int beginEntry(ByteBuffer out) {
+            int start = out.position();
+            out.put(ENTRY_END);
+            return start;
+        }
+
+        private static void commitEntry(ByteBuffer out, int start, byte type) {
+            // Leave a terminator after the entry, then flip its type byte to make it visible.
+            if (out.hasRemaining()) {
+                out.put(out.position(), ENTRY_END);
+            }
+            out.put(start, type);
+        }
+    }
+
+    /**
+     * Decodes data written by an {@link Encoder}, from the start of a segment or block.
+     * Not thread-safe.
+     */
+    public static final class Decoder {
+        private final ArrayList<String> mTags = new ArrayList<String>();
+        private final LogFields mFields = new LogFields();
+        private final StringBuilder mText = new StringBuilder();
+        private long mLastTimeMillis;
+
+        /** Forgets interned tags and the time base, for the start of a new segment or block. */
+        public void reset() {
+            mTags.clear();
+            mLastTimeMillis = 0;
+        }
+
+        /**
+         * Decodes entries until the end marker or the end of the buffer.
+         *
+         * @return The number of records passed to the visitor.
+         */
+        public int decode(ByteBuffer in, Visitor visitor) {
+            int count = 0;
+            while (in.hasRemaining()) {
+                byte type = in.get();
+                if (type == ENTRY_TAG) {
+                    int id = getVarint(in);
+                    String tag = getString(in);
+                    while (mTags.size() <= id) {
+                        mTags.add(null);
+                    }
+                    mTags.set(id, tag);
+                } else if (type == ENTRY_RECORD || type == ENTRY_RECORD_WITH_FIELDS) {
+                    int priority = in.get();
+                    int tagRef = getVarint(in);
+                    long timeMillis = mLastTimeMillis + unzigzag(getVarlong(in));
+                    String msg = getString(in);
+                    String stackTrace = getString(in);
+                    mLastTimeMillis = timeMillis;
+                    String tag = tagRef == 0 ? null : mTags.get(tagRef - 1);
+                    if (type == ENTRY_RECORD) {
+                        visitor.onRecord(timeMillis, priority, tag, msg, stackTrace);
+                    } else {
+                        decodeFields(in);
+                        if (visitor instanceof FieldVisitor) {
+                            ((FieldVisitor) visitor).onRecord(timeMillis, priority, tag, msg,
+                                    stackTrace, mFields);
+                        } else {
+                            visitor.onRecord(timeMillis, priority, tag, withFields(msg),
+                                    stackTrace);
+                        }
+                    }
+                    count++;
+                } else {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        private void decodeFields(ByteBuffer in) {
+            mFields.clear();
+            int fieldCount = getVarint(in);
+            for (int i = 0; i < fieldCount; i++) {
+                String key = mTags.get(getVarint(in));
+                int type = in.get();
+                if (type == LogFields.TYPE_STRING) {
+                    mFields.add(key, type, 0, getString(in));
+                } else if (type == LogFields.TYPE_DOUBLE) {
+                    mFields.add(key, type, in.getLong(), null);
+                } else {
+                    mFields.add(key, type, unzigzag(getVarlong(in)), null);
+                }
+            }
+        }
+
+        private String withFields(String msg) {
+            mText.setLength(0);
+            if (msg != null && msg.length() > 0) {
+                mText.append(msg).append(' ');
+            }
+            return mFields.appendTo(mText).toString();
+        }
+    }
+
+    /** Returns an upper bound of the encoded size of a string, including its length prefix. */
+    static int maxStringSize(CharSequence s) {
+        return 5 + (s == null ? 0 : s.length() * 3);
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static void putVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static long getVarlong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a string as its UTF-8 byte count plus one, then UTF-8, without allocating. Reserves
+     * the largest varint the count could need up front, so the count can be filled in afterwards.
+     */
+    static void putString(ByteBuffer out, CharSequence s) {
+        if (s == null) {
+            out.put((byte) 0);
+            return;
+        }
+        int length = s.length();
+        int maxBytes = length * 3 + 1;
+        int prefixSize = varintSize(maxBytes);
+        int prefixPosition = out.position();
+        out.position(prefixPosition + prefixSize);
+        int start = out.position();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xf0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        int byteCount = out.position() - start;
+        int end = out.position();
+        int actualPrefixSize = varintSize(byteCount + 1);
+        if (actualPrefixSize < prefixSize) {
+            // Slide the bytes back over the unused part of the reserved prefix.
+            for (int i = 0; i < byteCount; i++) {
+                out.put(prefixPosition + actualPrefixSize + i, out.get(start + i));
+            }
+            end = prefixPosition + actualPrefixSize + byteCount;
+        }
+        out.position(prefixPosition);
+        putVarint(out, byteCount + 1);
+        out.position(end);
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = getVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every JVM supports UTF-8.
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.text.DateFormat;
+import java.util.Arrays;
+
+/**
+ * Typed key-value pairs carried by a {@link LogRecord} next to its message, added with
+ * {@link LogRecord#kv(String, long)} and friends. Numbers are kept as primitives in arrays which
+ * are reused along with the record, so nothing is boxed or formatted on the way down the chain.
+ * Sinks which store records, such as {@link JournalLogNode}, keep the values as they are; sinks
+ * which show text, such as {@code LogView}, render them with {@link #appendTo(StringBuilder)}.
+ *
+ * <p>Not thread-safe. Like the record, the fields are only valid for the duration of a call to
+ * println.</p>
+ */
+public final class LogFields {
+
+    /** A whole number, read with {@link #getLong(int)}. */
+    public static final int TYPE_LONG = 1;
+    /** A floating point number, read with {@link #getDouble(int)}. */
+    public static final int TYPE_DOUBLE = 2;
+    /** A string, read with {@link #getString(int)}. */
+    public static final int TYPE_STRING = 3;
+    /** A time in milliseconds since the epoch, read with {@link #getLong(int)}. */
+    public static final int TYPE_TIME = 4;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Times are rendered in the default locale, like the rest of the on-screen log.
+    private static final ThreadLocal<DateFormat> sDateFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+        }
+    };
+
+    private String[] mKeys = new String[INITIAL_CAPACITY];
+    private byte[] mTypes = new byte[INITIAL_CAPACITY];
+    // Longs as they are, doubles as their raw bits.
+    private long[] mNumbers = new long[INITIAL_CAPACITY];
+    private String[] mStrings = new String[INITIAL_CAPACITY];
+    private int mSize;
+
+    /** Returns the number of fields. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns the key of the field at the given index. */
+    public String getKey(int index) {
+        checkIndex(index);
+        return mKeys[index];
+    }
+
+    /** Returns the type of the field at the given index, one of the TYPE constants. */
+    public int getType(int index) {
+        checkIndex(index);
+        return mTypes[index];
+    }
+
+    /** Returns the value of a {@link #TYPE_LONG} or {@link #TYPE_TIME} field. */
+    public long getLong(int index) {
+        checkIndex(index);
+        return mNumbers[index];
+    }
+
+    /** Returns the value of a {@link #TYPE_DOUBLE} field. */
+    public double getDouble(int index) {
+        checkIndex(index);
+        return Double.longBitsToDouble(mNumbers[index]);
+    }
+
+    /** Returns the value of a {@link #TYPE_STRING} field, which may be null. */
+    public String getString(int index) {
+        checkIndex(index);
+        return mStrings[index];
+    }
+
+    /** Adds a whole number. */
+    public LogFields add(String key, long value) {
+        return add(key, TYPE_LONG, value, null);
+    }
+
+    /** Adds a floating point number. */
+    public LogFields add(String key, double value) {
+        return add(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /** Adds a string. Anything other than a String is copied. */
+    public LogFields add(String key, CharSequence value) {
+        return add(key, TYPE_STRING, 0, value == null ? null : value.toString());
+    }
+
+    /** Adds a time, in milliseconds since the epoch. */
+    public LogFields addTime(String key, long timeMillis) {
+        return add(key, TYPE_TIME, timeMillis, null);
+    }
+
+    /**
+     * Adds a field of the given type, for code which copies fields generically, such as
+     * {@link LogCodec.Decoder}.
+     *
+     * @param number The value of a long, time or double field, doubles as their raw bits.
+     * @param string The value of a string field.
+     */
+    LogFields add(String key, int type, long number, String string) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mNumbers = Arrays.copyOf(mNumbers, capacity);
+            mStrings = Arrays.copyOf(mStrings, capacity);
+        }
+        mKeys[mSize] = key;
+        mTypes[mSize] = (byte) type;
+        mNumbers[mSize] = number;
+        mStrings[mSize] = string;
+        mSize++;
+        return this;
+    }
+
+    /** Returns the raw number of a field, doubles as their bits, for generic copying. */
+    long getNumber(int index) {
+        return mNumbers[index];
+    }
+
+    /** Removes every field, keeping the storage for reuse. */
+    public void clear() {
+        Arrays.fill(mKeys, 0, mSize, null);
+        Arrays.fill(mStrings, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /** Replaces these fields with a copy of another set. */
+    public LogFields copyFrom(LogFields other) {
+        clear();
+        for (int i = 0; i < other.mSize; i++) {
+            add(other.mKeys[i], other.mTypes[i], other.mNumbers[i], other.mStrings[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the fields as text, each as {@code key=value} separated by spaces, with times in
+     * the default locale's short date and medium time format.
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(mKeys[i]).append('=');
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    out.append(mNumbers[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    out.append(Double.longBitsToDouble(mNumbers[i]));
+                    break;
+                case TYPE_TIME:
+                    out.append(sDateFormat.get().format(mNumbers[i]));
+                    break;
+                default:
+                    out.append(mStrings[i]);
+                    break;
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LogFields)) {
+            return false;
+        }
+        LogFields other = (LogFields) o;
+        if (mSize != other.mSize) {
+            return false;
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (mTypes[i] != other.mTypes[i] || mNumbers[i] != other.mNumbers[i]
+                    || !mKeys[i].equals(other.mKeys[i])
+                    || (mStrings[i] == null ? other.mStrings[i] != null
+                            : !mStrings[i].equals(other.mStrings[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mSize;
+        for (int i = 0; i < mSize; i++) {
+            long number = mNumbers[i];
+            hash = hash * 31 + mKeys[i].hashCode();
+            hash = hash * 31 + (int) (number ^ (number >>> 32));
+            hash = hash * 31 + (mStrings[i] == null ? 0 : mStrings[i].hashCode());
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.ArrayList;
+
+/**
+ * A reusable log record, passed by reference through the chain to nodes implementing
+ * {@link LogRecordNode}. The message is a {@link CharSequence}, which can be a String, a caller's
+ * own buffer, or the record's built-in builder, so logging in a loop does not need to create a
+ * new String per line.
+ *
+ * <p>Records are pooled per thread. Get one with {@link #obtain(int, String)}, fill it in, and hand
+ * it to {@link #emit()}, which passes it down the chain and returns it to the pool:</p>
+ *
+ * <pre>
+ * LogRecord.obtain(Log.INFO, TAG).append("Steps: ").append(steps).emit();
+ * </pre>
+ *
+ * <p>Besides the message, a record can carry typed key-value pairs, added with
+ * {@link #kv(String, long)} and friends and kept in its {@link LogFields}. Nodes which display
+ * text render them after the message; nodes which store records keep them as they are.</p>
+ *
+ * <p>Nodes receive the record for the duration of the call only. A node that keeps data for later,
+ * such as {@link AsyncLogNode}, copies what it needs. Nodes which change the record on its way
+ * down, like {@link MessageOnlyLogFilter}, restore it before returning.</p>
+ */
+public final class LogRecord {
+
+    // Records above this many characters are not kept in the pool, to avoid pinning large buffers.
+    private static final int MAX_POOLED_CAPACITY = 4096;
+    private static final int MAX_POOL_SIZE = 4;
+
+    // A small stack per thread, so a node can log from inside println without clobbering the
+    // record being dispatched.
+    private static final ThreadLocal<ArrayList<LogRecord>> sPool =
+            new ThreadLocal<ArrayList<LogRecord>>() {
+                @Override
+                protected ArrayList<LogRecord> initialValue() {
+                    return new ArrayList<LogRecord>(MAX_POOL_SIZE);
+                }
+            };
+
+    private int mPriority;
+    private String mTag;
+    private CharSequence mMessage;
+    private Throwable mThrowable;
+    private long mTimeMillis;
+
+    // Backs the message when it is built with append(), or copied with copyFrom().
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final LogFields mFields = new LogFields();
+
+    /**
+     * Creates a record outside the pool, for nodes which keep their own preallocated records.
+     * Most callers should use {@link #obtain(int, String)} instead.
+     */
+    public LogRecord() {
+    }
+
+    /**
+     * Returns an empty record from the current thread's pool, stamped with the current time.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data. Can be used to organize log statements.
+     */
+    public static LogRecord obtain(int priority, String tag) {
+        ArrayList<LogRecord> pool = sPool.get();
+        int size = pool.size();
+        LogRecord record = size > 0 ? pool.remove(size - 1) : new LogRecord();
+        record.mPriority = priority;
+        record.mTag = tag;
+        record.mTimeMillis = System.currentTimeMillis();
+        return record;
+    }
+
+    /**
+     * Clears the record and returns it to the current thread's pool. The record must not be used
+     * afterwards.
+     */
+    public void recycle() {
+        clear();
+        if (mBuilder.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        ArrayList<LogRecord> pool = sPool.get();
+        if (pool.size() < MAX_POOL_SIZE) {
+            pool.add(this);
+        }
+    }
+
+    /**
+     * Sends this record down the chain set with {@link Log#setLogNode(LogNode)}, then recycles it.
+     */
+    public void emit() {
+        Log.println(this);
+    }
+
+    /**
+     * Passes a record to a node. Nodes implementing {@link LogRecordNode} receive the record as
+     * is; other nodes receive its priority, tag and exception, with the message and any key-value
+     * pairs converted to a String by {@link #getText()}.
+     *
+     * @param node The node to print to. Ignored if null.
+     * @param record The record to print.
+     */
+    public static void dispatch(LogNode node, LogRecord record) {
+        if (node instanceof LogRecordNode) {
+            ((LogRecordNode) node).println(record);
+        } else if (node != null) {
+            node.println(record.mPriority, record.mTag, record.getText(), record.mThrowable);
+        }
+    }
+
+    /**
+     * Resets every field, keeping the builder's storage for reuse.
+     */
+    public void clear() {
+        mPriority = Log.NONE;
+        mTag = null;
+        mMessage = null;
+        mThrowable = null;
+        mTimeMillis = 0;
+        mBuilder.setLength(0);
+        mFields.clear();
+    }
+
+    /**
+     * Sets every field of this record.
+     *
+     * @param priority Log level of the data being logged. Verbose, Error, etc.
+     * @param tag Tag for for the log data.
+     * @param msg The message. Kept by reference, not copied.
+     * @param tr Exception to be logged, or null.
+     */
+    public LogRecord set(int priority, String tag, CharSequence msg, Throwable tr) {
+        mPriority = priority;
+        mTag = tag;
+        mMessage = msg;
+        mThrowable = tr;
+        mTimeMillis = System.currentTimeMillis();
+        return this;
+    }
+
+    /**
+     * Makes this record a copy of another. String messages are immutable and shared; any other
+     * message, and the key-value pairs, are copied into this record's own storage, so the source
+     * can be reused right away.
+     */
+    public LogRecord copyFrom(LogRecord other) {
+        mFields.copyFrom(other.mFields);
+        mPriority = other.mPriority;
+        mTag = other.mTag;
+        mThrowable = other.mThrowable;
+        mTimeMillis = other.mTimeMillis;
+        CharSequence msg = other.mMessage;
+        if (msg == null || msg instanceof String) {
+            mMessage = msg;
+        } else {
+            mBuilder.setLength(0);
+            mBuilder.append(msg);
+            mMessage = mBuilder;
+        }
+        return this;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    public LogRecord setPriority(int priority) {
+        mPriority = priority;
+        return this;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    public LogRecord setTag(String tag) {
+        mTag = tag;
+        return this;
+    }
+
+    /**
+     * Returns the message, or null if none was set. Only valid until the record is recycled.
+     */
+    public CharSequence getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * Returns the message as a String, or null if none was set. Only String messages are
+     * returned without copying.
+     */
+    public String getMessageString() {
+        return mMessage == null ? null : mMessage.toString();
+    }
+
+    /**
+     * Returns the message followed by the key-value pairs as text, or just the message if there
+     * are none, for nodes which need a single String. See {@link LogFields#appendTo}.
+     */
+    public String getText() {
+        if (mFields.size() == 0) {
+            return getMessageString();
+        }
+        StringBuilder text = new StringBuilder();
+        if (mMessage != null && mMessage.length() > 0) {
+            text.append(mMessage).append(' ');
+        }
+        return mFields.appendTo(text).toString();
+    }
+
+    /**
+     * Returns the key-value pairs. Only valid until the record is recycled.
+     */
+    public LogFields getFields() {
+        return mFields;
+    }
+
+    /**
+     * Adds a key-value pair with a whole number value, kept unboxed.
+     */
+    public LogRecord kv(String key, long value) {
+        mFields.add(key, value);
+        return this;
+    }
+
+    /**
+     * Adds a key-value pair with a floating point value, kept unboxed.
+     */
+    public LogRecord kv(String key, double value) {
+        mFields.add(key, value);
+        return this;
+    }
+
+    /**
+     * Adds a key-value pair with a text value.
+     */
+    public LogRecord kv(String key, CharSequence value) {
+        mFields.add(key, value);
+        return this;
+    }
+
+    /**
+     * Adds a key-value pair with a time value, in milliseconds since the epoch. Stored as a
+     * number, and shown as a date and time.
+     */
+    public LogRecord kvTime(String key, long timeMillis) {
+        mFields.addTime(key, timeMillis);
+        return this;
+    }
+
+    /**
+     * Sets the message. The CharSequence is kept by reference, not copied.
+     */
+    public LogRecord setMessage(CharSequence msg) {
+        mMessage = msg;
+        return this;
+    }
+
+    public Throwable getThrowable() {
+        return mThrowable;
+    }
+
+    public LogRecord setThrowable(Throwable tr) {
+        mThrowable = tr;
+        return this;
+    }
+
+    /**
+     * Returns the time the record was obtained or set, in milliseconds since the epoch.
+     */
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public LogRecord setTimeMillis(long timeMillis) {
+        mTimeMillis = timeMillis;
+        return this;
+    }
+
+    /**
+     * Returns the record's own builder, making it the message. Use this to write the message in
+     * place instead of building a String first.
+     */
+    public StringBuilder builder() {
+        if (mMessage != mBuilder) {
+            mBuilder.setLength(0);
+            if (mMessage != null) {
+                mBuilder.append(mMessage);
+            }
+            mMessage = mBuilder;
+        }
+        return mBuilder;
+    }
+
+    public LogRecord append(CharSequence s) {
+        builder().append(s);
+        return this;
+    }
+
+    public LogRecord append(char c) {
+        builder().append(c);
+        return this;
+    }
+
+    public LogRecord append(int i) {
+        builder().append(i);
+        return this;
+    }
+
+    public LogRecord append(long l) {
+        builder().append(l);
+        return this;
+    }
+
+    public LogRecord append(float f) {
+        builder().append(f);
+        return this;
+    }
+
+    public LogRecord append(double d) {
+        builder().append(d);
+        return this;
+    }
+
+    public LogRecord append(Object o) {
+        builder().append(o);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
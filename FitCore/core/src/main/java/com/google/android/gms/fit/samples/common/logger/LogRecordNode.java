@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+/**
+ * A {@link LogNode} which can also take a {@link LogRecord} directly. The record is handed
+ * through the chain by reference, so nodes which only look at or forward the data add no copies
+ * of the message. Nodes not implementing this interface still get the data through
+ * {@link LogNode#println(int, String, String, Throwable)}, see {@link LogRecord#dispatch}.
+ */
+public interface LogRecordNode extends LogNode {
+
+    /**
+     * Instructs the LogNode to print the record provided. The record, and its message, are only
+     * valid for the duration of the call and must be copied if kept.
+     * @param record The record to be logged. Any changes made to it must be undone before
+     *               returning.
+     */
+    public void println(LogRecord record);
+
+}
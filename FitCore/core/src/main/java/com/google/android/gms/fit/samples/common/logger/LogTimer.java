@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the delayed work of the filters in the chain, such as the summary a filter owes once a
+ * run of records has stopped, on one daemon thread shared by all of them. The thread is only
+ * started the first time some work is scheduled.
+ */
+final class LogTimer {
+
+    // Guarded by LogTimer.class.
+    private static ScheduledExecutorService sExecutor;
+
+    private LogTimer() {
+    }
+
+    /**
+     * Runs a task on the timer thread once a delay is up. The task must not block, as it holds up
+     * every other filter's work.
+     */
+    static void schedule(Runnable task, long delayNanos) {
+        getExecutor().schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LogTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
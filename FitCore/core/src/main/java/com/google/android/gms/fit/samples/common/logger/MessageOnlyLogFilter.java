@@ -20,7 +20,7 @@ package com.google.android.gms.fit.samples.common.logger;
  * Useful for situations like on-screen log output where you don't want a lot of metadata displayed,
  * just easy-to-read message updates as they're happening.
  */
-public class MessageOnlyLogFilter implements LogNode {
+public class MessageOnlyLogFilter implements LogRecordNode {
 
     LogNode mNext;
 
@@ -43,6 +43,22 @@ public class MessageOnlyLogFilter implements LogNode {
         }
     }
 
+    @Override
+    public void println(LogRecord record) {
+        if (mNext != null) {
+            // Strip the metadata in place and put it back afterwards, instead of copying.
+            int priority = record.getPriority();
+            String tag = record.getTag();
+            Throwable tr = record.getThrowable();
+            record.setPriority(Log.NONE).setTag(null).setThrowable(null);
+            try {
+                LogRecord.dispatch(getNext(), record);
+            } finally {
+                record.setPriority(priority).setTag(tag).setThrowable(tr);
+            }
+        }
+    }
+
     /**
      * Returns the next LogNode in the chain.
      */
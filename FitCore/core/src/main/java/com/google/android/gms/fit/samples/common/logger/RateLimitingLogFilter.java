@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link LogNode} filter which stops a flood of records from reaching the rest of the chain.
+ * Each tag gets a token bucket: it may log a burst of records at once, after which records are
+ * let through at a steady rate and the rest are suppressed. Records at or above
+ * {@link #setExemptPriority(int) the exempt priority}, errors by default, are never suppressed.
+ *
+ * <p>With {@link #setSampling(int) sampling} turned on, one in every N records over the budget
+ * is still let through, so a flood stays visible without saturating the chain.</p>
+ *
+ * <p>While a tag is being suppressed, a "Suppressed N records" line is sent with that tag at most
+ * once per {@link #setSummaryIntervalMillis(long) summary interval}, and again as soon as the tag
+ * is let through. A flood which stops while over the budget gets its last summary from a timer
+ * once the interval is up, without waiting for another record with the tag. Call
+ * {@link #flush()} to send any outstanding summaries right away.</p>
+ */
+public class RateLimitingLogFilter implements LogRecordNode {
+
+    public static final double DEFAULT_RECORDS_PER_SECOND = 20;
+    public static final int DEFAULT_BURST = 50;
+    public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 5000;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** Rate and burst size of one bucket. */
+    private static final class Budget {
+        final double mRecordsPerNano;
+        final int mBurst;
+
+        Budget(double recordsPerSecond, int burst) {
+            mRecordsPerNano = recordsPerSecond / NANOS_PER_SECOND;
+            mBurst = burst;
+        }
+    }
+
+    /** State of one tag's bucket. */
+    private static final class Bucket {
+        // The tag's own budget, or null to use the default one.
+        Budget mBudget;
+        double mTokens;
+        long mLastRefillNanos;
+        long mSuppressed;
+        long mSampleCounter;
+        long mLastSummaryNanos;
+    }
+
+    // Guarded by this.
+    private Budget mDefaultBudget = new Budget(DEFAULT_RECORDS_PER_SECOND, DEFAULT_BURST);
+    private final HashMap<String, Budget> mTagBudgets = new HashMap<String, Budget>();
+    private final HashMap<String, Bucket> mBuckets = new HashMap<String, Bucket>();
+    private int mSampleEvery;
+    private int mExemptPriority = Log.ERROR;
+    private int mSummaryPriority = Log.WARN;
+    private long mSummaryIntervalNanos = DEFAULT_SUMMARY_INTERVAL_MILLIS * NANOS_PER_MILLI;
+    private long mSuppressedTotal;
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushDueTask = new Runnable() {
+        @Override
+        public void run() {
+            sendSummaries(true);
+        }
+    };
+
+    // For piping:  The next node to receive Log data after this one has done its work.
+    private LogNode mNext;
+
+    /**
+     * Takes the "next" LogNode as a parameter, to simplify chaining.
+     *
+     * @param next The next LogNode in the pipeline.
+     */
+    public RateLimitingLogFilter(LogNode next) {
+        mNext = next;
+    }
+
+    public RateLimitingLogFilter() {
+    }
+
+    /**
+     * Returns the next LogNode in the chain.
+     */
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    /**
+     * Sets the LogNode data will be sent to.
+     */
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Sets the budget of every tag without a budget of its own.
+     *
+     * @param recordsPerSecond Steady rate at which records are let through.
+     * @param burst Number of records which can be let through at once after a quiet spell.
+     */
+    public synchronized void setDefaultBudget(double recordsPerSecond, int burst) {
+        mDefaultBudget = newBudget(recordsPerSecond, burst);
+    }
+
+    /**
+     * Gives a tag a budget of its own, for instance a tighter one for a chatty sensor callback.
+     *
+     * @param tag The tag the budget applies to.
+     * @param recordsPerSecond Steady rate at which records are let through.
+     * @param burst Number of records which can be let through at once after a quiet spell.
+     */
+    public synchronized void setTagBudget(String tag, double recordsPerSecond, int burst) {
+        Budget budget = newBudget(recordsPerSecond, burst);
+        mTagBudgets.put(tag, budget);
+        Bucket bucket = mBuckets.get(tag);
+        if (bucket != null) {
+            bucket.mBudget = budget;
+        }
+    }
+
+    /**
+     * Lets one in every n records over the budget through instead of suppressing them all.
+     *
+     * @param n How many records over the budget make one sample. 0 or 1 turns sampling off.
+     */
+    public synchronized void setSampling(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: " + n);
+        }
+        mSampleEvery = n > 1 ? n : 0;
+    }
+
+    /**
+     * Sets the lowest priority which is never suppressed. Defaults to {@link Log#ERROR}.
+     */
+    public synchronized void setExemptPriority(int priority) {
+        mExemptPriority = priority;
+    }
+
+    /**
+     * Sets the priority the "Suppressed N records" lines are logged at. Defaults to
+     * {@link Log#WARN}.
+     */
+    public synchronized void setSummaryPriority(int priority) {
+        mSummaryPriority = priority;
+    }
+
+    /**
+     * Sets how often a tag which is still being suppressed gets a summary line.
+     */
+    public synchronized void setSummaryIntervalMillis(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("intervalMillis must not be negative: "
+                    + intervalMillis);
+        }
+        mSummaryIntervalNanos = intervalMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns the number of records suppressed since the filter was created.
+     */
+    public synchronized long getSuppressedCount() {
+        return mSuppressedTotal;
+    }
+
+    /**
+     * Sends a summary line for every tag with records suppressed since its last summary.
+     */
+    public void flush() {
+        sendSummaries(false);
+    }
+
+    /**
+     * Passes the log data along if the tag is within its budget.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        if (admit(priority, tag) && mNext != null) {
+            mNext.println(priority, tag, msg, tr);
+        }
+    }
+
+    /**
+     * Passes the record along if its tag is within its budget.
+     * @param record The record to be logged.
+     */
+    @Override
+    public void println(LogRecord record) {
+        if (admit(record.getPriority(), record.getTag())) {
+            LogRecord.dispatch(mNext, record);
+        }
+    }
+
+    /**
+     * Decides whether a record goes through, sending any summary which is due first. The summary
+     * is sent outside the lock, so nodes further down may log back into the chain.
+     */
+    private boolean admit(int priority, String tag) {
+        boolean admitted;
+        long summary = 0;
+        int summaryPriority;
+        synchronized (this) {
+            long now = System.nanoTime();
+            Bucket bucket = mBuckets.get(tag);
+            if (bucket == null) {
+                bucket = new Bucket();
+                bucket.mBudget = mTagBudgets.get(tag);
+                bucket.mTokens = (bucket.mBudget != null ? bucket.mBudget : mDefaultBudget).mBurst;
+                bucket.mLastRefillNanos = now;
+                mBuckets.put(tag, bucket);
+            }
+
+            if (priority >= mExemptPriority) {
+                admitted = true;
+            } else {
+                Budget budget = bucket.mBudget != null ? bucket.mBudget : mDefaultBudget;
+                double tokens = bucket.mTokens
+                        + (now - bucket.mLastRefillNanos) * budget.mRecordsPerNano;
+                bucket.mTokens = Math.min(tokens, budget.mBurst);
+                bucket.mLastRefillNanos = now;
+                if (bucket.mTokens >= 1) {
+                    bucket.mTokens -= 1;
+                    admitted = true;
+                } else if (mSampleEvery > 0 && ++bucket.mSampleCounter % mSampleEvery == 0) {
+                    admitted = true;
+                } else {
+                    admitted = false;
+                    if (bucket.mSuppressed == 0) {
+                        // Start the summary interval at the first suppressed record, and make
+                        // sure the summary is sent even if the tag never logs again.
+                        bucket.mLastSummaryNanos = now;
+                        scheduleFlushLocked(mSummaryIntervalNanos);
+                    }
+                    bucket.mSuppressed++;
+                    mSuppressedTotal++;
+                }
+            }
+
+            if (bucket.mSuppressed > 0 && (admitted
+                    || now - bucket.mLastSummaryNanos >= mSummaryIntervalNanos)) {
+                summary = takeSuppressed(bucket, now);
+            }
+            summaryPriority = mSummaryPriority;
+        }
+
+        if (summary > 0) {
+            sendSummary(summaryPriority, tag, summary);
+        }
+        return admitted;
+    }
+
+    /**
+     * Sends a summary line for every tag with records suppressed since its last summary, or with
+     * dueOnly, for just the tags whose summary interval is up. A timer is set for the rest.
+     */
+    private void sendSummaries(boolean dueOnly) {
+        String[] tags;
+        long[] counts;
+        int priority;
+        synchronized (this) {
+            if (dueOnly) {
+                mFlushScheduled = false;
+            }
+            long now = System.nanoTime();
+            long nextDueNanos = Long.MAX_VALUE;
+            int size = 0;
+            for (Bucket bucket : mBuckets.values()) {
+                if (bucket.mSuppressed > 0) {
+                    long dueNanos = bucket.mLastSummaryNanos + mSummaryIntervalNanos - now;
+                    if (!dueOnly || dueNanos <= 0) {
+                        size++;
+                    } else {
+                        nextDueNanos = Math.min(nextDueNanos, dueNanos);
+                    }
+                }
+            }
+            if (nextDueNanos != Long.MAX_VALUE) {
+                scheduleFlushLocked(nextDueNanos);
+            }
+            if (size == 0) {
+                return;
+            }
+            tags = new String[size];
+            counts = new long[size];
+            int i = 0;
+            for (Map.Entry<String, Bucket> entry : mBuckets.entrySet()) {
+                Bucket bucket = entry.getValue();
+                if (bucket.mSuppressed > 0 && (!dueOnly
+                        || now - bucket.mLastSummaryNanos >= mSummaryIntervalNanos)) {
+                    tags[i] = entry.getKey();
+                    counts[i] = takeSuppressed(bucket, now);
+                    i++;
+                }
+            }
+            priority = mSummaryPriority;
+        }
+        for (int i = 0; i < tags.length; i++) {
+            sendSummary(priority, tags[i], counts[i]);
+        }
+    }
+
+    private void scheduleFlushLocked(long delayNanos) {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            LogTimer.schedule(mFlushDueTask, delayNanos);
+        }
+    }
+
+    private static long takeSuppressed(Bucket bucket, long now) {
+        long suppressed = bucket.mSuppressed;
+        bucket.mSuppressed = 0;
+        bucket.mLastSummaryNanos = now;
+        return suppressed;
+    }
+
+    private void sendSummary(int priority, String tag, long count) {
+        if (mNext != null) {
+            mNext.println(priority, tag,
+                    String.format(Locale.US, "Suppressed %d records", count), null);
+        }
+    }
+
+    private static Budget newBudget(double recordsPerSecond, int burst) {
+        if (!(recordsPerSecond > 0)) {
+            throw new IllegalArgumentException("recordsPerSecond must be positive: "
+                    + recordsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be positive: " + burst);
+        }
+        return new Budget(recordsPerSecond, burst);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats stack traces for every node in the chain, formatting each Throwable only once. A record
+ * carrying an exception reaches logcat, the on-screen view and any journal; without the cache
+ * each of them would format the same, often deep, stack trace again.
+ *
+ * <p>The last few Throwables are remembered by identity. They are held weakly, so the cache does
+ * not keep an exception, and everything its stack trace refers to, alive.</p>
+ *
+ * <p>With {@link #setCollapseRepeats(boolean) collapsing} turned on, a new Throwable whose stack
+ * trace matches one seen before, such as the same failure from a retry loop, is shortened to its
+ * first line and a fingerprint. The first trace with each fingerprint is printed in full, with the
+ * fingerprint at the end, so the short form can be matched up with it.</p>
+ *
+ * <p>Has no Android dependencies, so nodes which also run on a plain JVM can use it.</p>
+ */
+public final class StackTraceCache {
+
+    // Number of Throwables remembered by identity.
+    private static final int IDENTITY_CACHE_SIZE = 16;
+    // Number of fingerprints remembered for collapsing.
+    private static final int FINGERPRINT_CACHE_SIZE = 64;
+
+    // Guarded by the class. Slots are reused round-robin.
+    @SuppressWarnings("unchecked")
+    private static final WeakReference<Throwable>[] mThrowables =
+            (WeakReference<Throwable>[]) new WeakReference<?>[IDENTITY_CACHE_SIZE];
+    private static final String[] mTraces = new String[IDENTITY_CACHE_SIZE];
+    private static int mNextSlot;
+
+    // Guarded by the class. Fingerprint to times seen, least recently seen first.
+    private static final LinkedHashMap<Integer, int[]> mFingerprints =
+            new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > FINGERPRINT_CACHE_SIZE;
+                }
+            };
+    private static volatile boolean mCollapseRepeats;
+
+    private StackTraceCache() {
+    }
+
+    /**
+     * Sets whether stack traces matching one seen before are shortened to a fingerprint.
+     * Off by default.
+     */
+    public static void setCollapseRepeats(boolean collapse) {
+        mCollapseRepeats = collapse;
+    }
+
+    /**
+     * Returns whether stack traces matching one seen before are shortened to a fingerprint.
+     */
+    public static boolean getCollapseRepeats() {
+        return mCollapseRepeats;
+    }
+
+    /**
+     * Returns the stack trace of a Throwable as a string, like Android's
+     * {@code Log.getStackTraceString}: empty for null, and for network failures caused by an
+     * {@link UnknownHostException}, which are common and not worth the log space.
+     */
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        synchronized (StackTraceCache.class) {
+            for (int i = 0; i < IDENTITY_CACHE_SIZE; i++) {
+                WeakReference<Throwable> ref = mThrowables[i];
+                if (ref != null && ref.get() == tr) {
+                    return mTraces[i];
+                }
+            }
+        }
+
+        // Format outside the lock; at worst two threads format the same Throwable at once.
+        String trace = format(tr);
+
+        synchronized (StackTraceCache.class) {
+            int slot = mNextSlot;
+            mNextSlot = (slot + 1) % IDENTITY_CACHE_SIZE;
+            mThrowables[slot] = new WeakReference<Throwable>(tr);
+            mTraces[slot] = trace;
+        }
+        return trace;
+    }
+
+    /**
+     * Forgets every cached trace and fingerprint.
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i < IDENTITY_CACHE_SIZE; i++) {
+            mThrowables[i] = null;
+            mTraces[i] = null;
+        }
+        mFingerprints.clear();
+    }
+
+    private static String format(Throwable tr) {
+        for (Throwable t = tr; t != null; t = t.getCause()) {
+            if (t instanceof UnknownHostException) {
+                return "";
+            }
+        }
+
+        if (!mCollapseRepeats) {
+            return printStackTrace(tr);
+        }
+        int fingerprint = fingerprint(tr);
+        int seen;
+        synchronized (StackTraceCache.class) {
+            int[] count = mFingerprints.get(fingerprint);
+            if (count == null) {
+                count = new int[1];
+                mFingerprints.put(fingerprint, count);
+            }
+            seen = count[0]++;
+        }
+        if (seen == 0) {
+            return printStackTrace(tr)
+                    + String.format(Locale.US, "\t(stack trace #%08x)\n", fingerprint);
+        }
+        return String.format(Locale.US, "%s\n\t... same stack trace as #%08x, seen %d times\n",
+                tr, fingerprint, seen + 1);
+    }
+
+    /**
+     * Hashes the types and stack frames of a Throwable and its causes, leaving out the messages,
+     * which often hold ids or timestamps that differ between otherwise identical failures.
+     */
+    private static int fingerprint(Throwable tr) {
+        int hash = 1;
+        int depth = 0;
+        for (Throwable t = tr; t != null && depth < 16; t = t.getCause(), depth++) {
+            hash = hash * 31 + t.getClass().getName().hashCode();
+            for (StackTraceElement element : t.getStackTrace()) {
+                hash = hash * 31 + element.hashCode();
+            }
+        }
+        return hash;
+    }
+
+    private static String printStackTrace(Throwable tr) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        tr.printStackTrace(printer);
+        printer.flush();
+        return writer.toString();
+    }
+}
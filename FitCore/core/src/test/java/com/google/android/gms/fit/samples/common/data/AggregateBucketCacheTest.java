@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks which days {@link AggregateBucketCache} plans to fetch as it fills up, and which ones a
+ * write takes back out.
+ */
+public class AggregateBucketCacheTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final String STEPS = FitDataType.STEP_COUNT_DELTA.getName();
+    private static final AggregateBucketCache.Key KEY =
+            new AggregateBucketCache.Key(STEPS, 1, LOS_ANGELES);
+
+    // Mid-afternoon on the last day of a week with no daylight saving change.
+    private static final long WEEK_START = midnight(2024, Calendar.JUNE, 3);
+    private static final long TODAY = WEEK_START + 6 * DAY;
+    private static final long NOW = TODAY + 15 * HOUR;
+
+    private final AggregateBucketCache mCache = new AggregateBucketCache();
+
+    @Test
+    public void emptyCacheFetchesWholeRead() {
+        List<AggregateBucketCache.Fetch> fetches = mCache.plan(KEY, WEEK_START, NOW, NOW);
+
+        assertFetches(fetches, WEEK_START, NOW, DAY);
+        assertEquals(7, mCache.getMissCount());
+    }
+
+    @Test
+    public void readStartIsRoundedDownToItsDay() {
+        List<AggregateBucketCache.Fetch> fetches =
+                mCache.plan(KEY, WEEK_START + 9 * HOUR, NOW, NOW);
+
+        assertFetches(fetches, WEEK_START, NOW, DAY);
+    }
+
+    @Test
+    public void closedDaysAreServedFromCache() {
+        fillClosedDays();
+
+        List<AggregateBucketCache.Fetch> fetches = mCache.plan(KEY, WEEK_START, NOW, NOW);
+
+        assertFetches(fetches, TODAY, NOW, DAY);
+        assertEquals(6, mCache.getHitCount());
+        assertNotNull(mCache.get(KEY, WEEK_START));
+    }
+
+    @Test
+    public void planHandsOutCachedDaysWhichLaterWritesCannotTakeBack() {
+        fillClosedDays();
+        Map<Long, List<FitDataPoint>> cached = new HashMap<Long, List<FitDataPoint>>();
+
+        mCache.plan(KEY, WEEK_START, NOW, NOW, cached);
+        mCache.invalidate(STEPS, WEEK_START, TODAY);
+
+        assertEquals(6, cached.size());
+        for (long day = WEEK_START; day < TODAY; day += DAY) {
+            assertNotNull(cached.get(day));
+        }
+        assertNull(cached.get(TODAY));
+    }
+
+    @Test
+    public void openDayIsNeverCached() {
+        long generation = mCache.getGeneration();
+
+        assertFalse(mCache.put(KEY, TODAY, Collections.<FitDataPoint>emptyList(), generation,
+                NOW));
+
+        assertNull(mCache.get(KEY, TODAY));
+    }
+
+    @Test
+    public void cachedDayIsFetchedAgainWhileNowIsBeforeItsEnd() {
+        fillClosedDays();
+
+        // As if the clock went back: the last cached day would be open again.
+        List<AggregateBucketCache.Fetch> fetches =
+                mCache.plan(KEY, WEEK_START, NOW, TODAY - HOUR);
+
+        assertFetches(fetches, TODAY - DAY, NOW, DAY);
+    }
+
+    @Test
+    public void invalidateDropsOnlyOverlappedDays() {
+        fillClosedDays();
+
+        assertEquals(1, mCache.invalidate(STEPS, WEEK_START + 2 * DAY + HOUR,
+                WEEK_START + 2 * DAY + 2 * HOUR));
+
+        List<AggregateBucketCache.Fetch> fetches = mCache.plan(KEY, WEEK_START, NOW, NOW);
+        assertEquals(2, fetches.size());
+        assertFetch(fetches.get(0), WEEK_START + 2 * DAY, WEEK_START + 3 * DAY, DAY);
+        assertFetch(fetches.get(1), TODAY, NOW, DAY);
+    }
+
+    @Test
+    public void invalidateAcrossMidnightDropsBothDays() {
+        fillClosedDays();
+
+        assertEquals(2, mCache.invalidate(STEPS, WEEK_START + DAY - HOUR,
+                WEEK_START + DAY + HOUR));
+
+        List<AggregateBucketCache.Fetch> fetches = mCache.plan(KEY, WEEK_START, NOW, NOW);
+        assertEquals(2, fetches.size());
+        assertFetch(fetches.get(0), WEEK_START, WEEK_START + 2 * DAY, DAY);
+    }
+
+    @Test
+    public void instantaneousWriteDropsItsDay() {
+        fillClosedDays();
+
+        assertEquals(1, mCache.invalidate(STEPS, WEEK_START + 3 * DAY,
+                WEEK_START + 3 * DAY));
+
+        assertNull(mCache.get(KEY, WEEK_START + 3 * DAY));
+        assertNotNull(mCache.get(KEY, WEEK_START + 2 * DAY));
+    }
+
+    @Test
+    public void invalidateOfAnotherTypeKeepsDays() {
+        fillClosedDays();
+
+        assertEquals(0, mCache.invalidate(FitDataType.SPEED.getName(), WEEK_START, NOW));
+
+        assertFetches(mCache.plan(KEY, WEEK_START, NOW, NOW), TODAY, NOW, DAY);
+    }
+
+    @Test
+    public void fetchOverlappingLaterWriteIsNotStored() {
+        long generation = mCache.getGeneration();
+        mCache.invalidate(STEPS, WEEK_START + HOUR, WEEK_START + 2 * HOUR);
+
+        assertFalse(mCache.put(KEY, WEEK_START, Collections.<FitDataPoint>emptyList(),
+                generation, NOW));
+        // The same fetch's other days were not written to, so they are kept.
+        assertTrue(mCache.put(KEY, WEEK_START + DAY, Collections.<FitDataPoint>emptyList(),
+                generation, NOW));
+    }
+
+    @Test
+    public void daylightSavingDayIsFetchedOnItsOwn() {
+        long start = midnight(2024, Calendar.MARCH, 8);
+        long shortDay = midnight(2024, Calendar.MARCH, 10);
+        long nextDay = midnight(2024, Calendar.MARCH, 11);
+        long end = midnight(2024, Calendar.MARCH, 13);
+
+        List<AggregateBucketCache.Fetch> fetches = mCache.plan(KEY, start, end, end + DAY);
+
+        assertEquals(3, fetches.size());
+        assertFetch(fetches.get(0), start, shortDay, DAY);
+        assertFetch(fetches.get(1), shortDay, nextDay, 23 * HOUR);
+        assertFetch(fetches.get(2), nextDay, end, DAY);
+    }
+
+    /** Caches each day of the week but today, each with no data. */
+    private void fillClosedDays() {
+        long generation = mCache.getGeneration();
+        for (long day = WEEK_START; day < TODAY; day += DAY) {
+            assertTrue(mCache.put(KEY, day, Collections.<FitDataPoint>emptyList(), generation,
+                    NOW));
+        }
+    }
+
+    private static void assertFetches(List<AggregateBucketCache.Fetch> fetches,
+            long startTimeMillis, long endTimeMillis, long bucketMillis) {
+        assertEquals(fetches.toString(), 1, fetches.size());
+        assertFetch(fetches.get(0), startTimeMillis, endTimeMillis, bucketMillis);
+    }
+
+    private static void assertFetch(AggregateBucketCache.Fetch fetch, long startTimeMillis,
+            long endTimeMillis, long bucketMillis) {
+        assertEquals(startTimeMillis, fetch.getStartTimeMillis());
+        assertEquals(endTimeMillis, fetch.getEndTimeMillis());
+        assertEquals(bucketMillis, fetch.getBucketMillis());
+    }
+
+    private static long midnight(int year, int month, int day) {
+        Calendar cal = Calendar.getInstance(LOS_ANGELES);
+        cal.clear();
+        cal.set(year, month, day);
+        return cal.getTimeInMillis();
+    }
+}
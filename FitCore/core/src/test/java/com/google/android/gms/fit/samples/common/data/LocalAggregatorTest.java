@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks how {@link LocalAggregator} splits step counts across bucket boundaries, and how it
+ * lays out calendar days across daylight saving time changes.
+ */
+public class LocalAggregatorTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+    // Midnight on a day with no daylight saving change.
+    private static final long T0 = midnight(2024, Calendar.JUNE, 3);
+
+    @Test
+    public void pointInsideBucketCountsWhole() {
+        List<LocalAggregator.Bucket> buckets = bucketHourly(3, steps(T0 + 10 * MINUTE,
+                T0 + 20 * MINUTE, 7));
+
+        assertSteps(buckets, 7L, null, null);
+    }
+
+    @Test
+    public void pointAcrossBoundaryIsProrated() {
+        // A quarter of the point falls in the first hour, the rest in the second.
+        List<LocalAggregator.Bucket> buckets = bucketHourly(3, steps(T0 + 45 * MINUTE,
+                T0 + HOUR + 45 * MINUTE, 40));
+
+        assertSteps(buckets, 10L, 30L, null);
+    }
+
+    @Test
+    public void proratedTotalsAreRoundedPerBucket() {
+        // 10 steps over three hours: each hour gets 3.33, rounded to 3.
+        List<LocalAggregator.Bucket> buckets = bucketHourly(3, steps(T0, T0 + 3 * HOUR, 10));
+
+        assertSteps(buckets, 3L, 3L, 3L);
+    }
+
+    @Test
+    public void pointEndingOnBoundaryStaysInItsBucket() {
+        List<LocalAggregator.Bucket> buckets = bucketHourly(2, steps(T0, T0 + HOUR, 50));
+
+        assertSteps(buckets, 50L, null);
+    }
+
+    @Test
+    public void instantaneousPointOnBoundaryCountsTowardsLaterBucket() {
+        List<LocalAggregator.Bucket> buckets = bucketHourly(2, steps(T0 + HOUR, T0 + HOUR, 5));
+
+        assertSteps(buckets, null, 5L);
+    }
+
+    @Test
+    public void pointsOutsideBoundsAreIgnored() {
+        List<LocalAggregator.Bucket> buckets = bucketHourly(1,
+                steps(T0 - 30 * MINUTE, T0 + 30 * MINUTE, 20),
+                steps(T0 + 30 * MINUTE, T0 + 90 * MINUTE, 20));
+
+        assertSteps(buckets, 20L);
+    }
+
+    @Test
+    public void calendarDaysAcrossSpringForwardIncludeA23HourDay() {
+        long start = midnight(2024, Calendar.MARCH, 9);
+        long end = midnight(2024, Calendar.MARCH, 12);
+
+        long[] bounds = LocalAggregator.getCalendarBounds(start, end, LOS_ANGELES,
+                Calendar.DAY_OF_MONTH, 1);
+
+        assertArrayEquals(new long[] {start, start + 24 * HOUR, start + 47 * HOUR,
+                start + 71 * HOUR}, bounds);
+        assertEquals(midnight(2024, Calendar.MARCH, 11), bounds[2]);
+    }
+
+    @Test
+    public void calendarDaysAcrossFallBackIncludeA25HourDay() {
+        long start = midnight(2024, Calendar.NOVEMBER, 2);
+        long end = midnight(2024, Calendar.NOVEMBER, 5);
+
+        long[] bounds = LocalAggregator.getCalendarBounds(start, end, LOS_ANGELES,
+                Calendar.DAY_OF_MONTH, 1);
+
+        assertArrayEquals(new long[] {start, start + 24 * HOUR, start + 49 * HOUR,
+                start + 73 * HOUR}, bounds);
+        assertEquals(midnight(2024, Calendar.NOVEMBER, 4), bounds[2]);
+    }
+
+    @Test
+    public void calendarBoundsCutLastPeriodShort() {
+        long[] bounds = LocalAggregator.getCalendarBounds(T0, T0 + 30 * HOUR, LOS_ANGELES,
+                Calendar.DAY_OF_MONTH, 1);
+
+        assertArrayEquals(new long[] {T0, T0 + 24 * HOUR, T0 + 30 * HOUR}, bounds);
+    }
+
+    @Test
+    public void shortDayTotalsWholeDaysOfSteps() {
+        long start = midnight(2024, Calendar.MARCH, 10);
+        long[] bounds = LocalAggregator.getCalendarBounds(start, start + 47 * HOUR, LOS_ANGELES,
+                Calendar.DAY_OF_MONTH, 1);
+        // A point spanning the end of the 23 hour day, split 1:3 either side of midnight.
+        List<FitDataPoint> points = new ArrayList<FitDataPoint>();
+        points.add(steps(start, start + 23 * HOUR, 2300));
+        points.add(steps(start + 22 * HOUR, start + 26 * HOUR, 400));
+
+        List<LocalAggregator.Bucket> buckets = LocalAggregator.bucketByTime(
+                FitDataBatch.of(FitDataType.STEP_COUNT_DELTA, null, points), bounds);
+
+        assertSteps(buckets, 2400L, 300L);
+        assertEquals(23 * HOUR, buckets.get(0).getEndTimeMillis()
+                - buckets.get(0).getStartTimeMillis());
+    }
+
+    private static List<LocalAggregator.Bucket> bucketHourly(int hours, FitDataPoint... points) {
+        List<FitDataPoint> list = new ArrayList<FitDataPoint>();
+        for (FitDataPoint point : points) {
+            list.add(point);
+        }
+        long[] bounds = LocalAggregator.getTimeBounds(T0, T0 + hours * HOUR, HOUR);
+        return LocalAggregator.bucketByTime(
+                FitDataBatch.of(FitDataType.STEP_COUNT_DELTA, null, list), bounds);
+    }
+
+    private static FitDataPoint steps(long startTimeMillis, long endTimeMillis, int steps) {
+        return new FitDataPoint(FitDataType.STEP_COUNT_DELTA, startTimeMillis, endTimeMillis,
+                null, steps);
+    }
+
+    /** Checks the step total of each bucket, null for a bucket with no data. */
+    private static void assertSteps(List<LocalAggregator.Bucket> buckets, Long... expected) {
+        assertEquals(expected.length, buckets.size());
+        for (int i = 0; i < expected.length; i++) {
+            FitDataPoint point = buckets.get(i).getPoint();
+            if (expected[i] == null) {
+                assertNull("bucket " + i, point);
+            } else {
+                assertEquals("bucket " + i, expected[i].longValue(), point.getInt(0));
+            }
+        }
+    }
+
+    private static long midnight(int year, int month, int day) {
+        Calendar cal = Calendar.getInstance(LOS_ANGELES);
+        cal.clear();
+        cal.set(year, month, day);
+        return cal.getTimeInMillis();
+    }
+}
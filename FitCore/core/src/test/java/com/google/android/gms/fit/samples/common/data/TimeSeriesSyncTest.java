@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link TimeSeriesSync} and its {@link TimeSeriesStore} against a
+ * {@link FakeHistorySource}.
+ */
+public class TimeSeriesSyncTest {
+
+    private static final FitDataType STEPS = FitDataType.STEP_COUNT_DELTA;
+    private static final String STEPS_NAME = STEPS.getName();
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long WINDOW = TimeUnit.DAYS.toMillis(7);
+    private static final long NOW = 100 * TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private FakeHistorySource mSource;
+    private TimeSeriesStore mStore;
+    private TimeSeriesSync mSync;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "steps.fts");
+        mSource = new FakeHistorySource();
+        mStore = new TimeSeriesStore(mFile);
+        mSync = new TimeSeriesSync(mStore, mSource, WINDOW);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Test
+    public void firstSyncReadsInitialWindow() throws IOException {
+        mSource.insert(steps(NOW - 2 * HOUR, "phone", 100));
+        mSource.insert(steps(NOW - WINDOW - 2 * HOUR, "phone", 50));
+
+        assertEquals(1, mSync.sync(STEPS, NOW));
+
+        assertRequests(NOW - WINDOW, NOW);
+        assertEquals(NOW, mStore.getWatermark(STEPS_NAME));
+        assertEquals(1, mStore.size());
+    }
+
+    @Test
+    public void nextSyncReadsFromWatermark() throws IOException {
+        mSource.insert(steps(NOW - 2 * HOUR, "phone", 100));
+        mSync.sync(STEPS, NOW);
+        mSource.clearRequests();
+        // A new source shows up after the first sync, and is read from the same watermark.
+        mSource.insert(steps(NOW + HOUR, "watch", 30));
+        mSource.insert(steps(NOW + HOUR, "phone", 20));
+
+        assertEquals(2, mSync.sync(STEPS, NOW + 3 * HOUR));
+
+        assertRequests(NOW, NOW + 3 * HOUR);
+        assertEquals(NOW + 3 * HOUR, mStore.getWatermark(STEPS_NAME));
+        assertEquals(3, mStore.query(STEPS_NAME, NOW - WINDOW, NOW + 3 * HOUR).size());
+    }
+
+    @Test
+    public void syncAtWatermarkReadsNothing() throws IOException {
+        mSync.sync(STEPS, NOW);
+        mSource.clearRequests();
+
+        assertEquals(0, mSync.sync(STEPS, NOW));
+
+        assertEquals(0, mSource.getRequests().size());
+    }
+
+    @Test
+    public void failedSyncLeavesWatermark() throws IOException {
+        mSync.sync(STEPS, NOW);
+        mSource.insert(steps(NOW + HOUR, "phone", 20));
+        mSource.failNextReads(1);
+        try {
+            mSync.sync(STEPS, NOW + 2 * HOUR);
+            fail("Expected the read to fail");
+        } catch (IOException expected) {
+        }
+        assertEquals(NOW, mStore.getWatermark(STEPS_NAME));
+        mSource.clearRequests();
+
+        assertEquals(1, mSync.sync(STEPS, NOW + 2 * HOUR));
+
+        assertRequests(NOW, NOW + 2 * HOUR);
+    }
+
+    @Test
+    public void watermarkSurvivesReopen() throws IOException {
+        mSource.insert(steps(NOW - HOUR, "phone", 100));
+        mSync.sync(STEPS, NOW);
+        mStore.close();
+
+        mStore = new TimeSeriesStore(mFile);
+        mSync = new TimeSeriesSync(mStore, mSource, WINDOW);
+
+        assertEquals(NOW, mStore.getWatermark(STEPS_NAME));
+        assertEquals(NOW, mSync.getSyncStart(STEPS_NAME, NOW + HOUR));
+        assertEquals(1, mStore.size());
+    }
+
+    @Test
+    public void resyncReplacesRangeAndKeepsWatermark() throws IOException {
+        mSource.insert(steps(NOW - 3 * HOUR, "phone", 100));
+        mSource.insert(steps(NOW - HOUR, "phone", 40));
+        mSync.sync(STEPS, NOW);
+        mSource.delete(STEPS, NOW - 2 * HOUR, NOW);
+        mSource.insert(steps(NOW - HOUR, "phone", 45));
+
+        assertEquals(1, mSync.resync(STEPS, NOW - 2 * HOUR, NOW));
+
+        List<FitDataPoint> points = mStore.query(STEPS_NAME, NOW - WINDOW, NOW);
+        assertEquals(2, points.size());
+        assertEquals(45, points.get(1).getInt(0));
+        assertEquals(NOW, mStore.getWatermark(STEPS_NAME));
+    }
+
+    private static FitDataPoint steps(long startTimeMillis, String source, int steps) {
+        return new FitDataPoint(STEPS, startTimeMillis, startTimeMillis + HOUR / 2, source, steps);
+    }
+
+    private void assertRequests(long startTimeMillis, long endTimeMillis) {
+        List<FakeHistorySource.Request> requests = mSource.getRequests();
+        assertEquals(requests.toString(), 1, requests.size());
+        assertEquals(startTimeMillis, requests.get(0).getStartTimeMillis());
+        assertEquals(endTimeMillis, requests.get(0).getEndTimeMillis());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Sends runs of records through a {@link DuplicateCollapsingLogFilter} and checks what reaches
+ * the node after it.
+ */
+public class DuplicateCollapsingLogFilterTest {
+
+    private static final String TAG = "History";
+
+    private RecordingLogNode mNext;
+    private DuplicateCollapsingLogFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mNext = new RecordingLogNode();
+        mFilter = new DuplicateCollapsingLogFilter(mNext);
+    }
+
+    @Test
+    public void differentRecordEndsTheRun() {
+        repeat("read failed", 3);
+        mFilter.println(Log.INFO, TAG, "read done", null);
+
+        assertEquals(Arrays.asList("read failed", "Last message repeated 2 times", "read done"),
+                mNext.getMessages());
+        assertEquals(2, mFilter.getCollapsedCount());
+    }
+
+    @Test
+    public void trailingRunIsCountedWhenItsWindowRunsOut() throws InterruptedException {
+        mFilter.setWindowMillis(50);
+
+        repeat("read failed", 3);
+
+        assertTrue(mNext.awaitMessage("Last message repeated 2 times", 5000));
+        assertEquals(2, mNext.getMessages().size());
+    }
+
+    @Test
+    public void flushCountsTheRunRightAway() {
+        mFilter.setWindowMillis(60000);
+        repeat("read failed", 2);
+
+        mFilter.flush();
+        mFilter.flush();
+
+        assertEquals(Arrays.asList("read failed", "Last message repeated 1 time"),
+                mNext.getMessages());
+    }
+
+    private void repeat(String msg, int count) {
+        for (int i = 0; i < count; i++) {
+            mFilter.println(Log.WARN, TAG, msg, null);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Passes records through a {@link FanOutLogNode} and checks which children get them.
+ */
+public class FanOutLogNodeTest {
+
+    private static final String TAG = "Sensor";
+
+    private RecordingLogNode mFirst;
+    private RecordingLogNode mLast;
+    private FanOutLogNode mFanOut;
+
+    @Before
+    public void setUp() {
+        mFirst = new RecordingLogNode();
+        mLast = new RecordingLogNode();
+        mFanOut = new FanOutLogNode(mFirst, new ThrowingLogNode(), mLast);
+    }
+
+    @Test
+    public void childrenAfterAThrowingChildStillGetTheLogData() {
+        mFanOut.println(Log.INFO, TAG, "Listener registered!", null);
+
+        assertEquals(Collections.singletonList("Listener registered!"), mFirst.getMessages());
+        assertEquals(Collections.singletonList("Listener registered!"), mLast.getMessages());
+    }
+
+    @Test
+    public void childrenAfterAThrowingChildStillGetTheRecord() {
+        mFanOut.println(new LogRecord().set(Log.INFO, TAG, "Detected DataPoint", null));
+        mFanOut.println(Log.INFO, TAG, "Listener registered!", null);
+
+        assertEquals(Arrays.asList("Detected DataPoint", "Listener registered!"),
+                mLast.getMessages());
+    }
+
+    @Test
+    public void removedChildGetsNothing() {
+        mFanOut.removeChild(mFirst);
+
+        mFanOut.println(Log.INFO, TAG, "Listener registered!", null);
+
+        assertEquals(Collections.<String>emptyList(), mFirst.getMessages());
+        assertEquals(2, mFanOut.getChildren().length);
+    }
+
+    /** Child standing in for a broken sink, such as a file on a full disk. */
+    private static final class ThrowingLogNode implements LogNode {
+        @Override
+        public void println(int priority, String tag, String msg, Throwable tr) {
+            throw new IllegalStateException("No space left on device");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes journals with a {@link JournalLogNode} and reads them back with {@link JournalReader}.
+ */
+public class JournalLogNodeTest {
+
+    private static final String TAG = "History";
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsReadBackAsWritten() throws IOException {
+        File directory = mFolder.newFolder("journal");
+        JournalLogNode journal = new JournalLogNode(directory);
+
+        journal.println(Log.INFO, TAG, "Data insert was successful!", null);
+        journal.println(Log.ERROR, TAG, "There was a problem inserting the dataset.",
+                new IOException("Timed out"));
+        journal.println(Log.event(TAG).setMessage("Data point").kv("steps", 950));
+        journal.close();
+
+        List<Entry> entries = read(directory);
+        assertEquals(3, entries.size());
+        assertEquals(Log.INFO, entries.get(0).mPriority);
+        assertEquals(TAG, entries.get(0).mTag);
+        assertEquals("Data insert was successful!", entries.get(0).mMessage);
+        assertNull(entries.get(0).mStackTrace);
+        assertEquals(Log.ERROR, entries.get(1).mPriority);
+        assertNotNull(entries.get(1).mStackTrace);
+        assertEquals("Data point steps=950", entries.get(2).mMessage);
+    }
+
+    @Test
+    public void rotationKeepsTheNewestSegments() throws IOException {
+        File directory = mFolder.newFolder("journal");
+        JournalLogNode journal = new JournalLogNode(directory, SEGMENT_SIZE, 3);
+
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            journal.println(Log.INFO, TAG, "Record " + i, null);
+        }
+        journal.close();
+
+        assertEquals(3, JournalFormat.listSegments(directory).length);
+        List<Entry> entries = read(directory);
+        // The oldest records went with the deleted segments; the rest are all there, in order.
+        int first = count - entries.size();
+        assertTrue("No segment was deleted", first > 0);
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("Record " + (first + i), entries.get(i).mMessage);
+        }
+    }
+
+    @Test
+    public void reopenedJournalContinuesAfterTheOldSegments() throws IOException {
+        File directory = mFolder.newFolder("journal");
+        JournalLogNode journal = new JournalLogNode(directory, SEGMENT_SIZE, 4);
+        journal.println(Log.INFO, TAG, "Before", null);
+        journal.close();
+
+        journal = new JournalLogNode(directory, SEGMENT_SIZE, 4);
+        journal.println(Log.INFO, TAG, "After", null);
+        journal.close();
+
+        assertEquals(2, JournalFormat.listSegments(directory).length);
+        List<Entry> entries = read(directory);
+        assertEquals(2, entries.size());
+        assertEquals("Before", entries.get(0).mMessage);
+        assertEquals("After", entries.get(1).mMessage);
+    }
+
+    @Test
+    public void segmentOfAnotherVersionIsRejected() throws IOException {
+        File directory = mFolder.newFolder("journal");
+        JournalLogNode journal = new JournalLogNode(directory, SEGMENT_SIZE, 1);
+        journal.println(Log.INFO, TAG, "Ready", null);
+        journal.close();
+        File segment = JournalFormat.listSegments(directory)[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(4);
+            file.write(JournalFormat.VERSION + 1);
+        } finally {
+            file.close();
+        }
+
+        try {
+            JournalReader.readSegment(segment, new Recorder());
+            fail("Read a segment of an unknown version");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static List<Entry> read(File directory) throws IOException {
+        Recorder recorder = new Recorder();
+        JournalReader.readJournal(directory, recorder);
+        return recorder.mEntries;
+    }
+
+    /** A record as decoded from a journal. */
+    private static final class Entry {
+        final int mPriority;
+        final String mTag;
+        final String mMessage;
+        final String mStackTrace;
+
+        Entry(int priority, String tag, String msg, String stackTrace) {
+            mPriority = priority;
+            mTag = tag;
+            mMessage = msg;
+            mStackTrace = stackTrace;
+        }
+    }
+
+    private static final class Recorder implements LogCodec.Visitor {
+        final List<Entry> mEntries = new ArrayList<Entry>();
+
+        @Override
+        public void onRecord(long timeMillis, int priority, String tag, String msg,
+                String stackTrace) {
+            mEntries.add(new Entry(priority, tag, msg, stackTrace));
+        }
+    }
+}
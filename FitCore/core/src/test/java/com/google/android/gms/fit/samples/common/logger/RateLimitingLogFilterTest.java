@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Floods a {@link RateLimitingLogFilter} and checks what reaches the node after it.
+ */
+public class RateLimitingLogFilterTest {
+
+    private static final String TAG = "Sensor";
+
+    private RecordingLogNode mNext;
+    private RateLimitingLogFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mNext = new RecordingLogNode();
+        mFilter = new RateLimitingLogFilter(mNext);
+        // Two records at once, and next to nothing after that.
+        mFilter.setDefaultBudget(0.001, 2);
+    }
+
+    @Test
+    public void recordsOverTheBudgetAreSuppressed() {
+        flood(5);
+
+        assertEquals(Arrays.asList("0", "1"), mNext.getMessages());
+        assertEquals(3, mFilter.getSuppressedCount());
+    }
+
+    @Test
+    public void trailingBurstIsSummarizedWithoutAnotherRecord() throws InterruptedException {
+        mFilter.setSummaryIntervalMillis(50);
+
+        flood(5);
+
+        assertTrue(mNext.awaitMessage("Suppressed 3 records", 5000));
+        assertEquals(3, mNext.getMessages().size());
+    }
+
+    @Test
+    public void flushSummarizesRightAway() {
+        mFilter.setSummaryIntervalMillis(60000);
+        flood(5);
+
+        mFilter.flush();
+        mFilter.flush();
+
+        assertEquals(Arrays.asList("0", "1", "Suppressed 3 records"), mNext.getMessages());
+    }
+
+    @Test
+    public void exemptRecordsAreNeverSuppressed() {
+        flood(2);
+
+        mFilter.println(Log.ERROR, TAG, "failed", null);
+
+        assertEquals(Arrays.asList("0", "1", "failed"), mNext.getMessages());
+        assertEquals(0, mFilter.getSuppressedCount());
+    }
+
+    private void flood(int count) {
+        for (int i = 0; i < count; i++) {
+            mFilter.println(Log.INFO, TAG, String.valueOf(i), null);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LogNode} at the end of a chain under test which keeps the messages it is sent, and can
+ * wait for one sent from another thread.
+ */
+class RecordingLogNode implements LogNode {
+
+    // Guarded by this.
+    private final List<String> mMessages = new ArrayList<String>();
+
+    @Override
+    public synchronized void println(int priority, String tag, String msg, Throwable tr) {
+        mMessages.add(msg);
+        notifyAll();
+    }
+
+    /**
+     * Returns a copy of the messages sent so far.
+     */
+    public synchronized List<String> getMessages() {
+        return new ArrayList<String>(mMessages);
+    }
+
+    /**
+     * Waits until a message has been sent, and returns whether it was before the timeout.
+     */
+    public synchronized boolean awaitMessage(String msg, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!mMessages.contains(msg)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.gms.fit.samples.common.logger;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.TabStopSpan;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Styles and lays out lines of log output on a background thread before they reach the UI thread,
+ * for {@link LogView}. Each line is coloured by priority and given tab stops, so the tag and
+ * message columns line up, and is then laid out with the view's paint and width. The finished
+ * layouts are handed to a {@link LineBatcher} in the order the lines were added, so the UI thread
+ * only has to draw them.
+ */
+class LineStyler {
+
+    /** A line of log output, with its layout. */
+    static final class StyledLine {
+        final int mPriority;
+        final String mLine;
+        final Layout mLayout;
+
+        StyledLine(int priority, String line, Layout layout) {
+            mPriority = priority;
+            mLine = line;
+            mLayout = layout;
+        }
+    }
+
+    // Colour of each priority, indexed by priority. 0 leaves the view's own text colour.
+    private static final int[] PRIORITY_COLORS = new int[Log.ASSERT + 1];
+    static {
+        PRIORITY_COLORS[Log.VERBOSE] = Color.GRAY;
+        PRIORITY_COLORS[Log.DEBUG] = Color.GRAY;
+        PRIORITY_COLORS[Log.WARN] = Color.rgb(0xc0, 0x70, 0x00);
+        PRIORITY_COLORS[Log.ERROR] = Color.rgb(0xc0, 0x00, 0x00);
+        PRIORITY_COLORS[Log.ASSERT] = Color.rgb(0xc0, 0x00, 0x00);
+    }
+
+    // Room left for the tag column, in widths of "m".
+    private static final int TAG_COLUMN_EMS = 16;
+
+    // One thread shared by every view, so lines from one view are styled in order. It is started
+    // when needed and stops after idling, so it costs nothing while nothing is logged.
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(1, 1,
+            10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "LineStyler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /** The view's paint and text width, as last seen on the UI thread. */
+    private static final class Metrics {
+        // A copy, which the lines laid out with these metrics also draw with.
+        final TextPaint mPaint;
+        final float mTextSize;
+        final Typeface mTypeface;
+        final int mColor;
+        final int mWidth;
+        final int mTagStop;
+        final int mMessageStop;
+
+        Metrics(TextPaint paint, int width) {
+            mPaint = new TextPaint(paint);
+            mTextSize = paint.getTextSize();
+            mTypeface = paint.getTypeface();
+            mColor = paint.getColor();
+            mWidth = width;
+            mTagStop = (int) Math.ceil(mPaint.measureText("VERBOSE "));
+            mMessageStop = mTagStop + (int) Math.ceil(mPaint.measureText("m") * TAG_COLUMN_EMS);
+        }
+
+        boolean matches(TextPaint paint, int width) {
+            return mWidth == width && mTextSize == paint.getTextSize()
+                    && mTypeface == paint.getTypeface() && mColor == paint.getColor();
+        }
+    }
+
+    private final LineBatcher<StyledLine> mBatcher;
+    private volatile Metrics mMetrics;
+
+    /**
+     * Creates a styler which lays lines out with a paint and width until
+     * {@link #setMetrics(TextPaint, int)} is called, so even the lines logged before the view is
+     * measured are laid out off the UI thread. Call on the UI thread.
+     */
+    LineStyler(LineBatcher<StyledLine> batcher, TextPaint paint, int width) {
+        mBatcher = batcher;
+        mMetrics = new Metrics(paint, width);
+    }
+
+    /**
+     * Updates the paint and width lines are laid out with. Call on the UI thread, for instance
+     * on every flush; it only copies the paint when its size, typeface, colour or the width
+     * changed.
+     *
+     * @return Whether they changed. Lines laid out before then should be passed to
+     *     {@link #relayout(StyledLine)}.
+     */
+    boolean setMetrics(TextPaint paint, int width) {
+        if (mMetrics.matches(paint, width)) {
+            return false;
+        }
+        mMetrics = new Metrics(paint, width);
+        return true;
+    }
+
+    /** Queues a line to be styled and laid out, then batched. Safe to call from any thread. */
+    void add(final int priority, final String line) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mBatcher.add(layOut(priority, line, mMetrics));
+            }
+        });
+    }
+
+    /**
+     * Returns the line laid out with the current paint and width: the line itself if it already
+     * is, or else a new layout of it. Call on the UI thread, where laying a line out again is only
+     * needed after the view changed, such as on rotation.
+     */
+    StyledLine relayout(StyledLine line) {
+        Metrics metrics = mMetrics;
+        if (line.mLayout.getPaint() == metrics.mPaint) {
+            return line;
+        }
+        return layOut(line.mPriority, line.mLine, metrics);
+    }
+
+    private static StyledLine layOut(int priority, String line, Metrics metrics) {
+        SpannableStringBuilder text = new SpannableStringBuilder(line);
+        int length = text.length();
+        int color = priority >= 0 && priority < PRIORITY_COLORS.length
+                ? PRIORITY_COLORS[priority] : 0;
+        if (color != 0) {
+            text.setSpan(new ForegroundColorSpan(color), 0, length,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        text.setSpan(new TabStopSpan.Standard(metrics.mTagStop), 0, length,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(new TabStopSpan.Standard(metrics.mMessageStop), 0, length,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        Layout layout = new StaticLayout(text, metrics.mPaint, metrics.mWidth,
+                Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+        return new StyledLine(priority, line, layout);
+    }
+}
@@ -25,6 +25,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.fit.samples.common.logger.Log;
+import com.google.android.gms.fit.samples.common.logger.LogSinkRegistry;
 import com.google.android.gms.fit.samples.common.logger.LogView;
 import com.google.android.gms.fit.samples.common.logger.LogWrapper;
 import com.google.android.gms.fit.samples.common.logger.MessageOnlyLogFilter;
@@ -48,6 +49,9 @@ public class MainActivity extends AppCompatActivity {
   public static final String TAG = "StepCounter";
   private static final int REQUEST_OAUTH_REQUEST_CODE = 0x1001;
 
+  // The head of this Activity's on-screen logging. The LogSinkRegistry only holds it weakly.
+  private MessageOnlyLogFilter mLogFilter;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -146,13 +150,18 @@ public class MainActivity extends AppCompatActivity {
 
   /** Initializes a custom log class that outputs both to in-app targets and logcat. */
   private void initializeLogging() {
-    // Wraps Android's native log framework.
-    LogWrapper logWrapper = new LogWrapper();
-    // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
-    Log.setLogNode(logWrapper);
+    // The chain outlives this Activity, so build it only once per process. Everything tied to
+    // the Activity is attached to the registry at its end, which lets go of it on destroy.
+    LogSinkRegistry registry = LogSinkRegistry.getInstance();
+    if (Log.getLogNode() == null) {
+      // Wraps Android's native log framework.
+      LogWrapper logWrapper = new LogWrapper();
+      logWrapper.setNext(registry);
+      // Using Log, front-end to the logging chain, emulates android.util.log method signatures.
+      Log.setLogNode(logWrapper);
+    }
     // Filter strips out everything except the message text.
-    MessageOnlyLogFilter msgFilter = new MessageOnlyLogFilter();
-    logWrapper.setNext(msgFilter);
+    mLogFilter = new MessageOnlyLogFilter();
     // On screen logging via a customized TextView.
     LogView logView = (LogView) findViewById(R.id.sample_logview);
 
@@ -161,7 +170,8 @@ public class MainActivity extends AppCompatActivity {
     logView.setTextAppearance(R.style.Log);
 
     logView.setBackgroundColor(Color.WHITE);
-    msgFilter.setNext(logView);
+    mLogFilter.setNext(logView);
+    registry.attach(this, mLogFilter);
     Log.i(TAG, "Ready");
   }
 }